@@ -1,86 +1,94 @@
 package io.github.frostzie.nodex;
 
-// Taken from https://github.com/iliareshetov/rich-json-fx/blob/main/src/main/java/com/github/iliareshetov/RichJsonFX.java
+// Originally taken from https://github.com/iliareshetov/rich-json-fx/blob/main/src/main/java/com/github/iliareshetov/RichJsonFX.java
+// The Jackson based parser has since been replaced with a hand-written, resumable lexer.
 
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonToken;
+import io.github.frostzie.nodex.features.editor.highlighting.SyntaxLexer;
+import io.github.frostzie.nodex.features.editor.highlighting.TokenBuffer;
 import org.fxmisc.richtext.CodeArea;
 import org.fxmisc.richtext.model.StyleSpans;
 import org.fxmisc.richtext.model.StyleSpansBuilder;
 
-import java.io.IOException;
 import java.util.*;
 
-public class RichJsonFX {
-    private final JsonFactory jsonFactory;
+public class RichJsonFX implements SyntaxLexer<RichJsonFX.ParagraphState> {
 
-    public RichJsonFX() {
-        jsonFactory = new JsonFactory();
-    }
+    // Token types, also used as indexes into STYLE_CLASSES
+    public static final int PROPERTY = 0;
+    public static final int STRING = 1;
+    public static final int START_OBJECT = 2;
+    public static final int END_OBJECT = 3;
+    public static final int FLOAT = 4;
+    public static final int INT = 5;
+    public static final int TRUE = 6;
+    public static final int FALSE = 7;
+    public static final int START_ARRAY = 8;
+    public static final int END_ARRAY = 9;
+    public static final int NULL = 10;
+
+    private static final String[] CLASS_NAMES = {
+            "json-property",
+            "json-string",
+            "json-start-object",
+            "json-end-object",
+            "json-float",
+            "json-int",
+            "json-true",
+            "json-false",
+            "json-start-array",
+            "json-end-array",
+            "json-null"
+    };
 
-    public static String jsonTokenToClassName(JsonToken jsonToken) {
-        if (jsonToken == null) {
-            return "";
+    // Shared immutable style collections, so building spans allocates no per-token collections
+    private static final List<Collection<String>> STYLE_CLASSES;
+
+    static {
+        List<Collection<String>> styles = new ArrayList<>(CLASS_NAMES.length);
+        for (String className : CLASS_NAMES) {
+            styles.add(Collections.singletonList(className));
         }
-        return switch (jsonToken) {
-            case FIELD_NAME -> "json-property";
-            case VALUE_STRING -> "json-string";
-            case START_OBJECT -> "json-start-object";
-            case END_OBJECT -> "json-end-object";
-            case VALUE_NUMBER_FLOAT -> "json-float";
-            case VALUE_NUMBER_INT -> "json-int";
-            case VALUE_TRUE -> "json-true";
-            case VALUE_FALSE -> "json-false";
-            case START_ARRAY -> "json-start-array";
-            case END_ARRAY -> "json-end-array";
-            case VALUE_EMBEDDED_OBJECT -> "json-embedded";
-            case VALUE_NULL -> "json-null";
-            default -> "";
-        };
+        STYLE_CLASSES = Collections.unmodifiableList(styles);
+    }
+
+    public static String tokenTypeToClassName(int tokenType) {
+        return CLASS_NAMES[tokenType];
+    }
+
+    public static Collection<String> styleOf(int tokenType) {
+        return STYLE_CLASSES.get(tokenType);
     }
 
     /**
      * Highlights json by applying styles to different tokens.
+     * Never fails on invalid json, broken parts are simply left unstyled.
      *
      * @param json The json to be highlighted.
      * @return StyleSpans containing the highlighted tokens.
      */
-    public StyleSpans<Collection<String>> highlight(String json) throws IOException {
-        List<Match> matches = new ArrayList<>();
-
-        JsonParser parser = jsonFactory.createParser(json);
-        while (!parser.isClosed()) {
-            JsonToken jsonToken = parser.nextToken();
-            int start = (int) parser.currentTokenLocation().getCharOffset();
-            int end = start + parser.getTextLength();
-
-            // add surrounding ""
-            if (jsonToken == JsonToken.VALUE_STRING || jsonToken == JsonToken.FIELD_NAME) {
-                end += 2;
-            }
+    public StyleSpans<Collection<String>> highlight(String json) {
+        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+        TokenBuffer tokens = new TokenBuffer();
+        ParagraphState state = ParagraphState.ROOT;
 
-            String className = jsonTokenToClassName(jsonToken);
-            if (!className.isEmpty()) {
-                matches.add(new Match(className, start, end));
-            }
-        }
+        int lineStart = 0;
+        int length = json.length();
+        while (lineStart <= length) {
+            int lineEnd = json.indexOf('\n', lineStart);
+            boolean isLast = lineEnd < 0;
+            if (isLast) lineEnd = length;
 
-        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
-        int lastPos = 0;
-        for (Match match : matches) {
-            if (match.start() > lastPos) {
-                spansBuilder.add(Collections.emptyList(), match.start() - lastPos);
-            }
+            tokens.clear();
+            state = lex(json, lineStart, lineEnd, state, tokens);
+            tokens.appendSpans(lineEnd - lineStart + (isLast ? 0 : 1), STYLE_CLASSES, spansBuilder);
 
-            spansBuilder.add(Collections.singleton(match.kind()), match.end() - match.start());
-            lastPos = match.end();
+            if (isLast) break;
+            lineStart = lineEnd + 1;
         }
 
-        if (lastPos < json.length()) {
-            spansBuilder.add(Collections.emptyList(), json.length() - lastPos);
+        if (length == 0) {
+            spansBuilder.add(TokenBuffer.NO_STYLE, 0);
         }
-
         return spansBuilder.create();
     }
 
@@ -89,7 +97,7 @@ public class RichJsonFX {
      *
      * @param codeArea the CodeArea containing JSON text.
      */
-    public void highlightCodeArea(CodeArea codeArea) throws IOException {
+    public void highlightCodeArea(CodeArea codeArea) {
         String text = codeArea.getText();
         if (text != null && !text.isEmpty()) {
             StyleSpans<Collection<String>> highlighting = highlight(text);
@@ -97,13 +105,208 @@ public class RichJsonFX {
         }
     }
 
-    public record Match(String kind, int start, int end) implements Comparable<Match> {
+    @Override
+    public ParagraphState getInitialState() {
+        return ParagraphState.ROOT;
+    }
 
-        @Override
-        public int compareTo(Match match) {
-            return Integer.compare(start, match.start);
+    @Override
+    public List<Collection<String>> getStyleClasses() {
+        return STYLE_CLASSES;
+    }
+
+    /**
+     * Lexes a single paragraph (line) of json, starting from the given state.
+     * Json strings can not span lines, so the only thing carried over between paragraphs
+     * is the container stack and whether the next string in an object is a property name.
+     *
+     * @param text The text of the paragraph, without the line terminator.
+     * @param state The state at the start of the paragraph.
+     * @param tokens Receives the tokens found, with offsets relative to the paragraph start.
+     * @return The state at the end of the paragraph.
+     */
+    @Override
+    public ParagraphState lexParagraph(CharSequence text, ParagraphState state, TokenBuffer tokens) {
+        return lex(text, 0, text.length(), state, tokens);
+    }
+
+    /**
+     * The lexer itself. Keeps going after anything it does not understand, so a half-typed
+     * document still gets highlighted everywhere else. Token offsets are relative to {@code from}.
+     */
+    private static ParagraphState lex(CharSequence text, int from, int to, ParagraphState state, TokenBuffer tokens) {
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '{' -> {
+                    tokens.add(START_OBJECT, i - from, i + 1 - from);
+                    state = state.push(true);
+                    i++;
+                }
+                case '}' -> {
+                    tokens.add(END_OBJECT, i - from, i + 1 - from);
+                    state = state.close(true);
+                    i++;
+                }
+                case '[' -> {
+                    tokens.add(START_ARRAY, i - from, i + 1 - from);
+                    state = state.push(false);
+                    i++;
+                }
+                case ']' -> {
+                    tokens.add(END_ARRAY, i - from, i + 1 - from);
+                    state = state.close(false);
+                    i++;
+                }
+                case ',' -> {
+                    if (state.inObject) state = state.expectingKey(true);
+                    i++;
+                }
+                case ':' -> {
+                    if (state.inObject) state = state.expectingKey(false);
+                    i++;
+                }
+                case '"' -> {
+                    int end = i + 1;
+                    while (end < to) {
+                        char sc = text.charAt(end);
+                        if (sc == '\\') {
+                            end += 2;
+                            continue;
+                        }
+                        end++;
+                        if (sc == '"') break;
+                    }
+                    // An unterminated string just runs to the end of the line
+                    end = Math.min(end, to);
+
+                    // A string followed by a colon is a property name even if a comma is missing before it
+                    boolean isProperty = state.inObject && (state.expectKey || nextNonWhitespace(text, end, to) == ':');
+                    tokens.add(isProperty ? PROPERTY : STRING, i - from, end - from);
+                    i = end;
+                }
+                default -> {
+                    if (c == '-' || (c >= '0' && c <= '9')) {
+                        int end = i + 1;
+                        boolean isFloat = false;
+                        while (end < to) {
+                            char nc = text.charAt(end);
+                            if (nc >= '0' && nc <= '9') {
+                                end++;
+                            } else if (nc == '.' || nc == 'e' || nc == 'E') {
+                                isFloat = true;
+                                end++;
+                            } else if ((nc == '+' || nc == '-') && (text.charAt(end - 1) == 'e' || text.charAt(end - 1) == 'E')) {
+                                end++;
+                            } else {
+                                break;
+                            }
+                        }
+                        tokens.add(isFloat ? FLOAT : INT, i - from, end - from);
+                        i = end;
+                    } else if (Character.isLetter(c)) {
+                        int end = i + 1;
+                        while (end < to && Character.isLetterOrDigit(text.charAt(end))) end++;
+                        int type = keywordType(text, i, end);
+                        if (type >= 0) tokens.add(type, i - from, end - from);
+                        i = end;
+                    } else {
+                        // Whitespace and stray characters
+                        i++;
+                    }
+                }
+            }
         }
+        return state;
+    }
+
+    private static char nextNonWhitespace(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) return c;
+        }
+        return 0;
+    }
 
+    private static int keywordType(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length == 4 && regionMatches(text, start, "true")) return TRUE;
+        if (length == 5 && regionMatches(text, start, "false")) return FALSE;
+        if (length == 4 && regionMatches(text, start, "null")) return NULL;
+        return -1;
+    }
+
+    private static boolean regionMatches(CharSequence text, int start, String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (text.charAt(start + i) != keyword.charAt(i)) return false;
+        }
+        return true;
     }
 
-}
\ No newline at end of file
+    /**
+     * The lexer state at a paragraph boundary: the stack of open containers and,
+     * for the innermost object, whether a property name is expected next.
+     * Instances are immutable and compared by value, so the incremental highlighter
+     * can tell when re-lexing has converged with the previously known states.
+     */
+    public static final class ParagraphState {
+        public static final ParagraphState ROOT = new ParagraphState(null, false, false);
+
+        private final ParagraphState parent;
+        private final boolean inObject;
+        private final boolean expectKey;
+        private final int depth;
+        private final int hash;
+
+        private ParagraphState(ParagraphState parent, boolean inObject, boolean expectKey) {
+            this.parent = parent;
+            this.inObject = inObject;
+            this.expectKey = expectKey;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+            this.hash = 31 * (31 * (parent == null ? 0 : parent.hash) + (inObject ? 1 : 0)) + (expectKey ? 1 : 0);
+        }
+
+        private ParagraphState push(boolean object) {
+            return new ParagraphState(this, object, object);
+        }
+
+        /**
+         * Closes the innermost container of the given kind. A mismatched bracket closes everything up to
+         * the nearest matching container, and one without any match is ignored, so a single typo does not
+         * throw off the rest of the document.
+         */
+        private ParagraphState close(boolean object) {
+            ParagraphState current = this;
+            while (current.parent != null) {
+                if (current.inObject == object) return current.parent;
+                current = current.parent;
+            }
+            return this;
+        }
+
+        private ParagraphState expectingKey(boolean expect) {
+            return expect == expectKey ? this : new ParagraphState(parent, inObject, expect);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ParagraphState other)) return false;
+            ParagraphState a = this;
+            ParagraphState b = other;
+            if (a.depth != b.depth || a.hash != b.hash) return false;
+            while (a != null && a != b) {
+                if (a.inObject != b.inObject || a.expectKey != b.expectKey) return false;
+                a = a.parent;
+                b = b.parent;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
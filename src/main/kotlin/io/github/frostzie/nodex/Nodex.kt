@@ -5,10 +5,14 @@ import io.github.frostzie.nodex.config.ConfigManager
 import io.github.frostzie.nodex.loader.fabric.Keybinds
 import io.github.frostzie.nodex.modules.universal.UniversalWorldIntegration
 import io.github.frostzie.nodex.screen.MainApplication
+import io.github.frostzie.nodex.services.SearchIndexService
+import io.github.frostzie.nodex.services.SymbolIndexService
+import io.github.frostzie.nodex.services.WorkspacePathIndex
 import io.github.frostzie.nodex.settings.SettingsLoader
 import io.github.frostzie.nodex.utils.JavaFXInitializer
 import io.github.frostzie.nodex.utils.LoggerProvider
 import net.fabricmc.api.ModInitializer
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents
 
 class Nodex : ModInitializer {
     private val logger = LoggerProvider.getLogger("Nodex")
@@ -29,5 +33,11 @@ class Nodex : ModInitializer {
         DefaultCommands.registerCommands() // Loads commands
         Keybinds.register() // Loads Minecraft (Fabric) keybinds
         UniversalWorldIntegration.initialize() // Loads world detection for universal datapacks
+        SearchIndexService.initialize() // Keeps the find in files index of the workspace once the IDE is opened
+        SymbolIndexService.initialize() // Indexes functions, tags and other resources once the IDE is opened
+        WorkspacePathIndex.initialize() // Keeps every file path of the workspace for go to file once the IDE is opened
+
+        // Unsaved edits are written out before the game exits
+        ClientLifecycleEvents.CLIENT_STOPPING.register { MainApplication.shutdown() }
     }
 }
\ No newline at end of file
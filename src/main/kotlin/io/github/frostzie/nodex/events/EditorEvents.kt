@@ -10,6 +10,8 @@ class EditorRedo
 class EditorSelectAll
 class EditorCloseTab
 class EditorFind
+class EditorGoToDefinition
+class EditorFindUsages
 
 data class EditorCursorPosition(val line: Int, val column: Int)
 class ActiveTabChangedEvent(val path: Path?)
\ No newline at end of file
@@ -21,10 +21,20 @@ class SaveFile
 class SaveAsFile
 class SaveAllFiles
 
-data class OpenFile(val path: Path)
+/**
+ * Opens [path] in the editor. With a 0 based [line], also selects [length] characters from [column] in that line.
+ */
+data class OpenFile(val path: Path, val line: Int = -1, val column: Int = 0, val length: Int = 0)
 
 
 data class FileMoved(val oldPath: Path, val newPath: Path)
 data class FileModified(val path: Path)
 data class FileDeleted(val path: Path)
+// A new file or folder the watcher could not pair with a deletion as a move
+data class FileCreated(val path: Path)
+
+/**
+ * Posted from a background thread after the editor wrote [path], which the file watcher does not report.
+ */
+data class FileSaved(val path: Path)
 data class FileOverrideConfirmed(val sourcePath: Path, val targetPath: Path)
\ No newline at end of file
@@ -0,0 +1,8 @@
+package io.github.frostzie.nodex.events
+
+import io.github.frostzie.nodex.services.FindInFilesService
+
+/**
+ * Shows [results] in the search panel in place of a search, e.g. the usages of a symbol.
+ */
+data class ShowSearchResults(val status: String, val results: List<FindInFilesService.FileResult>)
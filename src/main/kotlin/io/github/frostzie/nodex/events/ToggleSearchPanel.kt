@@ -0,0 +1,3 @@
+package io.github.frostzie.nodex.events
+
+class ToggleSearchPanel
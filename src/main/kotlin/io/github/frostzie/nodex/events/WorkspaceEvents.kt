@@ -7,6 +7,11 @@ import io.github.frostzie.nodex.project.Workspace
  */
 data class WorkspaceUpdated(val workspace: Workspace)
 
+/**
+ * Fired from a background thread after the symbol index of the workspace changed.
+ */
+class SymbolIndexUpdated
+
 /**
  * Event fired to request a complete reset of the workspace and session history.
  */
@@ -20,4 +25,8 @@ class OpenProjectManagerEvent
 /**
  * Event fired to open folder of the currently active workspace
  */
-class OpenWorkspaceFolder
\ No newline at end of file
+class OpenWorkspaceFolder
+/**
+ * Fired when the main window gains or loses focus.
+ */
+data class WindowFocusChanged(val focused: Boolean)
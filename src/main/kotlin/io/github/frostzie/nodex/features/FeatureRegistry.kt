@@ -4,6 +4,7 @@ import io.github.frostzie.nodex.features.editor.CaretColor
 import io.github.frostzie.nodex.features.editor.DirtyTabDecorator
 import io.github.frostzie.nodex.features.editor.EditorTabDecorator
 import io.github.frostzie.nodex.features.editor.FileIconDecorator
+import io.github.frostzie.nodex.features.editor.diagnostics.ReferenceDiagnosticsDecorator
 import io.github.frostzie.nodex.styling.tabs.TabStyleManager
 import io.github.frostzie.nodex.styling.tabs.TabStyler
 import io.github.frostzie.nodex.styling.tabs.rules.ConfigRule
@@ -29,7 +30,8 @@ object FeatureRegistry {
         TabStyler(),
         DirtyTabDecorator(),
         FileIconDecorator(),
-        CaretColor()
+        CaretColor(),
+        ReferenceDiagnosticsDecorator()
     )
 
     init {
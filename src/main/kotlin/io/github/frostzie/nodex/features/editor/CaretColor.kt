@@ -12,7 +12,9 @@ import org.fxmisc.richtext.CodeArea
  */
 class CaretColor : EditorTabDecorator {
 
-    override fun decorate(tab: Tab, codeArea: CodeArea, tabData: TextEditorViewModel.TabData): () -> Unit {
+    override fun decorate(tab: Tab, codeArea: CodeArea?, tabData: TextEditorViewModel.TabData): () -> Unit {
+        if (codeArea == null) return {}
+
         val configListener = ChangeListener<Any> { _, _, _ ->
             // Only update if it has focus.
             if (codeArea.isFocused) {
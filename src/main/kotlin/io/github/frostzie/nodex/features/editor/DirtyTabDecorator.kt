@@ -14,7 +14,7 @@ import org.fxmisc.richtext.CodeArea
  */
 class DirtyTabDecorator : EditorTabDecorator {
 
-    override fun decorate(tab: Tab, codeArea: CodeArea, tabData: TextEditorViewModel.TabData): () -> Unit {
+    override fun decorate(tab: Tab, codeArea: CodeArea?, tabData: TextEditorViewModel.TabData): () -> Unit {
         // This listener reacts to both the dirty status and changes to the indicator setting itself.
         val listener = ChangeListener<Any> { _, _, _ ->
             updateTab(tab, tabData)
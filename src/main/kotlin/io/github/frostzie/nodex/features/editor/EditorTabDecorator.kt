@@ -12,10 +12,11 @@ interface EditorTabDecorator {
      * Applies decorations to the given tab based on the tab's data.
      *
      * @param tab The UI Tab control from AtlantaFX.
-     * @param codeArea The CodeArea containing the text editor for this tab.
+     * @param codeArea The CodeArea containing the text editor for this tab, or null while the tab shows
+     *                 a read-only large-file view. Decorators are applied again once the tab gets a CodeArea.
      * @param tabData The view model's data for this tab.
      * @return A cleanup function (lambda) that will be called when the tab is closed.
      *         This is for removing listeners and preventing memory leaks.
      */
-    fun decorate(tab: Tab, codeArea: CodeArea, tabData: TextEditorViewModel.TabData): () -> Unit
+    fun decorate(tab: Tab, codeArea: CodeArea?, tabData: TextEditorViewModel.TabData): () -> Unit
 }
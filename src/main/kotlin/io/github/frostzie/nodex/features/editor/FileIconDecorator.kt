@@ -13,7 +13,7 @@ import org.kordamp.ikonli.javafx.FontIcon
  * icon in a tab based on the "Show File Icons" setting.
  */
 class FileIconDecorator : EditorTabDecorator {
-    override fun decorate(tab: Tab, codeArea: CodeArea, tabData: TextEditorViewModel.TabData): () -> Unit {
+    override fun decorate(tab: Tab, codeArea: CodeArea?, tabData: TextEditorViewModel.TabData): () -> Unit {
         val graphic = tab.graphic as? HBox ?: return { }
         val icon = graphic.children.find { it is FontIcon } as? FontIcon ?: return { }
 
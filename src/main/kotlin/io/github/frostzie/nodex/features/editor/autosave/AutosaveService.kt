@@ -0,0 +1,102 @@
+package io.github.frostzie.nodex.features.editor.autosave
+
+import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.events.WindowFocusChanged
+import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
+import io.github.frostzie.nodex.settings.categories.MainConfig
+import javafx.animation.PauseTransition
+import javafx.application.Platform
+import javafx.util.Duration
+
+/**
+ * Saves edited tabs once editing pauses for [MainConfig.autosaveDelayMs] and when the window loses focus.
+ *
+ * Edits only mark their tab as pending and restart one shared idle timer, so a burst of typing across any number
+ * of files ends in a single save per file. Tabs are tracked by id and handed to [save], which resolves them to the
+ * current tab and takes the same path as manual saves.
+ *
+ * Tabs can be [held][hold] while they have unresolved merge conflicts. Their edits stay pending, but they are only
+ * saved once [hasConflicts] reports the markers gone or the user saved the tab manually and [release]d it.
+ */
+class AutosaveService(
+    private val save: (tabId: String) -> Unit,
+    private val hasConflicts: (tabId: String) -> Boolean
+) {
+
+    private val pending = LinkedHashSet<String>()
+    private val held = HashSet<String>()
+    private val idleTimer = PauseTransition().apply {
+        setOnFinished { flush() }
+    }
+
+    init {
+        EventBus.register(this)
+    }
+
+    /**
+     * Called for every edit of a tab's document, cheap enough for each keystroke.
+     */
+    fun onEdit(tabId: String) {
+        if (!MainConfig.autosaveEnabled.get()) return
+        pending.add(tabId)
+        idleTimer.duration = Duration.millis(MainConfig.autosaveDelayMs.get().toDouble())
+        idleTimer.playFromStart()
+    }
+
+    /**
+     * Stops autosaving the tab until its conflict markers are resolved or it is [release]d.
+     */
+    fun hold(tabId: String) {
+        held.add(tabId)
+        pending.remove(tabId)
+    }
+
+    /**
+     * Whether the tab may be written without the user saving it on purpose, i.e. it is not held or its conflicts
+     * were resolved, which also lifts the hold.
+     */
+    fun canSave(tabId: String): Boolean {
+        if (tabId !in held) return true
+        // Checked here rather than on each edit, as it scans the whole document
+        if (hasConflicts(tabId)) return false
+        held.remove(tabId)
+        return true
+    }
+
+    /**
+     * Autosaves the tab again, called when the user saved it on purpose.
+     */
+    fun release(tabId: String) {
+        held.remove(tabId)
+    }
+
+    fun forget(tabId: String) {
+        pending.remove(tabId)
+        held.remove(tabId)
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onWindowFocusChanged(event: WindowFocusChanged) {
+        if (!event.focused) {
+            Platform.runLater { flush() }
+        }
+    }
+
+    /**
+     * Saves all pending tabs now, except held tabs that still have conflicts.
+     */
+    fun flush() {
+        idleTimer.stop()
+        val tabIds = pending.toList()
+        pending.clear()
+        if (!MainConfig.autosaveEnabled.get()) return
+        tabIds.filter { canSave(it) }.forEach(save)
+    }
+
+    fun dispose() {
+        idleTimer.stop()
+        pending.clear()
+        held.clear()
+        EventBus.unregister(this)
+    }
+}
@@ -0,0 +1,143 @@
+package io.github.frostzie.nodex.features.editor.diagnostics
+
+import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.events.SymbolIndexUpdated
+import io.github.frostzie.nodex.features.editor.document.PieceTableDocument
+import io.github.frostzie.nodex.project.symbols.Symbol
+import io.github.frostzie.nodex.services.SymbolIndexService
+import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
+import io.github.frostzie.nodex.utils.LoggerProvider
+import javafx.animation.PauseTransition
+import javafx.application.Platform
+import javafx.event.EventHandler
+import javafx.scene.control.Tooltip
+import javafx.util.Duration
+import org.fxmisc.richtext.CodeArea
+import org.fxmisc.richtext.SelectionImpl
+import org.fxmisc.richtext.event.MouseOverTextEvent
+import org.reactfx.Subscription
+import java.nio.file.Path
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Underlines the references in one editor tab to symbols the workspace does not define, e.g. a function that
+ * was renamed, and explains them in a tooltip on hover.
+ *
+ * A snapshot of the tab's text is read again on a background thread once typing pauses and whenever the symbol
+ * index changed, so unsaved edits are checked as well. Results for an outdated document version are dropped.
+ * Files outside the workspace's data folders are not checked at all.
+ */
+class ReferenceDiagnostics(
+    private val codeArea: CodeArea,
+    private val document: PieceTableDocument,
+    private val path: Path
+) {
+    companion object {
+        private val logger = LoggerProvider.getLogger("ReferenceDiagnostics")
+        private const val RECHECK_DELAY_MS = 300.0
+
+        // Past this a file is broken beyond what underlines help with
+        private const val MAX_DIAGNOSTICS = 500
+
+        private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "Nodex-Diagnostics").apply { isDaemon = true }
+        }
+    }
+
+    private class Diagnostic(val symbol: Symbol, val decoration: SelectionImpl<Collection<String>, String, Collection<String>>)
+
+    private val diagnostics = ArrayList<Diagnostic>()
+    private val recheckDelay = PauseTransition(Duration.millis(RECHECK_DELAY_MS))
+    private val changeSubscription: Subscription
+    private val tooltip = Tooltip()
+    private var request = 0L
+    private var disposed = false
+
+    private val hoverBegin = EventHandler<MouseOverTextEvent> { event ->
+        val diagnostic = diagnostics.firstOrNull {
+            event.characterIndex >= it.decoration.startPosition && event.characterIndex < it.decoration.endPosition
+        }
+        if (diagnostic != null) {
+            tooltip.text = "Unknown ${diagnostic.symbol.displayName}"
+            tooltip.show(codeArea, event.screenPosition.x, event.screenPosition.y + 16)
+        }
+    }
+    private val hoverEnd = EventHandler<MouseOverTextEvent> { tooltip.hide() }
+
+    init {
+        recheckDelay.setOnFinished { check() }
+        changeSubscription = codeArea.plainTextChanges().subscribe { recheckDelay.playFromStart() }
+        codeArea.mouseOverTextDelay = java.time.Duration.ofMillis(500)
+        codeArea.addEventHandler(MouseOverTextEvent.MOUSE_OVER_TEXT_BEGIN, hoverBegin)
+        codeArea.addEventHandler(MouseOverTextEvent.MOUSE_OVER_TEXT_END, hoverEnd)
+        EventBus.register(this)
+        check()
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onSymbolIndexUpdated(event: SymbolIndexUpdated) {
+        Platform.runLater { if (!disposed) recheckDelay.playFromStart() }
+    }
+
+    private fun check() {
+        val requestId = ++request
+        if (!SymbolIndexService.covers(path)) {
+            clear()
+            return
+        }
+        val version = document.version
+        val text = document.snapshot()
+        executor.execute {
+            val unknown = try {
+                SymbolIndexService.read(path, text.toString())?.references
+                    ?.filter { it.length > 0 && SymbolIndexService.isUnknown(it.symbol) }
+                    ?.take(MAX_DIAGNOSTICS)
+                    ?: emptyList()
+            } catch (e: Exception) {
+                logger.warn("Failed to check references of $path", e)
+                emptyList()
+            }
+            // Line based positions, turned into offsets on the FX thread against the same version
+            Platform.runLater {
+                if (disposed || requestId != request || version != document.version) return@runLater
+                clear()
+                for (occurrence in unknown) {
+                    if (occurrence.line >= codeArea.paragraphs.size) continue
+                    val start = codeArea.getAbsolutePosition(
+                        occurrence.line, occurrence.column.coerceAtMost(codeArea.getParagraphLength(occurrence.line))
+                    )
+                    val decoration = SelectionImpl<Collection<String>, String, Collection<String>>(
+                        "unknown-reference-${diagnostics.size}", codeArea
+                    ) { path -> path.styleClass.setAll("unknown-reference") }
+                    codeArea.addSelection(decoration)
+                    decoration.selectRange(start, (start + occurrence.length).coerceAtMost(codeArea.length))
+                    diagnostics.add(Diagnostic(occurrence.symbol, decoration))
+                }
+            }
+        }
+    }
+
+    private fun clear() {
+        diagnostics.forEach {
+            codeArea.removeSelection(it.decoration)
+            it.decoration.dispose()
+        }
+        diagnostics.clear()
+    }
+
+    /**
+     * Removes all underlines and stops listening to the CodeArea and the symbol index. Call when the tab is closed.
+     */
+    fun dispose() {
+        disposed = true
+        ++request
+        recheckDelay.stop()
+        changeSubscription.unsubscribe()
+        EventBus.unregister(this)
+        codeArea.removeEventHandler(MouseOverTextEvent.MOUSE_OVER_TEXT_BEGIN, hoverBegin)
+        codeArea.removeEventHandler(MouseOverTextEvent.MOUSE_OVER_TEXT_END, hoverEnd)
+        tooltip.hide()
+        clear()
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.frostzie.nodex.features.editor.diagnostics
+
+import atlantafx.base.controls.Tab
+import io.github.frostzie.nodex.features.editor.EditorTabDecorator
+import io.github.frostzie.nodex.modules.main.TextEditorViewModel
+import io.github.frostzie.nodex.services.SymbolIndexService
+import io.github.frostzie.nodex.settings.categories.MainConfig
+import javafx.beans.value.ChangeListener
+import org.fxmisc.richtext.CodeArea
+
+/**
+ * An implementation of [EditorTabDecorator] that attaches [ReferenceDiagnostics] to the editor of a function or
+ * JSON tab while unknown reference warnings are enabled.
+ */
+class ReferenceDiagnosticsDecorator : EditorTabDecorator {
+
+    override fun decorate(tab: Tab, codeArea: CodeArea?, tabData: TextEditorViewModel.TabData): () -> Unit {
+        if (codeArea == null || !SymbolIndexService.isSymbolFile(tabData.filePath)) return {}
+
+        var diagnostics: ReferenceDiagnostics? = null
+        fun update(enabled: Boolean) {
+            diagnostics?.dispose()
+            diagnostics = if (enabled) ReferenceDiagnostics(codeArea, tabData.document, tabData.filePath) else null
+        }
+
+        val configListener = ChangeListener<Boolean> { _, _, enabled -> update(enabled) }
+        MainConfig.unknownReferenceWarnings.addListener(configListener)
+        update(MainConfig.unknownReferenceWarnings.get())
+
+        return {
+            MainConfig.unknownReferenceWarnings.removeListener(configListener)
+            diagnostics?.dispose()
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package io.github.frostzie.nodex.features.editor.document
+
+/**
+ * The text of an open file, owned by the view model and shared with the editor view.
+ *
+ * This replaces the view model's own copy of the text, not the editor's: a tab's CodeArea still keeps its text in
+ * its own RichTextFX document, so a loaded tab holds its text twice, once here and once in the CodeArea. The two
+ * are kept in sync by range edits in both directions, never by copying the whole text.
+ *
+ * Stored as a piece table: the text the file was loaded with is never copied or modified, and everything typed
+ * afterwards is appended to a single add buffer. The document itself is just a list of pieces pointing into
+ * those two buffers, so an edit costs time proportional to its own size and the number of pieces, not to the
+ * length of the file. Consecutive typing extends the last piece instead of adding new ones.
+ *
+ * Every edit bumps [version]. Whether the text still matches what was last saved is answered by [isModified]
+ * in constant time: an unchanged version or a different length decide it immediately, otherwise a polynomial hash
+ * of the content is compared with the saved one, so undoing back to the saved text counts as unmodified again.
+ * The hash is updated by every edit from the hashes of the removed and inserted text and of the text before the
+ * edit, which the piece lookup keeps along with its cached position.
+ *
+ * Pieces point into their buffer and never change, and buffers are only ever appended to, so a copy of the piece
+ * list taken when saving keeps describing the saved text. That is used as the base of [rebase] when the file
+ * changes on disk while there are unsaved edits.
+ *
+ * Line separators are normalized to `\n` on load, like the CodeArea does, and restored by [toFileText].
+ * Not thread-safe, only use it on the JavaFX thread.
+ */
+class PieceTableDocument private constructor(text: String, lineSeparator: String) {
+
+    companion object {
+        private val LINE_SEPARATOR = Regex("\r\n|\r")
+
+        /**
+         * Creates a document from text as read from disk.
+         */
+        fun fromFileText(fileText: String): PieceTableDocument {
+            return PieceTableDocument(normalize(fileText), detectLineSeparator(fileText))
+        }
+
+        /**
+         * Converts the line separators of text read from disk to `\n`, as stored in the document.
+         */
+        fun normalize(text: String): String {
+            return if (text.indexOf('\r') < 0) text else LINE_SEPARATOR.replace(text, "\n")
+        }
+
+        private fun detectLineSeparator(text: String): String {
+            val index = text.indexOfFirst { it == '\n' || it == '\r' }
+            return when {
+                index < 0 -> "\n"
+                text[index] == '\n' -> "\n"
+                index + 1 < text.length && text[index + 1] == '\n' -> "\r\n"
+                else -> "\r"
+            }
+        }
+    }
+
+    internal class Piece(val buffer: CharSequence, val start: Int, val length: Int) {
+        // Hash of the piece's text, computed on first use
+        var hash = -1L
+    }
+
+    private var original = text
+    private var added = StringBuilder()
+    private var originalHashes = PrefixHashes(original)
+    private var addedHashes = PrefixHashes(added)
+    private val pieces = ArrayList<Piece>()
+    private val listeners = ArrayList<DocumentListener>()
+
+    // Last piece index looked up, the document offset it starts at and the hash of the text before it,
+    // so edits close together skip the walk
+    private var cachedIndex = 0
+    private var cachedStart = 0
+    private var cachedPrefixHash = 0L
+
+    // Hash of the whole text, see contentHash
+    private var hash = 0L
+
+    /**
+     * The separator the file used on disk, written back by [toFileText].
+     */
+    var lineSeparator = lineSeparator
+        private set
+
+    var length = text.length
+        private set
+
+    /**
+     * Incremented on every edit and reload.
+     */
+    var version = 0L
+        private set
+
+    private var savedVersion = 0L
+    private var savedLength = 0
+    private var savedHash = 0L
+
+    // The saved text as pieces, null when it is not known anymore
+    private var savedPieces: List<Piece>? = null
+
+    init {
+        if (text.isNotEmpty()) pieces.add(Piece(original, 0, text.length))
+        hash = originalHashes.range(0, text.length)
+        markSaved()
+    }
+
+    /**
+     * Whether the text differs from the state recorded by the last [markSaved] or [load].
+     */
+    val isModified: Boolean
+        get() = version != savedVersion && (length != savedLength || contentHash() != savedHash)
+
+    /**
+     * Records the current text as the saved state, call after writing it to disk.
+     */
+    fun markSaved() {
+        markSaved(captureState())
+    }
+
+    /**
+     * Records an earlier state from [captureState] as the saved one, for writes that finish after further edits.
+     */
+    fun markSaved(state: State) {
+        savedVersion = state.version
+        savedLength = state.length
+        savedHash = state.hash
+        savedPieces = state.pieces
+    }
+
+    fun captureState(): State = State(version, length, contentHash(), ArrayList(pieces))
+
+    /**
+     * The state recorded by the last [markSaved] or [load], i.e. the text as it is on disk.
+     */
+    val savedState: State
+        get() = State(savedVersion, savedLength, savedHash, savedPieces)
+
+    /**
+     * The text as it was at one [version], with its hash to tell later whether the text still matches it.
+     */
+    class State internal constructor(
+        internal val version: Long,
+        internal val length: Int,
+        internal val hash: Long,
+        internal val pieces: List<Piece>?
+    )
+
+    /**
+     * The text as of the saved state, or null if it is not known, e.g. after [replaceAll].
+     */
+    fun savedText(): String? {
+        val saved = savedPieces ?: return null
+        val builder = StringBuilder(savedLength)
+        saved.forEach { builder.append(it.buffer, it.start, it.start + it.length) }
+        return builder.toString()
+    }
+
+    /**
+     * Hash of the whole text, kept up to date by every edit.
+     */
+    fun contentHash(): Long = hash
+
+    private fun hashOf(piece: Piece): Long {
+        if (piece.hash < 0) {
+            val hashes = if (piece.buffer === added) addedHashes else originalHashes
+            piece.hash = hashes.range(piece.start, piece.start + piece.length)
+        }
+        return piece.hash
+    }
+
+    /**
+     * Replaces the range [start, end) with [text] and notifies listeners.
+     *
+     * @param source Passed on to listeners, so whoever made the edit can recognize and skip its own changes.
+     */
+    fun replace(start: Int, end: Int, text: String, source: Any? = null) {
+        require(start in 0..end && end <= length) { "Invalid range $start..$end for length $length" }
+        if (start == end && text.isEmpty()) return
+
+        val edit = applyReplace(start, end, text, source)
+        listeners.toTypedArray().forEach { it.onEdit(edit) }
+    }
+
+    private fun applyReplace(start: Int, end: Int, text: String, source: Any?): DocumentEdit {
+        val removed = if (end > start) getText(start, end) else ""
+
+        val first = splitAt(start)
+        val headHash = hashBefore(first)
+        val last = splitAt(end)
+        if (last > first) pieces.subList(first, last).clear()
+
+        // hash = head * B^(removed + tail) + removed * B^tail + tail, and the same with the inserted text
+        val tailLength = length - end
+        val tailHash = RollingHash.sub(
+            RollingHash.sub(hash, RollingHash.mul(headHash, RollingHash.pow(removed.length + tailLength))),
+            RollingHash.mul(RollingHash.of(removed), RollingHash.pow(tailLength))
+        )
+        hash = RollingHash.add(
+            RollingHash.combine(RollingHash.combine(headHash, RollingHash.of(text), text.length), 0L, tailLength),
+            tailHash
+        )
+
+        // Everything before the edit is unchanged and can stay cached
+        if (first > 0) {
+            val previous = pieces[first - 1]
+            cachedIndex = first - 1
+            cachedStart = start - previous.length
+            cachedPrefixHash = RollingHash.removeTail(headHash, hashOf(previous), previous.length)
+        } else {
+            cachedIndex = 0
+            cachedStart = 0
+            cachedPrefixHash = 0L
+        }
+
+        if (text.isNotEmpty()) {
+            val previous = pieces.getOrNull(first - 1)
+            if (previous != null && previous.buffer === added && previous.start + previous.length == added.length) {
+                pieces[first - 1] = Piece(added, previous.start, previous.length + text.length)
+            } else {
+                pieces.add(first, Piece(added, added.length, text.length))
+            }
+            added.append(text)
+            addedHashes.extend()
+        }
+        length += text.length - (end - start)
+        version++
+        return DocumentEdit(start, removed, text, source)
+    }
+
+    /**
+     * Replaces the whole document with text as read from disk, e.g. after an external change.
+     * The buffers are reset, so the old text does not linger in the add buffer, and the new text counts as saved.
+     */
+    fun load(fileText: String, source: Any? = null) {
+        lineSeparator = detectLineSeparator(fileText)
+        reset(normalize(fileText), source, saved = true)
+    }
+
+    /**
+     * Replaces the whole document like [load], but keeps the saved state and line separator,
+     * so the result counts as modified unless it matches the saved text. The saved text itself is forgotten.
+     */
+    fun replaceAll(text: String, source: Any? = null) {
+        savedPieces = null
+        reset(normalize(text), source, saved = false)
+    }
+
+    /**
+     * Brings the document to text read from disk by applying [hunks] computed by [TextDiff] from the current text,
+     * so only the changed ranges are replaced. The result counts as saved.
+     */
+    fun reload(fileText: String, hunks: List<TextDiff.Hunk>, source: Any? = null) {
+        lineSeparator = detectLineSeparator(fileText)
+        applyHunks(hunks, source) { markSaved() }
+    }
+
+    /**
+     * Applies [hunks] like [reload], but takes [fileText] only as the new saved state, for merging a change on
+     * disk into unsaved edits. The document stays modified unless the hunks make it match the file.
+     */
+    fun rebase(fileText: String, hunks: List<TextDiff.Hunk>, source: Any? = null) {
+        val text = normalize(fileText)
+        lineSeparator = detectLineSeparator(fileText)
+        applyHunks(hunks, source) {
+            savedVersion = -1
+            savedLength = text.length
+            savedHash = PrefixHashes(text).range(0, text.length)
+            savedPieces = if (text.isEmpty()) emptyList() else listOf(Piece(text, 0, text.length))
+        }
+    }
+
+    private fun applyHunks(hunks: List<TextDiff.Hunk>, source: Any?, updateSavedState: () -> Unit) {
+        // From the end, so the positions of the hunks before stay valid
+        val edits = hunks.asReversed().map { applyReplace(it.start, it.end, it.text, source) }
+        // Before notifying, so listeners already see the new saved state
+        updateSavedState()
+        edits.forEach { edit -> listeners.toTypedArray().forEach { it.onEdit(edit) } }
+    }
+
+    private fun reset(text: String, source: Any?, saved: Boolean) {
+        val removed = getText()
+
+        original = text
+        originalHashes = PrefixHashes(original)
+        // A new add buffer, as saved pieces may still point into the old one
+        added = StringBuilder()
+        addedHashes = PrefixHashes(added)
+        pieces.clear()
+        if (text.isNotEmpty()) pieces.add(Piece(original, 0, text.length))
+        cachedIndex = 0
+        cachedStart = 0
+        cachedPrefixHash = 0L
+        length = text.length
+        hash = originalHashes.range(0, text.length)
+        version++
+        // Before notifying, so listeners already see the new saved state
+        if (saved) markSaved()
+
+        val edit = DocumentEdit(0, removed, text, source)
+        listeners.toTypedArray().forEach { it.onEdit(edit) }
+    }
+
+    fun getText(): String = getText(0, length)
+
+    /**
+     * The current text as an immutable [CharSequence] that a worker thread can read while the document is edited.
+     * Copies the piece list and the text added since the last load, not the whole text.
+     */
+    fun snapshot(): CharSequence {
+        val frozen = added.toString()
+        return PieceText(pieces.map { if (it.buffer === added) Piece(frozen, it.start, it.length) else it }, length)
+    }
+
+    fun getText(start: Int, end: Int): String {
+        if (start >= end) return ""
+        val builder = StringBuilder(end - start)
+        var index = findPiece(start)
+        var pieceStart = cachedStart
+        while (pieceStart < end && index < pieces.size) {
+            val piece = pieces[index]
+            val from = maxOf(start, pieceStart) - pieceStart
+            val to = minOf(end, pieceStart + piece.length) - pieceStart
+            builder.append(piece.buffer, piece.start + from, piece.start + to)
+            pieceStart += piece.length
+            index++
+        }
+        return builder.toString()
+    }
+
+    /**
+     * The text with the file's own line separators, for writing it back to disk.
+     */
+    fun toFileText(): String {
+        val text = getText()
+        return if (lineSeparator == "\n") text else text.replace("\n", lineSeparator)
+    }
+
+    fun addListener(listener: DocumentListener) {
+        listeners.add(listener)
+    }
+
+    fun removeListener(listener: DocumentListener) {
+        listeners.remove(listener)
+    }
+
+    /**
+     * Index of the piece containing [offset] (or [pieces].size at the end), leaving its start in [cachedStart]
+     * and the hash of the text before it in [cachedPrefixHash].
+     */
+    private fun findPiece(offset: Int): Int {
+        var index = 0
+        var pieceStart = 0
+        var prefixHash = 0L
+        if (cachedIndex < pieces.size && offset >= cachedStart) {
+            index = cachedIndex
+            pieceStart = cachedStart
+            prefixHash = cachedPrefixHash
+        }
+        while (index < pieces.size && pieceStart + pieces[index].length <= offset) {
+            prefixHash = RollingHash.combine(prefixHash, hashOf(pieces[index]), pieces[index].length)
+            pieceStart += pieces[index].length
+            index++
+        }
+        cachedIndex = index
+        cachedStart = pieceStart
+        cachedPrefixHash = prefixHash
+        return index
+    }
+
+    /**
+     * Hash of the text before the piece at [index], right after [splitAt] returned it.
+     */
+    private fun hashBefore(index: Int): Long {
+        if (index == cachedIndex) return cachedPrefixHash
+        // Split, the head of the piece containing the offset is the cached one
+        val head = pieces[cachedIndex]
+        return RollingHash.combine(cachedPrefixHash, hashOf(head), head.length)
+    }
+
+    /**
+     * Makes sure a piece boundary lies at [offset] and returns the index of the piece starting there.
+     */
+    private fun splitAt(offset: Int): Int {
+        val index = findPiece(offset)
+        if (index >= pieces.size || cachedStart == offset) return index
+
+        val piece = pieces[index]
+        val headLength = offset - cachedStart
+        pieces[index] = Piece(piece.buffer, piece.start, headLength)
+        pieces.add(index + 1, Piece(piece.buffer, piece.start + headLength, piece.length - headLength))
+        return index + 1
+    }
+}
+
+/**
+ * Text made of pieces of immutable buffers, see [PieceTableDocument.snapshot]. Sequential reads stay within the
+ * last piece found, so a scan from front to back costs no lookup per character. Only read it from one thread at a time.
+ */
+private class PieceText(private val pieces: List<PieceTableDocument.Piece>, override val length: Int) : CharSequence {
+    // Document offset each piece starts at
+    private val starts = IntArray(pieces.size).also { starts ->
+        var offset = 0
+        for (index in pieces.indices) {
+            starts[index] = offset
+            offset += pieces[index].length
+        }
+    }
+    private var current = 0
+
+    override fun get(index: Int): Char {
+        if (index < 0 || index >= length) throw IndexOutOfBoundsException("Index $index, length $length")
+        var piece = current
+        if (index < starts[piece] || index >= starts[piece] + pieces[piece].length) {
+            piece = starts.binarySearch(index).let { if (it >= 0) it else -it - 2 }
+            // Skips empty pieces sharing the start offset
+            while (index >= starts[piece] + pieces[piece].length) piece++
+            current = piece
+        }
+        val found = pieces[piece]
+        return found.buffer[found.start + index - starts[piece]]
+    }
+
+    override fun subSequence(startIndex: Int, endIndex: Int): CharSequence {
+        if (startIndex < 0 || endIndex > length || startIndex > endIndex) {
+            throw IndexOutOfBoundsException("Range [$startIndex, $endIndex), length $length")
+        }
+        if (startIndex == endIndex) return ""
+        val builder = StringBuilder(endIndex - startIndex)
+        // Whole ranges of each piece, copied in bulk
+        var piece = starts.binarySearch(startIndex).let { if (it >= 0) it else -it - 2 }
+        while (piece < pieces.size && starts[piece] < endIndex) {
+            val found = pieces[piece]
+            val from = maxOf(startIndex, starts[piece]) - starts[piece]
+            val to = minOf(endIndex, starts[piece] + found.length) - starts[piece]
+            if (from < to) builder.append(found.buffer, found.start + from, found.start + to)
+            piece++
+        }
+        return builder.toString()
+    }
+
+    override fun toString(): String = subSequence(0, length).toString()
+}
+
+/**
+ * A single change to a [PieceTableDocument]: [removed] was replaced by [inserted] at [position].
+ */
+data class DocumentEdit(
+    val position: Int,
+    val removed: String,
+    val inserted: String,
+    val source: Any?
+)
+
+fun interface DocumentListener {
+    fun onEdit(edit: DocumentEdit)
+}
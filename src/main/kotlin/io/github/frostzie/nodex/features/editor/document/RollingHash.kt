@@ -0,0 +1,109 @@
+package io.github.frostzie.nodex.features.editor.document
+
+/**
+ * Polynomial hashing modulo the Mersenne prime 2^61 - 1.
+ *
+ * Hashes of adjacent ranges combine as `hash(a + b) = hash(a) * BASE^length(b) + hash(b)`, and as the modulus is
+ * prime the head can be split off again, which lets [PieceTableDocument] update the hash of its content per edit
+ * from the hashes of the edited ranges instead of re-reading the text.
+ */
+internal object RollingHash {
+    private const val MOD = (1L shl 61) - 1
+    private const val BASE = 1_000_003L
+    // BASE^(MOD - 2) is the inverse of BASE by Fermat's little theorem
+    private val INVERSE_BASE = power(BASE, MOD - 2)
+
+    fun append(hash: Long, char: Char): Long = add(mul(hash, BASE), char.code.toLong())
+
+    fun of(text: CharSequence): Long {
+        var hash = 0L
+        for (char in text) hash = append(hash, char)
+        return hash
+    }
+
+    fun combine(head: Long, tail: Long, tailLength: Int): Long = add(mul(head, pow(tailLength)), tail)
+
+    /**
+     * The hash of the head of a text, from the hash of the whole text and of its last [tailLength] characters.
+     */
+    fun removeTail(hash: Long, tail: Long, tailLength: Int): Long = mul(sub(hash, tail), power(INVERSE_BASE, tailLength.toLong()))
+
+    fun pow(exponent: Int): Long = power(BASE, exponent.toLong())
+
+    private fun power(value: Long, exponent: Long): Long {
+        var result = 1L
+        var base = value
+        var e = exponent
+        while (e > 0) {
+            if (e and 1L == 1L) result = mul(result, base)
+            base = mul(base, base)
+            e = e shr 1
+        }
+        return result
+    }
+
+    fun add(a: Long, b: Long): Long {
+        val sum = a + b
+        return if (sum >= MOD) sum - MOD else sum
+    }
+
+    fun sub(a: Long, b: Long): Long {
+        val diff = a - b
+        return if (diff < 0) diff + MOD else diff
+    }
+
+    fun mul(a: Long, b: Long): Long {
+        // Both operands are below 2^61, so the 122 bit product is folded back in 61 bit chunks
+        val low = a * b
+        val high = Math.multiplyHigh(a, b)
+        var result = (low and MOD) + (low ushr 61) + (high shl 3)
+        result = (result and MOD) + (result ushr 61)
+        return if (result >= MOD) result - MOD else result
+    }
+}
+
+/**
+ * Prefix hashes of an append-only buffer, kept at every [INTERVAL] characters so the hash of any range
+ * costs at most two short scans instead of storing a hash per character.
+ */
+internal class PrefixHashes(private val buffer: CharSequence) {
+    companion object {
+        private const val INTERVAL = 256
+    }
+
+    private var checkpoints = LongArray(buffer.length / INTERVAL + 2)
+    private var hashedLength = 0
+    private var runningHash = 0L
+
+    init {
+        extend()
+    }
+
+    /**
+     * Catches up with characters appended to the buffer since the last call.
+     */
+    fun extend() {
+        val length = buffer.length
+        if (checkpoints.size < length / INTERVAL + 2) {
+            checkpoints = checkpoints.copyOf(maxOf(checkpoints.size * 2, length / INTERVAL + 2))
+        }
+        while (hashedLength < length) {
+            if (hashedLength % INTERVAL == 0) checkpoints[hashedLength / INTERVAL] = runningHash
+            runningHash = RollingHash.append(runningHash, buffer[hashedLength])
+            hashedLength++
+        }
+        if (hashedLength % INTERVAL == 0) checkpoints[hashedLength / INTERVAL] = runningHash
+    }
+
+    private fun prefix(end: Int): Long {
+        var hash = checkpoints[end / INTERVAL]
+        for (i in (end / INTERVAL) * INTERVAL until end) {
+            hash = RollingHash.append(hash, buffer[i])
+        }
+        return hash
+    }
+
+    fun range(start: Int, end: Int): Long {
+        return RollingHash.sub(prefix(end), RollingHash.mul(prefix(start), RollingHash.pow(end - start)))
+    }
+}
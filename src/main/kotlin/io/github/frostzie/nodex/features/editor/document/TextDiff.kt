@@ -0,0 +1,167 @@
+package io.github.frostzie.nodex.features.editor.document
+
+/**
+ * Line diff between two texts using Myers' algorithm, for applying a change on disk as a few targeted
+ * replacements instead of replacing the whole text.
+ *
+ * Common leading and trailing lines are stripped before diffing, which leaves little to compare for typical edits.
+ * If the remaining texts differ in more than [MAX_EDITS] lines, the whole remaining block counts as one change.
+ * Pure computation, safe to run off the FX thread.
+ */
+object TextDiff {
+    private const val MAX_EDITS = 1000
+
+    /**
+     * Replacing [start, end) of the old text with [text].
+     */
+    class Hunk(val start: Int, val end: Int, val text: String)
+
+    /**
+     * Lines [oldStart, oldEnd) of the old text replaced by lines [newStart, newEnd) of the new one.
+     */
+    class LineHunk(val oldStart: Int, val oldEnd: Int, val newStart: Int, val newEnd: Int)
+
+    /**
+     * Splits text into lines, each keeping its trailing `\n`, so joining them gives back the text.
+     */
+    fun lines(text: String): List<String> {
+        val lines = ArrayList<String>()
+        var start = 0
+        while (start < text.length) {
+            val newline = text.indexOf('\n', start)
+            val end = if (newline < 0) text.length else newline + 1
+            lines.add(text.substring(start, end))
+            start = end
+        }
+        return lines
+    }
+
+    /**
+     * The changes turning [oldText] into [newText] as character ranges of [oldText], in ascending order.
+     */
+    fun diff(oldText: String, newText: String): List<Hunk> {
+        if (oldText == newText) return emptyList()
+        val oldLines = lines(oldText)
+        val newLines = lines(newText)
+        val oldOffsets = offsets(oldLines)
+        val newOffsets = offsets(newLines)
+
+        return diffLines(oldLines, newLines).map { hunk ->
+            var start = oldOffsets[hunk.oldStart]
+            var end = oldOffsets[hunk.oldEnd]
+            var newStart = newOffsets[hunk.newStart]
+            var newEnd = newOffsets[hunk.newEnd]
+            // Narrow down to the characters that differ, so a changed value does not replace its whole line
+            while (start < end && newStart < newEnd && oldText[start] == newText[newStart]) {
+                start++
+                newStart++
+            }
+            while (end > start && newEnd > newStart && oldText[end - 1] == newText[newEnd - 1]) {
+                end--
+                newEnd--
+            }
+            Hunk(start, end, newText.substring(newStart, newEnd))
+        }
+    }
+
+    /**
+     * The line ranges that differ between [oldLines] and [newLines], in ascending order.
+     */
+    fun diffLines(oldLines: List<String>, newLines: List<String>): List<LineHunk> {
+        var prefix = 0
+        while (prefix < oldLines.size && prefix < newLines.size && oldLines[prefix] == newLines[prefix]) prefix++
+        var suffix = 0
+        while (suffix < oldLines.size - prefix && suffix < newLines.size - prefix &&
+            oldLines[oldLines.size - 1 - suffix] == newLines[newLines.size - 1 - suffix]
+        ) suffix++
+
+        val oldEnd = oldLines.size - suffix
+        val newEnd = newLines.size - suffix
+        if (prefix == oldEnd && prefix == newEnd) return emptyList()
+
+        // Lines as ids, so the inner loop compares ints instead of strings
+        val ids = HashMap<String, Int>()
+        val a = IntArray(oldEnd - prefix) { ids.getOrPut(oldLines[prefix + it]) { ids.size } }
+        val b = IntArray(newEnd - prefix) { ids.getOrPut(newLines[prefix + it]) { ids.size } }
+
+        val hunks = myers(a, b) ?: return listOf(LineHunk(prefix, oldEnd, prefix, newEnd))
+        return hunks.map { LineHunk(it.oldStart + prefix, it.oldEnd + prefix, it.newStart + prefix, it.newEnd + prefix) }
+    }
+
+    private fun offsets(lines: List<String>): IntArray {
+        val offsets = IntArray(lines.size + 1)
+        for (i in lines.indices) offsets[i + 1] = offsets[i] + lines[i].length
+        return offsets
+    }
+
+    /**
+     * Shortest edit script between [a] and [b] as hunks, or null if it takes more than [MAX_EDITS] edits.
+     */
+    private fun myers(a: IntArray, b: IntArray): List<LineHunk>? {
+        val n = a.size
+        val m = b.size
+        val maxD = minOf(n + m, MAX_EDITS)
+        val offset = maxD + 1
+        val v = IntArray(2 * maxD + 3)
+        // The furthest reaching x per diagonal after each round, for walking the path back
+        val trace = ArrayList<IntArray>()
+
+        var found = -1
+        for (d in 0..maxD) {
+            for (k in -d..d step 2) {
+                var x = if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    v[offset + k + 1]
+                } else {
+                    v[offset + k - 1] + 1
+                }
+                var y = x - k
+                while (x < n && y < m && a[x] == b[y]) {
+                    x++
+                    y++
+                }
+                v[offset + k] = x
+                if (x >= n && y >= m) {
+                    found = d
+                    break
+                }
+            }
+            trace.add(v.copyOfRange(offset - d - 1, offset + d + 2))
+            if (found >= 0) break
+        }
+        if (found < 0) return null
+
+        // Walk back from the end, collecting the edits as hunks
+        val hunks = ArrayList<LineHunk>()
+        var x = n
+        var y = m
+        for (d in found downTo 1) {
+            val previous = trace[d - 1]
+            // previous covers diagonals -d..d of round d - 1, index of diagonal k is k + d
+            val k = x - y
+            val down = k == -d || (k != d && previous[k - 1 + d] < previous[k + 1 + d])
+            val previousK = if (down) k + 1 else k - 1
+            val previousX = previous[previousK + d]
+            val previousY = previousX - previousK
+            if (down) {
+                addHunk(hunks, previousX, previousX, previousY, previousY + 1)
+            } else {
+                addHunk(hunks, previousX, previousX + 1, previousY, previousY)
+            }
+            // The snake after the edit needs no hunk, it is skipped by jumping to where the edit started
+            x = previousX
+            y = previousY
+        }
+        hunks.reverse()
+        return hunks
+    }
+
+    // Hunks are collected from the end, so a new one directly before the last one extends it
+    private fun addHunk(hunks: ArrayList<LineHunk>, oldStart: Int, oldEnd: Int, newStart: Int, newEnd: Int) {
+        val last = hunks.lastOrNull()
+        if (last != null && last.oldStart == oldEnd && last.newStart == newEnd) {
+            hunks[hunks.size - 1] = LineHunk(oldStart, last.oldEnd, newStart, last.newEnd)
+        } else {
+            hunks.add(LineHunk(oldStart, oldEnd, newStart, newEnd))
+        }
+    }
+}
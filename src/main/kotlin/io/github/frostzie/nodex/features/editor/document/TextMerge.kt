@@ -0,0 +1,105 @@
+package io.github.frostzie.nodex.features.editor.document
+
+/**
+ * Three-way line merge, for bringing a change on disk into a document with unsaved edits.
+ *
+ * Both sides are diffed against their common base with [TextDiff]. Regions changed on only one side take that
+ * side, regions changed the same way on both are taken once, and regions changed differently on both are kept
+ * with conflict markers, so neither side's edits are lost. Pure computation, safe to run off the FX thread.
+ */
+object TextMerge {
+    const val OURS_MARKER = "<<<<<<< editor"
+    const val SEPARATOR_MARKER = "======="
+    const val THEIRS_MARKER = ">>>>>>> disk"
+
+    class Result(val text: String, val conflicts: Int)
+
+    /**
+     * Merges [ours] (the editor's text) and [theirs] (the text on disk), which both started out as [base].
+     */
+    fun merge(base: String, ours: String, theirs: String): Result {
+        if (ours == theirs || theirs == base) return Result(ours, 0)
+        if (ours == base) return Result(theirs, 0)
+
+        val baseLines = TextDiff.lines(base)
+        val ourLines = TextDiff.lines(ours)
+        val theirLines = TextDiff.lines(theirs)
+        val ourHunks = TextDiff.diffLines(baseLines, ourLines)
+        val theirHunks = TextDiff.diffLines(baseLines, theirLines)
+
+        val result = StringBuilder(maxOf(ours.length, theirs.length))
+        var conflicts = 0
+        var i = 0
+        var j = 0
+        // Base lines up to here are in the result, and the offsets of the same line in ours and theirs
+        var copied = 0
+        var ourDelta = 0
+        var theirDelta = 0
+
+        while (i < ourHunks.size || j < theirHunks.size) {
+            val groupStart = minOf(
+                ourHunks.getOrNull(i)?.oldStart ?: Int.MAX_VALUE,
+                theirHunks.getOrNull(j)?.oldStart ?: Int.MAX_VALUE
+            )
+            var groupEnd = groupStart
+            val firstOur = i
+            val firstTheir = j
+            // Collect every hunk touching the group, on either side, until it stops growing
+            while (true) {
+                val our = ourHunks.getOrNull(i)
+                val their = theirHunks.getOrNull(j)
+                if (our != null && (our.oldStart < groupEnd || our.oldStart == groupStart)) {
+                    groupEnd = maxOf(groupEnd, our.oldEnd)
+                    i++
+                } else if (their != null && (their.oldStart < groupEnd || their.oldStart == groupStart)) {
+                    groupEnd = maxOf(groupEnd, their.oldEnd)
+                    j++
+                } else {
+                    break
+                }
+            }
+
+            appendLines(result, baseLines, copied, groupStart)
+            val ourStart = groupStart + ourDelta
+            val theirStart = groupStart + theirDelta
+            for (k in firstOur until i) ourDelta += ourHunks[k].newEnd - ourHunks[k].newStart - (ourHunks[k].oldEnd - ourHunks[k].oldStart)
+            for (k in firstTheir until j) theirDelta += theirHunks[k].newEnd - theirHunks[k].newStart - (theirHunks[k].oldEnd - theirHunks[k].oldStart)
+            val ourEnd = groupEnd + ourDelta
+            val theirEnd = groupEnd + theirDelta
+
+            when {
+                firstTheir == j -> appendLines(result, ourLines, ourStart, ourEnd)
+                firstOur == i -> appendLines(result, theirLines, theirStart, theirEnd)
+                ourLines.subList(ourStart, ourEnd) == theirLines.subList(theirStart, theirEnd) ->
+                    appendLines(result, ourLines, ourStart, ourEnd)
+                else -> {
+                    conflicts++
+                    appendLine(result, OURS_MARKER)
+                    appendLines(result, ourLines, ourStart, ourEnd)
+                    appendLine(result, SEPARATOR_MARKER)
+                    appendLines(result, theirLines, theirStart, theirEnd)
+                    appendLine(result, THEIRS_MARKER)
+                }
+            }
+            copied = groupEnd
+        }
+        appendLines(result, baseLines, copied, baseLines.size)
+        return Result(result.toString(), conflicts)
+    }
+
+    /**
+     * Whether [text] still has a conflict marker line left by [merge], i.e. the user has not resolved all conflicts.
+     */
+    fun hasConflictMarkers(text: String): Boolean =
+        text.lineSequence().any { it == OURS_MARKER || it == THEIRS_MARKER }
+
+    private fun appendLines(builder: StringBuilder, lines: List<String>, start: Int, end: Int) {
+        for (index in start until end) builder.append(lines[index])
+    }
+
+    // Markers go on their own line, even after a last line without a trailing newline
+    private fun appendLine(builder: StringBuilder, line: String) {
+        if (builder.isNotEmpty() && builder.last() != '\n') builder.append('\n')
+        builder.append(line).append('\n')
+    }
+}
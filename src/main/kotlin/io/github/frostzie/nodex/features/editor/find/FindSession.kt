@@ -0,0 +1,388 @@
+package io.github.frostzie.nodex.features.editor.find
+
+import io.github.frostzie.nodex.features.editor.document.PieceTableDocument
+import io.github.frostzie.nodex.utils.LoggerProvider
+import javafx.animation.PauseTransition
+import javafx.application.Platform
+import javafx.beans.property.ReadOnlyIntegerProperty
+import javafx.beans.property.ReadOnlyStringProperty
+import javafx.beans.property.SimpleIntegerProperty
+import javafx.beans.property.SimpleStringProperty
+import javafx.util.Duration
+import org.fxmisc.richtext.CodeArea
+import org.fxmisc.richtext.SelectionImpl
+import org.reactfx.Subscription
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.regex.PatternSyntaxException
+
+/**
+ * Find and replace within one editor tab.
+ *
+ * Matching runs on a background thread against a snapshot of the document's text, tagged with the document version
+ * it was taken at, and results for an outdated version are searched again instead of being shown. Edits trigger
+ * a new search once typing pauses.
+ *
+ * Matches are only kept as offsets. Decorations are created for the matches in the visible paragraphs and reused
+ * as the viewport moves, so a query matching all over a file with hundreds of thousands of lines costs
+ * no more to display than one matching only on screen.
+ *
+ * Replace all computes the replacement of each match on the worker and applies them as one multi-change, so only
+ * the matches are touched and the whole replace is undone in one step.
+ */
+class FindSession(
+    private val codeArea: CodeArea,
+    private val document: PieceTableDocument
+) {
+    companion object {
+        private val logger = LoggerProvider.getLogger("FindSession")
+        private const val RESEARCH_DELAY_MS = 150.0
+
+        // Matches past this are not counted or highlighted, replace all still gets every one
+        const val MAX_MATCHES = 100_000
+
+        // Extra paragraphs decorated around the viewport so small scrolls do not show undecorated matches
+        private const val VIEWPORT_MARGIN = 20
+
+        private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "Nodex-Find").apply { isDaemon = true }
+        }
+    }
+
+    private enum class Select { NONE, NEAREST, NEXT, PREVIOUS }
+
+    private class Matches {
+        var starts = IntArray(64)
+        var ends = IntArray(64)
+        var size = 0
+
+        fun add(start: Int, end: Int) {
+            if (size == starts.size) {
+                starts = starts.copyOf(size * 2)
+                ends = ends.copyOf(size * 2)
+            }
+            starts[size] = start
+            ends[size] = end
+            size++
+        }
+    }
+
+    private val matchCountProperty = SimpleIntegerProperty(0)
+    private val currentMatchProperty = SimpleIntegerProperty(-1)
+    private val errorProperty = SimpleStringProperty()
+
+    /**
+     * Number of matches, at most [MAX_MATCHES].
+     */
+    val matchCount: ReadOnlyIntegerProperty get() = matchCountProperty
+
+    /**
+     * Index of the selected match, -1 if the selection is not a match.
+     */
+    val currentMatch: ReadOnlyIntegerProperty get() = currentMatchProperty
+
+    /**
+     * Why the query cannot be searched for, e.g. an invalid regex, null otherwise.
+     */
+    val error: ReadOnlyStringProperty get() = errorProperty
+
+    private var matcher: TextMatcher? = null
+    private var starts = IntArray(0)
+    private var ends = IntArray(0)
+    private var count = 0
+    // Document version the matches were found in, they are outdated once it changes
+    private var resultVersion = -1L
+
+    // Only the latest request's result is applied, the others were superseded
+    private var request = 0L
+    private var pendingTask: Future<*>? = null
+    private var pendingSelect = Select.NONE
+
+    private val decorations = ArrayList<SelectionImpl<Collection<String>, String, Collection<String>>>()
+    private var decoratedFrom = -1
+    private var decoratedTo = -1
+    private var decoratedVersion = -1L
+    private var decoratePending = false
+    private var disposed = false
+
+    private val researchDelay = PauseTransition(Duration.millis(RESEARCH_DELAY_MS))
+    private val changeSubscription: Subscription
+    private val viewportSubscription: Subscription
+
+    init {
+        researchDelay.setOnFinished { submit(Select.NONE) }
+        changeSubscription = codeArea.plainTextChanges().subscribe {
+            if (matcher != null) researchDelay.playFromStart()
+        }
+        viewportSubscription = codeArea.viewportDirtyEvents().subscribe { scheduleDecorate() }
+    }
+
+    /**
+     * Searches for [query], selecting the first match from the caret on if [selectNearest] is set.
+     * Null or an empty query clears the search.
+     */
+    fun search(query: FindQuery?, selectNearest: Boolean = true) {
+        researchDelay.stop()
+        matcher = null
+        errorProperty.set(null)
+        if (query == null || query.text.isEmpty()) {
+            clear()
+            return
+        }
+        matcher = try {
+            TextMatcher.create(query)
+        } catch (e: PatternSyntaxException) {
+            errorProperty.set(e.description)
+            clear()
+            return
+        }
+        submit(if (selectNearest) Select.NEAREST else Select.NONE)
+    }
+
+    fun next() = select(Select.NEXT)
+
+    fun previous() = select(Select.PREVIOUS)
+
+    /**
+     * Replaces the selected match and selects the next one. If the selection is not a match, only selects the next one.
+     */
+    fun replaceCurrent(replacement: String) {
+        val matcher = matcher ?: return
+        val selection = codeArea.selection
+        if (isCurrent() && selection.length > 0) {
+            val text = try {
+                matcher.replacement(document.snapshot(), selection.start, selection.end, replacement)
+            } catch (e: RuntimeException) {
+                errorProperty.set(e.message)
+                return
+            }
+            if (text != null) {
+                codeArea.replaceText(selection.start, selection.end, text)
+                codeArea.moveTo(selection.start + text.length)
+            }
+        }
+        select(Select.NEXT)
+    }
+
+    /**
+     * Replaces every match in the document as one compound edit.
+     */
+    fun replaceAll(replacement: String) {
+        val matcher = matcher ?: return
+        val version = document.version
+        val text = document.snapshot()
+        val requestId = ++request
+        researchDelay.stop()
+        pendingTask?.cancel(true)
+        pendingTask = executor.submit {
+            val result = try {
+                matcher.replaceAll(text, replacement)
+            } catch (e: RuntimeException) {
+                Platform.runLater { if (requestId == request) errorProperty.set(e.message) }
+                return@submit
+            }
+            Platform.runLater {
+                if (disposed || requestId != request) return@runLater
+                pendingTask = null
+                when {
+                    result.isEmpty() -> submit(Select.NONE)
+                    // Edited meanwhile, the offsets no longer apply
+                    document.version != version -> replaceAll(replacement)
+                    else -> {
+                        // Last match first, so the offsets of the ones before it stay valid
+                        val change = codeArea.createMultiChange(result.size)
+                        for (index in result.indices.reversed()) {
+                            val match = result[index]
+                            change.replaceText(match.start, match.end, match.text)
+                        }
+                        change.commit()
+                        codeArea.moveTo(result[0].start)
+                        codeArea.requestFollowCaret()
+                        logger.debug("Replaced ${result.size} matches")
+                        submit(Select.NONE)
+                    }
+                }
+            }
+        }
+    }
+
+    private fun select(direction: Select) {
+        if (matcher == null) return
+        if (resultVersion != document.version) {
+            // Outdated, select once the new results are in
+            researchDelay.stop()
+            submit(direction)
+            return
+        }
+        if (count == 0) return
+
+        val selection = codeArea.selection
+        val index = when (direction) {
+            Select.PREVIOUS -> (lowerBound(starts, selection.start) - 1).let { if (it < 0) count - 1 else it }
+            Select.NEXT -> lowerBound(starts, if (selection.length > 0) selection.end else selection.start).let { if (it >= count) 0 else it }
+            else -> lowerBound(starts, selection.start).let { if (it >= count) 0 else it }
+        }
+        codeArea.selectRange(starts[index], ends[index])
+        codeArea.requestFollowCaret()
+        currentMatchProperty.set(index)
+    }
+
+    private fun submit(select: Select) {
+        val matcher = matcher ?: return
+        val version = document.version
+        val text = document.snapshot()
+        val requestId = ++request
+        pendingSelect = select
+
+        pendingTask?.cancel(true)
+        pendingTask = executor.submit {
+            val matches = Matches()
+            try {
+                matcher.findAll(text) { start, end ->
+                    matches.add(start, end)
+                    matches.size < MAX_MATCHES && !Thread.currentThread().isInterrupted
+                }
+            } catch (e: SearchCancelledException) {
+                return@submit
+            } catch (e: RuntimeException) {
+                logger.error("Failed to search the document", e)
+                return@submit
+            }
+            if (Thread.currentThread().isInterrupted) return@submit
+
+            Platform.runLater { applyResult(requestId, version, matches) }
+        }
+    }
+
+    private fun applyResult(requestId: Long, version: Long, matches: Matches) {
+        if (disposed || requestId != request) return
+        pendingTask = null
+        if (version != document.version) {
+            submit(pendingSelect)
+            return
+        }
+
+        starts = matches.starts
+        ends = matches.ends
+        count = matches.size
+        resultVersion = version
+        matchCountProperty.set(matches.size)
+        updateCurrentMatch()
+        decorate()
+
+        val select = pendingSelect
+        pendingSelect = Select.NONE
+        if (select != Select.NONE) select(select)
+    }
+
+    private fun updateCurrentMatch() {
+        val selection = codeArea.selection
+        currentMatchProperty.set(if (isCurrent()) lowerBound(starts, selection.start) else -1)
+    }
+
+    // Whether the selection is exactly one of the current matches
+    private fun isCurrent(): Boolean {
+        if (resultVersion != document.version) return false
+        val selection = codeArea.selection
+        val index = lowerBound(starts, selection.start)
+        return index < count && starts[index] == selection.start && ends[index] == selection.end
+    }
+
+    private fun scheduleDecorate() {
+        if (decoratePending || count == 0) return
+        // After the layout pass, as changing selections during it would dirty the viewport again
+        decoratePending = true
+        Platform.runLater {
+            decoratePending = false
+            decorate()
+        }
+    }
+
+    /**
+     * Decorates the matches in and around the visible paragraphs, reusing the existing decorations.
+     */
+    private fun decorate() {
+        if (disposed) return
+        // Outdated matches keep their decorations, which follow the edits, until the new results are in
+        if (resultVersion != document.version) return
+        if (count == 0 || codeArea.visibleParagraphs.isEmpty()) {
+            clearDecorations()
+            return
+        }
+
+        val lastParagraph = codeArea.paragraphs.size - 1
+        val firstVisible = (codeArea.firstVisibleParToAllParIndex() - VIEWPORT_MARGIN).coerceAtLeast(0)
+        val lastVisible = (codeArea.lastVisibleParToAllParIndex() + VIEWPORT_MARGIN).coerceAtMost(lastParagraph)
+        val from = codeArea.getAbsolutePosition(firstVisible, 0)
+        val to = codeArea.getAbsolutePosition(lastVisible, codeArea.getParagraphLength(lastVisible))
+
+        // First match ending after the viewport start, and the first one starting past its end
+        val first = lowerBound(ends, from + 1)
+        val last = lowerBound(starts, to)
+        if (first == decoratedFrom && last == decoratedTo && resultVersion == decoratedVersion) return
+
+        var used = 0
+        for (index in first until last) {
+            val decoration = decorations.getOrNull(used) ?: SelectionImpl<Collection<String>, String, Collection<String>>(
+                "find-match-$used", codeArea
+            ) { path -> path.styleClass.setAll("find-match") }.also {
+                codeArea.addSelection(it)
+                decorations.add(it)
+            }
+            decoration.selectRange(starts[index], ends[index])
+            used++
+        }
+        while (decorations.size > used) removeDecoration(decorations.removeAt(decorations.size - 1))
+        decoratedFrom = first
+        decoratedTo = last
+        decoratedVersion = resultVersion
+    }
+
+    private fun removeDecoration(decoration: SelectionImpl<Collection<String>, String, Collection<String>>) {
+        codeArea.removeSelection(decoration)
+        decoration.dispose()
+    }
+
+    private fun clearDecorations() {
+        decorations.forEach { removeDecoration(it) }
+        decorations.clear()
+        decoratedFrom = -1
+        decoratedTo = -1
+    }
+
+    private fun clear() {
+        ++request
+        pendingTask?.cancel(true)
+        pendingTask = null
+        pendingSelect = Select.NONE
+        count = 0
+        resultVersion = -1
+        matchCountProperty.set(0)
+        currentMatchProperty.set(-1)
+        clearDecorations()
+    }
+
+    // Index of the first of the [count] sorted values that is >= [value]
+    private fun lowerBound(values: IntArray, value: Int): Int {
+        var low = 0
+        var high = count
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (values[mid] < value) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    /**
+     * Removes all decorations and stops listening to the CodeArea. Call when the search is closed or the tab is.
+     */
+    fun dispose() {
+        researchDelay.stop()
+        clear()
+        matcher = null
+        disposed = true
+        changeSubscription.unsubscribe()
+        viewportSubscription.unsubscribe()
+    }
+}
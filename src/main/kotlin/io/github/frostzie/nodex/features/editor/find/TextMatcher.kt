@@ -0,0 +1,215 @@
+package io.github.frostzie.nodex.features.editor.find
+
+import java.util.regex.Matcher
+import java.util.regex.Pattern
+
+/**
+ * What to search for, as entered in the find bar.
+ */
+data class FindQuery(val text: String, val regex: Boolean = false, val matchCase: Boolean = false)
+
+/**
+ * [text] replacing the match at [start, end).
+ */
+class Replacement(val start: Int, val end: Int, val text: String)
+
+/**
+ * Thrown out of a regex search when its thread is interrupted, as a pattern can backtrack for a very long time.
+ */
+class SearchCancelledException : RuntimeException("Search cancelled")
+
+/**
+ * Finds the matches of a [FindQuery] in a text. Created once per query and reused for every search with it,
+ * so the skip table or compiled pattern is only built once. Stateless, safe to use from any thread.
+ */
+sealed class TextMatcher {
+
+    companion object {
+        /**
+         * Creates the matcher for [query], throws [java.util.regex.PatternSyntaxException] for an invalid regex.
+         */
+        fun create(query: FindQuery): TextMatcher {
+            require(query.text.isNotEmpty()) { "Empty query" }
+            return if (query.regex) RegexMatcher(PatternCache.get(query.text, query.matchCase)) else LiteralMatcher(query.text, query.matchCase)
+        }
+    }
+
+    /**
+     * Calls [onMatch] with the start and end of every non-empty match in [text] at or after [from], in order,
+     * until it returns false. Matches do not overlap.
+     */
+    abstract fun findAll(text: CharSequence, from: Int = 0, onMatch: (start: Int, end: Int) -> Boolean)
+
+    /**
+     * The text replacing the match at [start, end) of [text], or null if there is no match there anymore.
+     */
+    abstract fun replacement(text: CharSequence, start: Int, end: Int, replacement: String): String?
+
+    /**
+     * The replacement of every match of [text] in order, leaving out those that would not change anything.
+     */
+    fun replaceAll(text: CharSequence, replacement: String): List<Replacement> {
+        val result = ArrayList<Replacement>()
+        findAll(text) { start, end ->
+            val replaced = replacement(text, start, end, replacement)
+            if (replaced != null && !replaced.contentEquals(text.subSequence(start, end))) {
+                result.add(Replacement(start, end, replaced))
+            }
+            true
+        }
+        return result
+    }
+
+    /**
+     * Boyer-Moore-Horspool search: the last character of the window decides how far the pattern can skip ahead,
+     * so most characters of the text are never compared. Characters share skip table slots by their low byte,
+     * which can only make a skip shorter, never wrong.
+     */
+    private class LiteralMatcher(query: String, private val matchCase: Boolean) : TextMatcher() {
+        private val pattern = if (matchCase) query else fold(query)
+        private val skip = IntArray(256) { pattern.length }
+
+        init {
+            for (i in 0 until pattern.length - 1) {
+                skip[pattern[i].code and 0xFF] = pattern.length - 1 - i
+            }
+        }
+
+        override fun findAll(text: CharSequence, from: Int, onMatch: (start: Int, end: Int) -> Boolean) {
+            val length = pattern.length
+            val last = length - 1
+            var position = from
+            while (position <= text.length - length) {
+                val tail = charAt(text, position + last)
+                if (tail == pattern[last] && matchesAt(text, position, last)) {
+                    if (!onMatch(position, position + length)) return
+                    position += length
+                } else {
+                    position += skip[tail.code and 0xFF]
+                }
+            }
+        }
+
+        private fun matchesAt(text: CharSequence, position: Int, count: Int): Boolean {
+            for (i in 0 until count) {
+                if (charAt(text, position + i) != pattern[i]) return false
+            }
+            return true
+        }
+
+        private fun charAt(text: CharSequence, index: Int): Char = if (matchCase) text[index] else fold(text[index])
+
+        override fun replacement(text: CharSequence, start: Int, end: Int, replacement: String): String? {
+            return if (end - start == pattern.length && matchesAt(text, start, pattern.length)) replacement else null
+        }
+
+        private fun fold(text: String): String = buildString(text.length) { text.forEach { append(fold(it)) } }
+
+        private fun fold(char: Char): Char = when {
+            // Almost all of a datapack is ASCII, which skips the full case mapping
+            char < 'A' -> char
+            char <= 'Z' -> char + ('a' - 'A')
+            char < '\u0080' -> char
+            else -> Character.toLowerCase(Character.toUpperCase(char))
+        }
+    }
+
+    private class RegexMatcher(private val pattern: Pattern) : TextMatcher() {
+
+        override fun findAll(text: CharSequence, from: Int, onMatch: (start: Int, end: Int) -> Boolean) {
+            val matcher = pattern.matcher(InterruptibleText(text))
+            var position = from
+            while (position <= text.length && matcher.find(position)) {
+                if (matcher.end() == matcher.start()) {
+                    // Empty matches (e.g. `^`) are skipped, there is nothing to highlight or replace
+                    position = matcher.end() + 1
+                    continue
+                }
+                if (!onMatch(matcher.start(), matcher.end())) return
+                position = matcher.end()
+            }
+        }
+
+        override fun replacement(text: CharSequence, start: Int, end: Int, replacement: String): String? {
+            // Transparent bounds, so lookarounds still see the text around the match
+            val matcher = pattern.matcher(text).region(start, text.length).useTransparentBounds(true).useAnchoringBounds(false)
+            if (!matcher.lookingAt() || matcher.end() != end) return null
+            return expand(matcher, replacement)
+        }
+
+        /**
+         * Substitutes `$n` and `${name}` group references like [Matcher.appendReplacement], `\` escapes the next character.
+         */
+        private fun expand(matcher: Matcher, replacement: String): String {
+            val result = StringBuilder()
+            var i = 0
+            while (i < replacement.length) {
+                val char = replacement[i]
+                when {
+                    char == '\\' && i + 1 < replacement.length -> {
+                        result.append(replacement[i + 1])
+                        i += 2
+                    }
+                    char == '$' && i + 1 < replacement.length && replacement[i + 1] == '{' -> {
+                        val close = replacement.indexOf('}', i + 2)
+                        require(close > 0) { "Unclosed group name in replacement" }
+                        result.append(matcher.group(replacement.substring(i + 2, close)) ?: "")
+                        i = close + 1
+                    }
+                    char == '$' && i + 1 < replacement.length && replacement[i + 1].isDigit() -> {
+                        // Takes as many digits as still form an existing group, like Matcher does
+                        var group = replacement[i + 1] - '0'
+                        i += 2
+                        while (i < replacement.length && replacement[i].isDigit() && group * 10 + (replacement[i] - '0') <= matcher.groupCount()) {
+                            group = group * 10 + (replacement[i] - '0')
+                            i++
+                        }
+                        result.append(matcher.group(group) ?: "")
+                    }
+                    else -> {
+                        result.append(char)
+                        i++
+                    }
+                }
+            }
+            return result.toString()
+        }
+    }
+}
+
+/**
+ * Lets an interrupt stop a regex search, which only ever reads the text and never checks for interrupts itself.
+ */
+private class InterruptibleText(private val text: CharSequence) : CharSequence {
+    private var reads = 0
+
+    override val length: Int get() = text.length
+
+    override fun get(index: Int): Char {
+        if ((++reads and 0xFFFF) == 0 && Thread.currentThread().isInterrupted) throw SearchCancelledException()
+        return text[index]
+    }
+
+    override fun subSequence(startIndex: Int, endIndex: Int): CharSequence = text.subSequence(startIndex, endIndex)
+
+    override fun toString(): String = text.toString()
+}
+
+/**
+ * Compiled patterns of recent regex queries, so typing in the find bar and switching tabs does not recompile them.
+ */
+private object PatternCache {
+    private const val MAX_SIZE = 32
+
+    private val patterns = object : LinkedHashMap<Pair<String, Boolean>, Pattern>(MAX_SIZE, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Pair<String, Boolean>, Pattern>): Boolean = size > MAX_SIZE
+    }
+
+    @Synchronized
+    fun get(regex: String, matchCase: Boolean): Pattern {
+        return patterns.getOrPut(regex to matchCase) {
+            val flags = if (matchCase) Pattern.MULTILINE else Pattern.MULTILINE or Pattern.CASE_INSENSITIVE or Pattern.UNICODE_CASE
+            Pattern.compile(regex, flags)
+        }
+    }
+}
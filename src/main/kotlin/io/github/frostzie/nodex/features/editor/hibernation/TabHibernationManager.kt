@@ -0,0 +1,86 @@
+package io.github.frostzie.nodex.features.editor.hibernation
+
+import io.github.frostzie.nodex.modules.main.TextEditorViewModel
+import io.github.frostzie.nodex.settings.categories.MainConfig
+import io.github.frostzie.nodex.utils.LoggerProvider
+
+/**
+ * Keeps the memory used by open tabs within [MainConfig.tabMemoryBudgetMb].
+ *
+ * Tabs are tracked in order of activation. Once the estimated size of the loaded tabs is over the budget,
+ * the least recently used ones are hibernated: they are marked as not loaded, so the view drops their CodeArea
+ * with its styles and undo history, and their document is emptied. A clean tab is read from disk again when
+ * activated, a tab with unsaved changes keeps a compressed [TextSnapshot] of its text until then.
+ */
+class TabHibernationManager {
+
+    companion object {
+        private val logger = LoggerProvider.getLogger("TabHibernationManager")
+
+        // Rough heap use per character of a loaded tab: document, paragraphs, style spans and undo history
+        private const val ESTIMATED_BYTES_PER_CHAR = 24L
+    }
+
+    // Tab ids, least recently activated first
+    private val accessOrder = LinkedHashSet<String>()
+
+    fun touch(tabData: TextEditorViewModel.TabData) {
+        accessOrder.remove(tabData.id)
+        accessOrder.add(tabData.id)
+    }
+
+    fun forget(tabData: TextEditorViewModel.TabData) {
+        accessOrder.remove(tabData.id)
+        tabData.snapshot = null
+    }
+
+    /**
+     * Hibernates least recently used tabs, other than [active], until the rest fits the budget.
+     */
+    fun enforceBudget(tabs: List<TextEditorViewModel.TabData>, active: TextEditorViewModel.TabData?) {
+        val budget = MainConfig.tabMemoryBudgetMb.get() * 1024L * 1024L
+        var used = tabs.sumOf { estimatedSize(it) }
+        if (used <= budget) return
+
+        val tabsById = tabs.associateBy { it.id }
+        for (id in accessOrder.toList()) {
+            if (used <= budget) break
+            val tabData = tabsById[id] ?: continue
+            val size = estimatedSize(tabData)
+            if (id == active?.id || size == 0L) continue
+            hibernate(tabData)
+            used -= size
+        }
+    }
+
+    /**
+     * Puts the tab's snapshot back into its document, returns false if it has none and should be read from disk.
+     */
+    fun restore(tabData: TextEditorViewModel.TabData): Boolean {
+        val snapshot = tabData.snapshot ?: return false
+        tabData.document.replaceAll(snapshot.text())
+        tabData.snapshot = null
+        logger.debug("Restored hibernated tab: {}", tabData.displayName)
+        return true
+    }
+
+    private fun hibernate(tabData: TextEditorViewModel.TabData) {
+        if (tabData.isDirty.get()) {
+            tabData.snapshot = TextSnapshot.of(tabData.document.toFileText(), MainConfig.hibernateOffHeap.get())
+        }
+        // Unloaded first, so the view lets go of the CodeArea before the document is emptied
+        tabData.isLoaded.set(false)
+        tabData.document.replaceAll("")
+        logger.debug(
+            "Hibernated tab: {} (snapshot: {} bytes)",
+            tabData.displayName,
+            tabData.snapshot?.compressedSize ?: 0
+        )
+    }
+
+    // Large files are shown from their mapping and barely use the heap
+    private fun estimatedSize(tabData: TextEditorViewModel.TabData): Long {
+        if (!tabData.isLoaded.get() || tabData.largeFile.get() != null) return 0L
+        return tabData.document.length * ESTIMATED_BYTES_PER_CHAR
+    }
+}
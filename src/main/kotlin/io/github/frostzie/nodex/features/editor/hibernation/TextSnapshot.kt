@@ -0,0 +1,54 @@
+package io.github.frostzie.nodex.features.editor.hibernation
+
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+/**
+ * A deflate-compressed copy of a file's text, kept for hibernated tabs with unsaved changes.
+ * The compressed bytes can be kept in a direct buffer, outside of the Java heap.
+ */
+class TextSnapshot private constructor(private val data: ByteBuffer, private val byteLength: Int) {
+
+    companion object {
+        fun of(text: String, offHeap: Boolean): TextSnapshot {
+            val input = text.toByteArray(Charsets.UTF_8)
+            val deflater = Deflater(Deflater.BEST_SPEED)
+            try {
+                deflater.setInput(input)
+                deflater.finish()
+                val output = ByteArrayOutputStream(maxOf(64, input.size / 4))
+                val chunk = ByteArray(8192)
+                while (!deflater.finished()) {
+                    output.write(chunk, 0, deflater.deflate(chunk))
+                }
+                val bytes = output.toByteArray()
+                val data = if (offHeap) ByteBuffer.allocateDirect(bytes.size).put(bytes).flip() else ByteBuffer.wrap(bytes)
+                return TextSnapshot(data, input.size)
+            } finally {
+                deflater.end()
+            }
+        }
+    }
+
+    val compressedSize: Int
+        get() = data.capacity()
+
+    fun text(): String {
+        val inflater = Inflater()
+        try {
+            inflater.setInput(data.duplicate())
+            val output = ByteArray(byteLength)
+            var length = 0
+            while (length < output.size && !inflater.finished()) {
+                val read = inflater.inflate(output, length, output.size - length)
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break
+                length += read
+            }
+            return String(output, 0, length, Charsets.UTF_8)
+        } finally {
+            inflater.end()
+        }
+    }
+}
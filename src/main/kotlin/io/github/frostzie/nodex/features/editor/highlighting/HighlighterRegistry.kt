@@ -0,0 +1,37 @@
+package io.github.frostzie.nodex.features.editor.highlighting
+
+import io.github.frostzie.nodex.RichJsonFX
+import org.fxmisc.richtext.CodeArea
+import java.nio.file.Path
+
+/**
+ * Maps file extensions to the syntax highlighter used for them in the editor.
+ * To add a language, implement a [SyntaxLexer] and register it here.
+ */
+object HighlighterRegistry {
+
+    private val jsonLexer = RichJsonFX()
+    private val factories = mutableMapOf<String, (CodeArea) -> IncrementalHighlighter<*>>()
+
+    init {
+        register("json") { IncrementalHighlighter(it, jsonLexer) }
+        register("mcmeta") { IncrementalHighlighter(it, jsonLexer) }
+        register("mcfunction") { IncrementalHighlighter(it, McFunctionLexer) }
+    }
+
+    /**
+     * Registers a highlighter for files with the given extension (without the dot), replacing any existing one.
+     */
+    fun register(extension: String, factory: (CodeArea) -> IncrementalHighlighter<*>) {
+        factories[extension.lowercase()] = factory
+    }
+
+    /**
+     * Creates a highlighter attached to [codeArea] for the file at [path], or returns null if its type has none.
+     * The caller is responsible for calling [IncrementalHighlighter.dispose].
+     */
+    fun create(codeArea: CodeArea, path: Path): IncrementalHighlighter<*>? {
+        val extension = path.fileName?.toString()?.substringAfterLast('.', "")?.lowercase() ?: return null
+        return factories[extension]?.invoke(codeArea)
+    }
+}
@@ -0,0 +1,390 @@
+package io.github.frostzie.nodex.features.editor.highlighting
+
+import io.github.frostzie.nodex.settings.categories.MainConfig
+import io.github.frostzie.nodex.utils.LoggerProvider
+import javafx.animation.PauseTransition
+import javafx.application.Platform
+import javafx.util.Duration
+import org.fxmisc.richtext.CodeArea
+import org.fxmisc.richtext.model.PlainTextChange
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument
+import org.fxmisc.richtext.model.StyleSpans
+import org.fxmisc.richtext.model.StyleSpansBuilder
+import org.fxmisc.richtext.model.TwoDimensional.Bias
+import org.reactfx.Subscription
+import java.util.BitSet
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * Keeps the syntax highlighting of a [CodeArea] up to date without re-lexing the whole document.
+ * The language is defined by the [SyntaxLexer], see [HighlighterRegistry] for which file uses which.
+ *
+ * The lexer state at the start of every paragraph is cached. After an edit only the changed
+ * paragraphs are re-lexed, continuing downwards until the newly computed state matches the cached one
+ * again, and only that paragraph range gets new style spans.
+ *
+ * Lexing runs on a background thread against an immutable snapshot of the document and a copy of the cached states
+ * from the edit down to [STATE_WINDOW_PARAGRAPHS] past it, so an edit never copies the states of the whole file.
+ * A pass that reaches the end of that copy before the states settle continues in the next one. Every result is
+ * tagged with the document version it was computed for and dropped if the text changed in the meantime,
+ * so only the final `setStyleSpans` call happens on the JavaFX thread.
+ *
+ * Documents larger than [MainConfig.largeFileHighlightThresholdKb] are highlighted viewport first: the visible
+ * paragraphs are lexed and styled before anything else, starting from the state cached at their top, and the dirty
+ * range is then lexed from its start in chunks of [FILL_CHUNK_PARAGRAPHS], each applied before the next one starts.
+ * Those passes style the viewport again once they reach it, with exact states. Paragraphs outside the viewport are
+ * remembered as unstyled and filled in chunk by chunk while the editor is idle, starting with whatever the user
+ * scrolls to.
+ */
+class IncrementalHighlighter<S : Any>(
+    private val codeArea: CodeArea,
+    private val lexer: SyntaxLexer<S>
+) {
+    companion object {
+        private val logger = LoggerProvider.getLogger("IncrementalHighlighter")
+        private const val HIGHLIGHT_DELAY_MS = 100.0
+        private const val IDLE_FILL_DELAY_MS = 50.0
+
+        // Extra paragraphs styled around the viewport so small scrolls do not show plain text
+        private const val VIEWPORT_MARGIN = 50
+        private const val FILL_CHUNK_PARAGRAPHS = 500
+        // Cached states handed to the worker past the range it has to lex
+        private const val STATE_WINDOW_PARAGRAPHS = 2000
+
+        private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "Nodex-Highlighter").apply { isDaemon = true }
+        }
+    }
+
+    /**
+     * Copy of the cached states of the paragraphs from [first] on, out of [paragraphCount] in the document.
+     */
+    private class StateWindow<S>(private val first: Int, private val states: List<S>, val paragraphCount: Int) {
+        operator fun get(paragraph: Int): S = states[paragraph - first]
+    }
+
+    private class HighlightResult<S>(
+        val version: Long,
+        val from: Int,
+        val to: Int,
+        // States for paragraphs from + 1 .. to + 1 (when those exist)
+        val states: List<S>,
+        // Paragraph range (inclusive) the spans cover, a sub range of from..to
+        val styledFrom: Int,
+        val styledTo: Int,
+        val spans: StyleSpans<Collection<String>>?,
+        // False when it stopped at the chunk limit before the states below settled, lexing continues at to + 1
+        val complete: Boolean,
+        // Styled from a cached state that may still change, only the spans are used
+        val speculative: Boolean
+    )
+
+    // State at the start of each paragraph, always the same size as the paragraph count. Only touched on the FX thread.
+    private val paragraphStates = ArrayList<S>()
+
+    // Paragraph range (inclusive) edited since the last applied result
+    private var dirtyFrom = Int.MAX_VALUE
+    private var dirtyTo = -1
+
+    // Paragraphs whose style spans are missing or stale, only ever populated in viewport first mode
+    private val unstyled = BitSet()
+
+    // Incremented on every edit, read by the worker to abandon stale work early
+    @Volatile
+    private var version = 0L
+    @Volatile
+    private var disposed = false
+    private var pendingTask: Future<*>? = null
+
+    private val debounce = PauseTransition(Duration.millis(HIGHLIGHT_DELAY_MS))
+    private val idleFill = PauseTransition(Duration.millis(IDLE_FILL_DELAY_MS))
+    private val changeSubscription: Subscription
+    private val viewportSubscription: Subscription
+
+    init {
+        repeat(codeArea.paragraphs.size) { paragraphStates.add(lexer.initialState) }
+        markDirty(0, paragraphStates.size - 1)
+
+        debounce.setOnFinished { flush() }
+        idleFill.setOnFinished { fillUnstyled() }
+        changeSubscription = codeArea.plainTextChanges().subscribe { onTextChanged(it) }
+        viewportSubscription = codeArea.viewportDirtyEvents().subscribe {
+            if (!unstyled.isEmpty) idleFill.playFromStart()
+        }
+
+        // Initial highlight
+        flush()
+    }
+
+    private fun onTextChanged(change: PlainTextChange) {
+        version++
+        pendingTask?.cancel(true)
+        pendingTask = null
+
+        val startParagraph = codeArea.offsetToPosition(change.position, Bias.Backward).major
+        val removedLines = change.removed.count { it == '\n' }
+        val insertedLines = change.inserted.count { it == '\n' }
+
+        // Splice the cached states so they keep lining up with the paragraphs after the edit
+        if (removedLines > 0) {
+            paragraphStates.subList(startParagraph + 1, startParagraph + 1 + removedLines).clear()
+        }
+        if (insertedLines > 0) {
+            val placeholder = paragraphStates[startParagraph]
+            paragraphStates.addAll(startParagraph + 1, List(insertedLines) { placeholder })
+        }
+        if (!unstyled.isEmpty) {
+            spliceUnstyled(startParagraph + 1, removedLines, insertedLines)
+        }
+
+        // Shift the pending dirty range if it lies below the edit
+        if (dirtyTo > startParagraph + removedLines) {
+            dirtyTo += insertedLines - removedLines
+        } else if (dirtyTo > startParagraph) {
+            dirtyTo = startParagraph
+        }
+        markDirty(startParagraph, startParagraph + insertedLines)
+
+        debounce.playFromStart()
+    }
+
+    private fun markDirty(from: Int, to: Int) {
+        dirtyFrom = minOf(dirtyFrom, from)
+        dirtyTo = maxOf(dirtyTo, to)
+    }
+
+    /**
+     * Shifts the unstyled flags below an edit so they keep lining up with their paragraphs.
+     */
+    private fun spliceUnstyled(index: Int, removed: Int, inserted: Int) {
+        if (removed == inserted) return
+        val end = maxOf(unstyled.length(), index + removed)
+        val tail = unstyled.get(index + removed, end)
+        unstyled.clear(index, end)
+        var bit = tail.nextSetBit(0)
+        while (bit >= 0) {
+            unstyled.set(index + inserted + bit)
+            bit = tail.nextSetBit(bit + 1)
+        }
+    }
+
+    private fun isLargeDocument(): Boolean {
+        return codeArea.length > MainConfig.largeFileHighlightThresholdKb.get() * 1024L
+    }
+
+    /**
+     * The visible paragraphs plus [VIEWPORT_MARGIN] on each side, or null before the CodeArea is laid out.
+     */
+    private fun viewportRange(): IntRange? {
+        if (codeArea.visibleParagraphs.isEmpty()) return null
+        val first = codeArea.firstVisibleParToAllParIndex()
+        val last = codeArea.lastVisibleParToAllParIndex()
+        return (first - VIEWPORT_MARGIN).coerceAtLeast(0)..(last + VIEWPORT_MARGIN)
+    }
+
+    /**
+     * Hands the dirty range to the worker. The range stays marked dirty until a matching result is applied,
+     * so work dropped because of a newer edit is picked up again by the next flush.
+     *
+     * For large documents only the next chunk is lexed, after styling the viewport first if it lies below the
+     * dirty range and [viewportFirst] is set. The following chunks skip that, as nothing above the viewport changed.
+     */
+    private fun flush(viewportFirst: Boolean = true) {
+        val paragraphCount = paragraphStates.size
+        if (disposed || dirtyTo < 0 || paragraphCount == 0) return
+
+        val from = dirtyFrom.coerceIn(0, paragraphCount - 1)
+        val to = dirtyTo.coerceIn(from, paragraphCount - 1)
+
+        if (!isLargeDocument()) {
+            submit(from, to, 0..Int.MAX_VALUE, Int.MAX_VALUE, null)
+            return
+        }
+        // Not laid out yet (e.g. the tab was just opened), the caret is where the user will be looking
+        val styleWindow = viewportRange() ?: codeArea.currentParagraph.let {
+            (it - VIEWPORT_MARGIN).coerceAtLeast(0)..(it + VIEWPORT_MARGIN * 2)
+        }
+        val viewport = styleWindow.takeIf { viewportFirst && it.first > from && it.first < paragraphCount }
+        submit(from, to, styleWindow, from + FILL_CHUNK_PARAGRAPHS - 1, viewport)
+    }
+
+    /**
+     * Styles the next chunk of unstyled paragraphs, preferring the viewport, then what lies below it.
+     * Only runs while no edit is pending, as it relies on the cached states being correct.
+     */
+    private fun fillUnstyled() {
+        if (disposed || unstyled.isEmpty || dirtyTo >= 0 || pendingTask != null) return
+        val paragraphCount = paragraphStates.size
+
+        val viewport = viewportRange()
+        val visibleStart = viewport?.let { unstyled.nextSetBit(it.first) }?.takeIf { it in viewport }
+        val start = visibleStart
+            ?: viewport?.let { unstyled.nextSetBit(it.last) }?.takeIf { it >= 0 }
+            ?: unstyled.nextSetBit(0)
+
+        if (start >= paragraphCount) {
+            // Leftovers past the end of a document that got shorter
+            unstyled.clear(paragraphCount, maxOf(unstyled.length(), paragraphCount))
+            return
+        }
+
+        val end = if (visibleStart != null) {
+            minOf(viewport!!.last, paragraphCount - 1)
+        } else {
+            minOf(start + FILL_CHUNK_PARAGRAPHS - 1, paragraphCount - 1)
+        }
+        submit(start, end, start..end, Int.MAX_VALUE, null)
+    }
+
+    /**
+     * Lexes [from] until the states settle below [to], stopping after [limit]. A [viewport] is styled
+     * speculatively before that, so it shows highlighting without waiting for everything above it.
+     */
+    private fun submit(from: Int, to: Int, styleWindow: IntRange, limit: Int, viewport: IntRange?) {
+        val requestVersion = version
+        val snapshot = codeArea.content.snapshot()
+        val paragraphCount = paragraphStates.size
+        // Only the states the worker can read, the viewport lies below from when set
+        val windowEnd = minOf(paragraphCount - 1, maxOf(to, viewport?.last ?: to) + STATE_WINDOW_PARAGRAPHS)
+        val knownStates = StateWindow(from, ArrayList(paragraphStates.subList(from, windowEnd + 1)), paragraphCount)
+        // Past the copied states it cannot tell whether they settled, so it stops there and the next pass continues
+        val windowLimit = if (windowEnd < paragraphCount - 1) minOf(limit, windowEnd - 1) else limit
+
+        pendingTask?.cancel(true)
+        pendingTask = executor.submit {
+            try {
+                if (viewport != null) {
+                    val last = minOf(viewport.last, paragraphCount - 1)
+                    val preview = computeHighlighting(
+                        snapshot, knownStates, viewport.first, last, viewport, last, requestVersion, speculative = true
+                    ) ?: return@submit
+                    Platform.runLater { applyResult(preview) }
+                }
+                val result = computeHighlighting(
+                    snapshot, knownStates, from, to, styleWindow, windowLimit, requestVersion, speculative = false
+                ) ?: return@submit
+                Platform.runLater { applyResult(result) }
+            } catch (e: Exception) {
+                logger.error("Failed to compute highlighting for paragraphs $from..$to", e)
+            }
+        }
+    }
+
+    /**
+     * Runs on the worker thread. Returns null if the document changed before the work finished.
+     */
+    private fun computeHighlighting(
+        snapshot: ReadOnlyStyledDocument<*, *, *>,
+        knownStates: StateWindow<S>,
+        from: Int,
+        to: Int,
+        styleWindow: IntRange,
+        limit: Int,
+        requestVersion: Long,
+        speculative: Boolean
+    ): HighlightResult<S>? {
+        val paragraphCount = knownStates.paragraphCount
+        val spansBuilder = StyleSpansBuilder<Collection<String>>()
+        val tokens = TokenBuffer()
+        val newStates = ArrayList<S>()
+        var state = knownStates[from]
+        var paragraph = from
+        var styledFrom = -1
+        var styledTo = -1
+        var styledLength = 0
+        var complete = true
+
+        while (true) {
+            if (version != requestVersion || Thread.currentThread().isInterrupted) return null
+
+            val text = snapshot.getParagraph(paragraph).text
+            tokens.clear()
+            state = lexer.lexParagraph(text, state, tokens)
+
+            val isLast = paragraph == paragraphCount - 1
+            if (paragraph in styleWindow) {
+                if (styledFrom < 0) styledFrom = paragraph
+                styledTo = paragraph
+                // Include the line terminator, which the paragraph text does not
+                val length = text.length + if (isLast) 0 else 1
+                tokens.appendSpans(length, lexer.styleClasses, spansBuilder)
+                styledLength += length
+            }
+
+            if (isLast) break
+            // Past the edited range and the next paragraph already starts in this state, nothing below changes
+            if (paragraph >= to && knownStates[paragraph + 1] == state) break
+
+            newStates.add(state)
+            if (paragraph >= limit) {
+                complete = false
+                break
+            }
+            paragraph++
+        }
+
+        val spans = if (styledLength > 0) spansBuilder.create() else null
+        return HighlightResult(requestVersion, from, paragraph, newStates, styledFrom, styledTo, spans, complete, speculative)
+    }
+
+    private fun applyResult(result: HighlightResult<S>) {
+        if (disposed || result.version != version) return
+        if (result.speculative) {
+            // The pass from the top styles these paragraphs again once it gets there
+            result.spans?.let { applySpans(result) }
+            return
+        }
+
+        for (i in result.states.indices) {
+            paragraphStates[result.from + 1 + i] = result.states[i]
+        }
+        if (result.complete) {
+            dirtyFrom = Int.MAX_VALUE
+            dirtyTo = -1
+        } else {
+            dirtyFrom = result.to + 1
+            dirtyTo = maxOf(dirtyTo, result.to + 1)
+        }
+        pendingTask = null
+
+        // Re-lexed paragraphs outside the style window keep their old spans until the idle fill gets to them
+        if (result.styledFrom < 0) {
+            unstyled.set(result.from, result.to + 1)
+        } else {
+            unstyled.set(result.from, result.styledFrom)
+            unstyled.clear(result.styledFrom, result.styledTo + 1)
+            unstyled.set(result.styledTo + 1, result.to + 1)
+        }
+
+        result.spans?.let { applySpans(result) }
+
+        if (!result.complete) {
+            flush(viewportFirst = false)
+        } else if (!unstyled.isEmpty) {
+            idleFill.playFromStart()
+        }
+    }
+
+    private fun applySpans(result: HighlightResult<S>) {
+        try {
+            codeArea.setStyleSpans(codeArea.getAbsolutePosition(result.styledFrom, 0), result.spans!!)
+        } catch (e: Exception) {
+            logger.error("Failed to apply highlighting to paragraphs ${result.styledFrom}..${result.styledTo}", e)
+        }
+    }
+
+    /**
+     * Stops listening to the CodeArea and drops any in-flight work. Call when the tab is closed.
+     */
+    fun dispose() {
+        disposed = true
+        debounce.stop()
+        idleFill.stop()
+        pendingTask?.cancel(true)
+        pendingTask = null
+        changeSubscription.unsubscribe()
+        viewportSubscription.unsubscribe()
+    }
+}
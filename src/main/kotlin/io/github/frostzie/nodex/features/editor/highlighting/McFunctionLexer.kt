@@ -0,0 +1,267 @@
+package io.github.frostzie.nodex.features.editor.highlighting
+
+/**
+ * Lexer for `.mcfunction` files.
+ *
+ * Covers comments, commands (including the one after `run`), macro lines and `$(variable)` references,
+ * target selectors and their arguments, resource locations and `#tags`, numbers and relative coordinates,
+ * and NBT/SNBT and JSON text components, which share the same bracket/key/value shape.
+ *
+ * Commands are single lines, so the only state carried between paragraphs is a trailing `\` line
+ * continuation together with the brackets still open at that point.
+ */
+object McFunctionLexer : SyntaxLexer<McFunctionLexer.State> {
+
+    const val COMMENT = 0
+    const val COMMAND = 1
+    const val KEYWORD = 2
+    const val MACRO = 3
+    const val SELECTOR = 4
+    const val KEY = 5
+    const val STRING = 6
+    const val NUMBER = 7
+    const val RESOURCE = 8
+    const val BOOLEAN = 9
+    const val BRACKET = 10
+
+    private val CLASS_NAMES = listOf(
+        "mcf-comment",
+        "mcf-command",
+        "mcf-keyword",
+        "mcf-macro",
+        "mcf-selector",
+        "mcf-key",
+        "mcf-string",
+        "mcf-number",
+        "mcf-resource",
+        "mcf-boolean",
+        "mcf-bracket"
+    )
+
+    override val styleClasses: List<Collection<String>> = CLASS_NAMES.map { listOf(it) }
+
+    /**
+     * @param continued Whether the previous line ended with `\`, so this line continues its command.
+     * @param brackets The brackets still open at the end of the previous line, innermost last.
+     */
+    data class State(val continued: Boolean, val brackets: String)
+
+    private val LINE_START = State(false, "")
+
+    override val initialState: State = LINE_START
+
+    override fun lexParagraph(text: CharSequence, state: State, tokens: TokenBuffer): State {
+        val length = text.length
+        var i = skipWhitespace(text, 0, length)
+        val brackets = StringBuilder(state.brackets)
+
+        if (!state.continued) {
+            if (i >= length) return LINE_START
+            if (text[i] == '#') {
+                tokens.add(COMMENT, i, length)
+                return LINE_START
+            }
+            if (text[i] == '$') {
+                tokens.add(MACRO, i, i + 1)
+                i++
+            }
+        }
+
+        // The first word of a line, or the one after `run`, is a command
+        var expectCommand = !state.continued
+        // Inside a compound right after `{` or `,`, where a word is a key and `:` ends it
+        var keyExpected = state.continued && state.brackets.endsWith('{')
+        var continued = false
+
+        while (i < length) {
+            val c = text[i]
+            when {
+                c.isWhitespace() -> i++
+
+                c == '\\' && skipWhitespace(text, i + 1, length) == length -> {
+                    continued = true
+                    i = length
+                }
+
+                c == '$' && i + 1 < length && text[i + 1] == '(' -> {
+                    val close = indexOf(text, ')', i + 2, length)
+                    val end = if (close < 0) length else close + 1
+                    tokens.add(MACRO, i, end)
+                    i = end
+                }
+
+                c == '@' && i + 1 < length && text[i + 1].isLetter() -> {
+                    tokens.add(SELECTOR, i, i + 2)
+                    i += 2
+                }
+
+                c == '{' || c == '[' -> {
+                    tokens.add(BRACKET, i, i + 1)
+                    brackets.append(c)
+                    keyExpected = c == '{'
+                    i++
+                }
+
+                c == '}' || c == ']' -> {
+                    tokens.add(BRACKET, i, i + 1)
+                    closeBracket(brackets, if (c == '}') '{' else '[')
+                    i++
+                }
+
+                c == '"' || c == '\'' -> {
+                    val end = stringEnd(text, i, length)
+                    val type = if (brackets.isNotEmpty() && isKey(text, end, length)) KEY else STRING
+                    tokens.add(type, i, end)
+                    keyExpected = false
+                    i = end
+                }
+
+                c == '#' && i + 1 < length && isResourceChar(text[i + 1]) -> {
+                    val end = wordEnd(text, i + 1, length)
+                    tokens.add(RESOURCE, i, end)
+                    i = end
+                }
+
+                isNumberStart(text, i, length) -> {
+                    val end = numberEnd(text, i, length)
+                    tokens.add(NUMBER, i, end)
+                    i = end
+                    expectCommand = false
+                    keyExpected = false
+                }
+
+                c == ',' -> {
+                    keyExpected = brackets.endsWith('{')
+                    i++
+                }
+
+                c == ':' -> i++
+
+                isResourceChar(c) -> {
+                    val end = wordEnd(text, i, length, stopAtColon = keyExpected && brackets.endsWith('{'))
+                    val type = when {
+                        brackets.isNotEmpty() && isKey(text, end, length) -> KEY
+                        expectCommand -> COMMAND
+                        indexOf(text, ':', i, end) >= 0 -> RESOURCE
+                        isWord(text, i, end, "true") || isWord(text, i, end, "false") -> BOOLEAN
+                        brackets.isEmpty() && isWord(text, i, end, "run") -> KEYWORD
+                        else -> -1
+                    }
+                    if (type >= 0) tokens.add(type, i, end)
+                    expectCommand = type == KEYWORD
+                    keyExpected = false
+                    i = end
+                }
+
+                else -> i++
+            }
+        }
+
+        return if (continued) State(true, brackets.toString()) else LINE_START
+    }
+
+    private fun closeBracket(brackets: StringBuilder, open: Char) {
+        // A mismatched closer drops everything up to the matching opener, or nothing if there is none
+        val index = brackets.lastIndexOf(open.toString())
+        if (index >= 0) brackets.setLength(index)
+    }
+
+    private fun skipWhitespace(text: CharSequence, from: Int, to: Int): Int {
+        var i = from
+        while (i < to && text[i].isWhitespace()) i++
+        return i
+    }
+
+    private fun indexOf(text: CharSequence, char: Char, from: Int, to: Int): Int {
+        for (i in from until to) {
+            if (text[i] == char) return i
+        }
+        return -1
+    }
+
+    /**
+     * End of a quoted string starting at [start], or the end of the line if it is never closed.
+     */
+    private fun stringEnd(text: CharSequence, start: Int, length: Int): Int {
+        val quote = text[start]
+        var i = start + 1
+        while (i < length) {
+            val c = text[i]
+            if (c == '\\') {
+                i += 2
+                continue
+            }
+            i++
+            if (c == quote) return i
+        }
+        return length
+    }
+
+    /**
+     * Whether the token ending at [end] is a compound key or selector argument name.
+     */
+    private fun isKey(text: CharSequence, end: Int, length: Int): Boolean {
+        val next = skipWhitespace(text, end, length)
+        return next < length && (text[next] == ':' || text[next] == '=')
+    }
+
+    private fun isResourceChar(c: Char): Boolean {
+        return c.isLetterOrDigit() || c == '_' || c == '-' || c == '.' || c == '/' || c == ':'
+    }
+
+    /**
+     * End of a word or resource location. [stopAtColon] splits compound keys from their value, otherwise
+     * `namespace:path` is kept together.
+     */
+    private fun wordEnd(text: CharSequence, from: Int, length: Int, stopAtColon: Boolean = false): Int {
+        var i = from
+        while (i < length && isResourceChar(text[i])) {
+            if (text[i] == ':' && (stopAtColon || i + 1 >= length || !isResourceChar(text[i + 1]))) break
+            i++
+        }
+        return i
+    }
+
+    private fun isWord(text: CharSequence, start: Int, end: Int, word: String): Boolean {
+        if (end - start != word.length) return false
+        for (i in word.indices) {
+            if (text[start + i] != word[i]) return false
+        }
+        return true
+    }
+
+    /**
+     * Numbers, ranges like `1..5` and relative or local coordinates like `~`, `~-2` and `^1.5`.
+     */
+    private fun isNumberStart(text: CharSequence, i: Int, length: Int): Boolean {
+        val c = text[i]
+        if (c == '~' || c == '^') return true
+        if (c.isDigit()) return !isIdentifier(text, i, length)
+        if ((c == '-' || c == '+' || c == '.') && i + 1 < length) {
+            return text[i + 1].isDigit() || (c == '.' && text[i + 1] == '.')
+        }
+        return false
+    }
+
+    /**
+     * Tells `1b` or `5.0f` apart from identifiers that just start with a digit, like `0abc`.
+     */
+    private fun isIdentifier(text: CharSequence, start: Int, length: Int): Boolean {
+        var i = start
+        while (i < length && (text[i].isDigit() || text[i] == '.')) i++
+        if (i >= length) return false
+        val c = text[i]
+        if (!c.isLetter() && c != '_' && c != ':' && c != '/') return false
+        val isSuffix = c.lowercaseChar() in "bslfd" && (i + 1 >= length || !isResourceChar(text[i + 1]))
+        return !isSuffix
+    }
+
+    private fun numberEnd(text: CharSequence, start: Int, length: Int): Int {
+        var i = start
+        if (text[i] == '~' || text[i] == '^') i++
+        if (i < length && (text[i] == '-' || text[i] == '+')) i++
+        while (i < length && (text[i].isDigit() || text[i] == '.')) i++
+        if (i < length && text[i].lowercaseChar() in "bslfd") i++
+        return i
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.frostzie.nodex.features.editor.highlighting
+
+/**
+ * A line based lexer that [IncrementalHighlighter] can drive.
+ *
+ * Lexers must be stateless apart from [S], which is all that is carried from one paragraph to the next.
+ * States are compared with `equals` to find where re-lexing after an edit can stop, so they should be
+ * small immutable values. Lexers are called from the highlighter worker thread.
+ */
+interface SyntaxLexer<S : Any> {
+
+    /**
+     * State at the start of the document.
+     */
+    val initialState: S
+
+    /**
+     * Shared style class collections, indexed by the token types this lexer writes into a [TokenBuffer].
+     */
+    val styleClasses: List<Collection<String>>
+
+    /**
+     * Lexes a single paragraph without its line terminator, writing tokens with offsets relative to the
+     * paragraph start into [tokens] in ascending order.
+     *
+     * @return The state at the end of the paragraph.
+     */
+    fun lexParagraph(text: CharSequence, state: S, tokens: TokenBuffer): S
+}
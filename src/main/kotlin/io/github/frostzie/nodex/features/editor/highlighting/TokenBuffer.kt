@@ -0,0 +1,57 @@
+package io.github.frostzie.nodex.features.editor.highlighting
+
+import org.fxmisc.richtext.model.StyleSpansBuilder
+
+/**
+ * A growable set of parallel primitive arrays holding the tokens of a paragraph.
+ * Meant to be cleared and reused between paragraphs instead of allocating per token.
+ */
+class TokenBuffer @JvmOverloads constructor(initialCapacity: Int = 32) {
+    var size = 0
+        private set
+    private var starts = IntArray(initialCapacity)
+    private var ends = IntArray(initialCapacity)
+    private var types = IntArray(initialCapacity)
+
+    fun add(type: Int, start: Int, end: Int) {
+        if (end <= start) return
+        if (size == starts.size) {
+            val capacity = size * 2
+            starts = starts.copyOf(capacity)
+            ends = ends.copyOf(capacity)
+            types = types.copyOf(capacity)
+        }
+        starts[size] = start
+        ends[size] = end
+        types[size] = type
+        size++
+    }
+
+    fun clear() {
+        size = 0
+    }
+
+    fun start(index: Int): Int = starts[index]
+    fun end(index: Int): Int = ends[index]
+    fun type(index: Int): Int = types[index]
+
+    /**
+     * Appends spans for the tokens to [spansBuilder], padding unstyled text up to [length].
+     * [styleClasses] is indexed by token type, see [SyntaxLexer.styleClasses].
+     */
+    fun appendSpans(length: Int, styleClasses: List<Collection<String>>, spansBuilder: StyleSpansBuilder<Collection<String>>) {
+        var lastPos = 0
+        for (i in 0 until size) {
+            val start = starts[i]
+            if (start > lastPos) spansBuilder.add(NO_STYLE, start - lastPos)
+            spansBuilder.add(styleClasses[types[i]], ends[i] - start)
+            lastPos = ends[i]
+        }
+        if (length > lastPos) spansBuilder.add(NO_STYLE, length - lastPos)
+    }
+
+    companion object {
+        @JvmField
+        val NO_STYLE: Collection<String> = emptyList()
+    }
+}
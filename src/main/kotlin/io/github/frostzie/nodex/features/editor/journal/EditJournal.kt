@@ -0,0 +1,261 @@
+package io.github.frostzie.nodex.features.editor.journal
+
+import io.github.frostzie.nodex.config.ConfigManager
+import io.github.frostzie.nodex.features.editor.document.DocumentEdit
+import io.github.frostzie.nodex.modules.main.TextEditorViewModel
+import io.github.frostzie.nodex.utils.LoggerProvider
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Write-ahead log of unsaved edits, so they survive the game or JVM dying.
+ *
+ * Each dirty tab gets a journal file in the config directory, named after a hash of the file's path. It starts with
+ * the hash and length of the saved text the edits apply to, followed by one record per edit: position, removed
+ * length and inserted text. Recording an edit only queues it, a background thread appends the queued records every
+ * [FLUSH_INTERVAL_MS]. After a save the journal is deleted, or rewritten as a single record holding what is still
+ * unsaved if the tab was edited during the write. Large journals are rewritten the same way.
+ *
+ * When a file is read with a journal whose base matches its content, the edits are replayed onto the document.
+ */
+class EditJournal {
+
+    companion object {
+        private val logger = LoggerProvider.getLogger("EditJournal")
+
+        private const val MAGIC = 0x4E444A31
+        private const val FLUSH_INTERVAL_MS = 250L
+        private const val HEADER_BYTES = 16L
+        private const val RECORD_BYTES = 12L
+        private const val COMPACT_BYTES = 4L * 1024 * 1024
+
+        private val journalDir get() = ConfigManager.configDir.resolve("journal")
+
+        private fun journalFile(filePath: Path): Path {
+            val hash = MessageDigest.getInstance("MD5")
+                .digest(filePath.toAbsolutePath().toString().toByteArray(Charsets.UTF_8))
+                .joinToString("") { "%02x".format(it) }
+            return journalDir.resolve("$hash.journal")
+        }
+
+        /**
+         * Reads the journal of [filePath] if there is one, safe to call off the FX thread.
+         */
+        fun read(filePath: Path): Recovery? {
+            val file = journalFile(filePath)
+            if (!Files.exists(file)) return null
+            return try {
+                DataInputStream(BufferedInputStream(Files.newInputStream(file))).use { input ->
+                    if (input.readInt() != MAGIC) return null
+                    val baseHash = input.readLong()
+                    val baseLength = input.readInt()
+                    val entries = ArrayList<Entry>()
+                    try {
+                        while (true) {
+                            val position = input.readInt()
+                            val removedLength = input.readInt()
+                            val inserted = ByteArray(input.readInt())
+                            input.readFully(inserted)
+                            entries.add(Entry(position, removedLength, String(inserted, Charsets.UTF_8)))
+                        }
+                    } catch (_: EOFException) {
+                        // End of the journal, or a record cut off by the crash
+                    }
+                    Recovery(baseHash, baseLength, entries)
+                }
+            } catch (e: Exception) {
+                logger.error("Failed to read edit journal for $filePath", e)
+                null
+            }
+        }
+    }
+
+    class Entry(val position: Int, val removedLength: Int, val inserted: String)
+
+    class Recovery(val baseHash: Long, val baseLength: Int, val entries: List<Entry>)
+
+    private sealed interface Operation {
+        val file: Path
+    }
+
+    // Replaces the journal with a header and, if there is text, one record replacing the whole base with it
+    private class Start(override val file: Path, val baseHash: Long, val baseLength: Int, val text: String?) : Operation
+    private class Append(override val file: Path, val entry: Entry) : Operation
+    private class Delete(override val file: Path) : Operation
+
+    private val queue = ConcurrentLinkedQueue<Operation>()
+
+    // Journal files of tabs with unsaved edits and roughly how many bytes they hold, by tab id
+    private val journalFiles = mutableMapOf<String, Path>()
+    private val journalSizes = mutableMapOf<String, Long>()
+
+    private val executor = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "Nodex-EditJournal").apply { isDaemon = true }
+    }
+
+    init {
+        executor.scheduleWithFixedDelay(::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * Records an edit of a tab's document, called for every edit so it only queues the record.
+     */
+    fun record(tabData: TextEditorViewModel.TabData, edit: DocumentEdit) {
+        if (edit.source === this) return
+        val document = tabData.document
+        if (!document.isModified) {
+            // Back to the saved text, e.g. by undo, there is nothing to recover
+            discard(tabData)
+            return
+        }
+
+        val file = journalFiles.getOrPut(tabData.id) { journalFile(tabData.filePath) }
+        var size = journalSizes[tabData.id]
+        if (size == null) {
+            // First unsaved edit, so the text before it is the saved text
+            val saved = document.savedState
+            queue.add(Start(file, saved.hash, saved.length, null))
+            size = HEADER_BYTES
+        }
+        queue.add(Append(file, Entry(edit.position, edit.removed.length, edit.inserted)))
+        size += RECORD_BYTES + edit.inserted.length
+        journalSizes[tabData.id] = size
+
+        if (size > COMPACT_BYTES) compact(tabData)
+    }
+
+    /**
+     * Called once a save of the tab completed, drops the edits that are on disk now.
+     */
+    fun saved(tabData: TextEditorViewModel.TabData) {
+        if (tabData.document.isModified) compact(tabData) else discard(tabData)
+    }
+
+    /**
+     * Moves the journal of a tab whose file was moved, [oldPath] is where it was.
+     */
+    fun moved(tabData: TextEditorViewModel.TabData, oldPath: Path) {
+        journalFiles.remove(tabData.id) ?: return
+        journalSizes.remove(tabData.id)
+        queue.add(Delete(journalFile(oldPath)))
+        if (tabData.document.isModified) compact(tabData)
+    }
+
+    /**
+     * Deletes the tab's journal, for tabs closed without saving or back to their saved text.
+     */
+    fun discard(tabData: TextEditorViewModel.TabData) {
+        val file = journalFiles.remove(tabData.id) ?: return
+        journalSizes.remove(tabData.id)
+        queue.add(Delete(file))
+    }
+
+    /**
+     * Replays a journal read by [read] onto a tab's freshly loaded document.
+     * Returns false and deletes the journal if the file changed since, as the edits no longer apply.
+     */
+    fun recover(tabData: TextEditorViewModel.TabData, recovery: Recovery): Boolean {
+        val document = tabData.document
+        val file = journalFile(tabData.filePath)
+        if (document.length != recovery.baseLength || document.contentHash() != recovery.baseHash) {
+            logger.warn("Discarding edit journal of ${tabData.displayName}, the file changed since")
+            queue.add(Delete(file))
+            return false
+        }
+
+        var size = HEADER_BYTES
+        for (entry in recovery.entries) {
+            val end = entry.position + entry.removedLength
+            if (entry.position < 0 || entry.removedLength < 0 || end > document.length) break
+            document.replace(entry.position, end, entry.inserted, this)
+            size += RECORD_BYTES + entry.inserted.length
+        }
+        journalFiles[tabData.id] = file
+        journalSizes[tabData.id] = size
+        logger.info("Recovered {} unsaved edits of {}", recovery.entries.size, tabData.displayName)
+        return true
+    }
+
+    /**
+     * Writes out everything queued and stops the background thread.
+     */
+    fun close() {
+        executor.shutdown()
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS)
+        } catch (_: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+        flush()
+    }
+
+    private fun compact(tabData: TextEditorViewModel.TabData) {
+        val document = tabData.document
+        val file = journalFiles.getOrPut(tabData.id) { journalFile(tabData.filePath) }
+        val saved = document.savedState
+        queue.add(Start(file, saved.hash, saved.length, document.getText()))
+        journalSizes[tabData.id] = HEADER_BYTES + RECORD_BYTES + document.length
+    }
+
+    private fun flush() {
+        if (queue.isEmpty()) return
+        val streams = mutableMapOf<Path, DataOutputStream>()
+        try {
+            while (true) {
+                when (val operation = queue.poll() ?: break) {
+                    is Start -> {
+                        streams.remove(operation.file)?.close()
+                        Files.createDirectories(journalDir)
+                        val output = open(operation.file, StandardOpenOption.TRUNCATE_EXISTING)
+                        streams[operation.file] = output
+                        output.writeInt(MAGIC)
+                        output.writeLong(operation.baseHash)
+                        output.writeInt(operation.baseLength)
+                        operation.text?.let { writeEntry(output, Entry(0, operation.baseLength, it)) }
+                    }
+                    is Append -> {
+                        val output = streams.getOrPut(operation.file) { open(operation.file, StandardOpenOption.APPEND) }
+                        writeEntry(output, operation.entry)
+                    }
+                    is Delete -> {
+                        streams.remove(operation.file)?.close()
+                        Files.deleteIfExists(operation.file)
+                    }
+                }
+            }
+        } catch (e: Exception) {
+            logger.error("Failed to write edit journal", e)
+        } finally {
+            streams.values.forEach { output ->
+                try {
+                    output.close()
+                } catch (e: Exception) {
+                    logger.error("Failed to close edit journal", e)
+                }
+            }
+        }
+    }
+
+    private fun open(file: Path, mode: StandardOpenOption): DataOutputStream {
+        val stream = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)
+        return DataOutputStream(BufferedOutputStream(stream))
+    }
+
+    private fun writeEntry(output: DataOutputStream, entry: Entry) {
+        val inserted = entry.inserted.toByteArray(Charsets.UTF_8)
+        output.writeInt(entry.position)
+        output.writeInt(entry.removedLength)
+        output.writeInt(inserted.size)
+        output.write(inserted)
+    }
+}
@@ -0,0 +1,143 @@
+package io.github.frostzie.nodex.features.editor.largefile
+
+import io.github.frostzie.nodex.utils.LoggerProvider
+import java.io.Closeable
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * A read-only, memory-mapped view of a text file that is too large to load into the editor.
+ *
+ * The file is mapped with NIO instead of being read onto the heap, and only the start offset of every
+ * row is indexed. Text is decoded row by row when the view asks for it. Lines longer than [MAX_ROW_BYTES]
+ * (e.g. minified json) are split into several rows so a single row never has to render megabytes of text.
+ */
+class MappedTextFile private constructor(
+    val path: Path,
+    val size: Long,
+    private val channel: FileChannel,
+    private val segments: Array<MappedByteBuffer>,
+    // Byte offset where each row starts, followed by the file size as an end marker
+    private val rowStarts: LongArray,
+    // 0 based line number of each row, so wrapped rows can share their line's number
+    private val rowLines: IntArray,
+    val rowCount: Int,
+    val lineCount: Int
+) : Closeable {
+
+    companion object {
+        private val logger = LoggerProvider.getLogger("MappedTextFile")
+
+        // Mapped regions are limited to Int.MAX_VALUE bytes each
+        private const val SEGMENT_SIZE = 1L shl 30
+        const val MAX_ROW_BYTES = 4096
+
+        /**
+         * Maps the file and indexes its rows.
+         * @throws Exception if the file can not be opened or mapped.
+         */
+        fun open(path: Path): MappedTextFile {
+            val channel = FileChannel.open(path, StandardOpenOption.READ)
+            try {
+                val size = channel.size()
+                val segmentCount = ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE).toInt()
+                val segments = Array(segmentCount) { index ->
+                    val start = index * SEGMENT_SIZE
+                    channel.map(FileChannel.MapMode.READ_ONLY, start, minOf(SEGMENT_SIZE, size - start))
+                }
+
+                var rowStarts = LongArray(1024)
+                var rowLines = IntArray(1024)
+                var rowCount = 0
+                var line = 0
+
+                fun addRow(start: Long) {
+                    if (rowCount + 1 >= rowStarts.size) {
+                        rowStarts = rowStarts.copyOf(rowStarts.size * 2)
+                        rowLines = rowLines.copyOf(rowLines.size * 2)
+                    }
+                    rowStarts[rowCount] = start
+                    rowLines[rowCount] = line
+                    rowCount++
+                }
+
+                addRow(0)
+                var rowStart = 0L
+                var offset = 0L
+                for (segment in segments) {
+                    for (i in 0 until segment.limit()) {
+                        val byte = segment.get(i).toInt()
+                        val position = offset + i
+                        if (byte == '\n'.code) {
+                            line++
+                            rowStart = position + 1
+                            addRow(rowStart)
+                        } else if (position - rowStart >= MAX_ROW_BYTES && (byte and 0xC0) != 0x80) {
+                            // Wrap overlong lines, but never in the middle of a UTF-8 sequence
+                            rowStart = position
+                            addRow(rowStart)
+                        }
+                    }
+                    offset += segment.limit()
+                }
+                rowStarts[rowCount] = size
+
+                logger.debug("Mapped {} ({} bytes, {} lines, {} rows)", path.fileName, size, line + 1, rowCount)
+                return MappedTextFile(path, size, channel, segments, rowStarts, rowLines, rowCount, line + 1)
+            } catch (e: Exception) {
+                channel.close()
+                throw e
+            }
+        }
+    }
+
+    /**
+     * The 0 based line number the given row belongs to.
+     */
+    fun lineOf(row: Int): Int = rowLines[row]
+
+    /**
+     * Whether the row is the first row of its line, as opposed to the continuation of a wrapped line.
+     */
+    fun isLineStart(row: Int): Boolean = row == 0 || rowLines[row - 1] != rowLines[row]
+
+    /**
+     * Decodes the text of a row, without its line terminator.
+     */
+    fun row(row: Int): String {
+        val start = rowStarts[row]
+        var end = rowStarts[row + 1]
+        if (end > start && byteAt(end - 1) == '\n'.code.toByte()) end--
+        if (end > start && byteAt(end - 1) == '\r'.code.toByte()) end--
+
+        val bytes = ByteArray((end - start).toInt())
+        var position = start
+        var copied = 0
+        while (copied < bytes.size) {
+            val segment = segments[(position / SEGMENT_SIZE).toInt()]
+            val segmentOffset = (position % SEGMENT_SIZE).toInt()
+            val count = minOf(bytes.size - copied, segment.limit() - segmentOffset)
+            segment.get(segmentOffset, bytes, copied, count)
+            copied += count
+            position += count
+        }
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    private fun byteAt(position: Long): Byte {
+        return segments[(position / SEGMENT_SIZE).toInt()].get((position % SEGMENT_SIZE).toInt())
+    }
+
+    /**
+     * Closes the file channel. The mapping itself is released once the buffers are garbage collected.
+     */
+    override fun close() {
+        try {
+            channel.close()
+        } catch (e: Exception) {
+            logger.warn("Failed to close mapped file: $path", e)
+        }
+    }
+}
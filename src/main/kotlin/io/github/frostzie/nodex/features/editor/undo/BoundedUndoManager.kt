@@ -0,0 +1,297 @@
+package io.github.frostzie.nodex.features.editor.undo
+
+import io.github.frostzie.nodex.features.editor.hibernation.TextSnapshot
+import javafx.beans.property.SimpleBooleanProperty
+import javafx.beans.value.ObservableBooleanValue
+import org.fxmisc.richtext.CodeArea
+import org.fxmisc.richtext.model.PlainTextChange
+import org.fxmisc.undo.UndoManager
+import org.reactfx.value.Val
+import org.reactfx.value.Var
+
+/**
+ * Plain-text undo history for a [CodeArea], bounded by memory instead of entry count.
+ *
+ * RichTextFX's default history keeps every change with its styled segments and never forgets any of them. This one
+ * only stores the removed and inserted text, styles are restored by the highlighter anyway. The changes of one
+ * multi-change, e.g. a replace all, are one entry and undone together. Typing and deleting next
+ * to the previous change within [MERGE_WINDOW_MS] is merged into it, like the default does. Once the history is over
+ * [limitBytes] the oldest entries are dropped, and large entries older than the last [RECENT_ENTRIES] are deflated.
+ */
+class BoundedUndoManager(private val codeArea: CodeArea, private val limitBytes: Long) : UndoManager<BoundedUndoManager.Entry> {
+
+    companion object {
+        private const val MERGE_WINDOW_MS = 500L
+        private const val RECENT_ENTRIES = 16
+        private const val COMPRESS_MIN_CHARS = 1024
+
+        // Rough size of an entry's objects besides its text
+        private const val ENTRY_OVERHEAD_BYTES = 64L
+    }
+
+    /**
+     * A single undoable step of one or more changes, made one after another: [removedLength] characters at
+     * [position] were replaced by [insertedLength] ones, for each change.
+     */
+    class Entry internal constructor(changes: List<PlainTextChange>, internal val time: Long) {
+        private val positions = IntArray(changes.size) { changes[it].position }
+        private val removedLengths = IntArray(changes.size) { changes[it].removed.length }
+        private val insertedLengths = IntArray(changes.size) { changes[it].inserted.length }
+
+        val changeCount: Int
+            get() = positions.size
+
+        // Removed followed by inserted text of each change in order, in exactly one of the two fields
+        private var text: String? = if (changes.size == 1) {
+            changes[0].removed + changes[0].inserted
+        } else {
+            buildString { changes.forEach { append(it.removed).append(it.inserted) } }
+        }
+        private var packed: TextSnapshot? = null
+
+        internal val textLength: Int
+            get() = removedLengths.sum() + insertedLengths.sum()
+
+        internal val sizeBytes: Long
+            get() = ENTRY_OVERHEAD_BYTES + 12L * changeCount + (packed?.compressedSize?.toLong() ?: (2L * textLength))
+
+        internal val isPacked: Boolean
+            get() = packed != null
+
+        private fun unpacked(): String = text ?: packed!!.text()
+
+        fun position(change: Int): Int = positions[change]
+
+        fun removedLength(change: Int): Int = removedLengths[change]
+
+        fun insertedLength(change: Int): Int = insertedLengths[change]
+
+        fun removed(change: Int): String {
+            val start = textStart(change)
+            return unpacked().substring(start, start + removedLengths[change])
+        }
+
+        fun inserted(change: Int): String {
+            val start = textStart(change) + removedLengths[change]
+            return unpacked().substring(start, start + insertedLengths[change])
+        }
+
+        private fun textStart(change: Int): Int {
+            var start = 0
+            for (index in 0 until change) start += removedLengths[index] + insertedLengths[index]
+            return start
+        }
+
+        internal fun pack() {
+            val current = text ?: return
+            packed = TextSnapshot.of(current, offHeap = false)
+            text = null
+        }
+
+        /**
+         * Merges [change] into this entry if it continues it, returns false otherwise.
+         */
+        internal fun merge(change: PlainTextChange): Boolean {
+            // Only a plain single change is continued by typing
+            if (changeCount != 1) return false
+            val current = text ?: return false
+            val removed = change.removed
+            val inserted = change.inserted
+            val insertedEnd = positions[0] + insertedLengths[0]
+            return when {
+                // Typing on after the inserted text
+                removed.isEmpty() && change.position == insertedEnd -> {
+                    text = current + inserted
+                    insertedLengths[0] += inserted.length
+                    true
+                }
+                // Backspace over the inserted text
+                inserted.isEmpty() && insertedLengths[0] >= removed.length && change.removalEnd == insertedEnd -> {
+                    text = current.substring(0, current.length - removed.length)
+                    insertedLengths[0] -= removed.length
+                    true
+                }
+                else -> false
+            }
+        }
+    }
+
+    private inner class Position(private val entry: Entry?) : UndoManager.UndoPosition {
+        override fun mark() {
+            markedEntry = entry
+            markValid = true
+            updateState()
+        }
+
+        override fun isValid(): Boolean = entry == null || entry in history
+    }
+
+    private val history = ArrayList<Entry>()
+
+    // Number of entries that are applied, entries from here on can be redone
+    private var position = 0
+    private var totalBytes = 0L
+    private var mergeAllowed = true
+
+    private var markedEntry: Entry? = null
+    private var markValid = true
+
+    private val performingAction = SimpleBooleanProperty(false)
+    private val atMarkedPosition = SimpleBooleanProperty(true)
+    private val undoAvailable = Var.newSimpleVar(false)
+    private val redoAvailable = Var.newSimpleVar(false)
+    private val nextUndo = Var.newSimpleVar<Entry?>(null)
+    private val nextRedo = Var.newSimpleVar<Entry?>(null)
+
+    // One event per edit, with all changes of a multi-change together
+    private val subscription = codeArea.multiPlainChanges().subscribe { changes ->
+        if (!performingAction.get()) {
+            val recorded = changes.filter { !it.isIdentity }
+            if (recorded.isNotEmpty()) record(recorded)
+        }
+    }
+
+    private fun record(changes: List<PlainTextChange>) {
+        if (position < history.size) {
+            history.subList(position, history.size).forEach { totalBytes -= it.sizeBytes }
+            history.subList(position, history.size).clear()
+        }
+
+        val now = System.currentTimeMillis()
+        val last = history.lastOrNull()
+        if (changes.size == 1 && last != null && mergeAllowed && now - last.time <= MERGE_WINDOW_MS && last !== markedEntry) {
+            val before = last.sizeBytes
+            if (last.merge(changes[0])) {
+                totalBytes += last.sizeBytes - before
+                trim()
+                updateState()
+                return
+            }
+        }
+
+        val entry = Entry(changes, now)
+        history.add(entry)
+        totalBytes += entry.sizeBytes
+        position = history.size
+        mergeAllowed = true
+        compressOld()
+        trim()
+        updateState()
+    }
+
+    private fun compressOld() {
+        val index = history.size - 1 - RECENT_ENTRIES
+        if (index < 0) return
+        val entry = history[index]
+        if (!entry.isPacked && entry.textLength >= COMPRESS_MIN_CHARS) {
+            totalBytes -= entry.sizeBytes
+            entry.pack()
+            totalBytes += entry.sizeBytes
+        }
+    }
+
+    private fun trim() {
+        // The newest entry is always kept, even if it alone is over the limit
+        var dropped = 0
+        while (totalBytes > limitBytes && dropped < history.size - 1) {
+            val entry = history[dropped]
+            totalBytes -= entry.sizeBytes
+            if (entry === markedEntry) markValid = false
+            dropped++
+        }
+        if (dropped > 0) {
+            history.subList(0, dropped).clear()
+            position -= dropped
+        }
+    }
+
+    override fun undo(): Boolean {
+        if (position == 0) return false
+        val entry = history[--position]
+        // Reverting the changes last to first, each one's position holds again once the later ones are reverted
+        apply((entry.changeCount - 1 downTo 0).map { change ->
+            Triple(entry.position(change), entry.position(change) + entry.insertedLength(change), entry.removed(change))
+        })
+        return true
+    }
+
+    override fun redo(): Boolean {
+        if (position == history.size) return false
+        val entry = history[position++]
+        apply((0 until entry.changeCount).map { change ->
+            Triple(entry.position(change), entry.position(change) + entry.removedLength(change), entry.inserted(change))
+        })
+        return true
+    }
+
+    /**
+     * Applies the replacements in order, as one multi-change if there are several.
+     */
+    private fun apply(replacements: List<Triple<Int, Int, String>>) {
+        performingAction.set(true)
+        try {
+            if (replacements.size == 1) {
+                val (start, end, text) = replacements[0]
+                codeArea.replaceText(start, end, text)
+            } else {
+                val builder = codeArea.createMultiChange(replacements.size)
+                replacements.forEach { (start, end, text) -> builder.replaceText(start, end, text) }
+                builder.commit()
+            }
+            val (start, _, text) = replacements.last()
+            codeArea.moveTo(start + text.length)
+            codeArea.requestFollowCaret()
+        } finally {
+            performingAction.set(false)
+        }
+        mergeAllowed = false
+        updateState()
+    }
+
+    private fun updateState() {
+        undoAvailable.value = position > 0
+        redoAvailable.value = position < history.size
+        nextUndo.value = history.getOrNull(position - 1)
+        nextRedo.value = history.getOrNull(position)
+        atMarkedPosition.set(markValid && markedEntry === history.getOrNull(position - 1))
+    }
+
+    override fun undoAvailableProperty(): Val<Boolean> = undoAvailable
+
+    override fun isUndoAvailable(): Boolean = undoAvailable.value
+
+    override fun redoAvailableProperty(): Val<Boolean> = redoAvailable
+
+    override fun isRedoAvailable(): Boolean = redoAvailable.value
+
+    @Suppress("UNCHECKED_CAST")
+    override fun nextUndoProperty(): Val<Entry> = nextUndo as Val<Entry>
+
+    @Suppress("UNCHECKED_CAST")
+    override fun nextRedoProperty(): Val<Entry> = nextRedo as Val<Entry>
+
+    override fun performingActionProperty(): ObservableBooleanValue = performingAction
+
+    override fun isPerformingAction(): Boolean = performingAction.get()
+
+    override fun preventMerge() {
+        mergeAllowed = false
+    }
+
+    override fun forgetHistory() {
+        history.subList(0, position).clear()
+        position = 0
+        totalBytes = history.sumOf { it.sizeBytes }
+        updateState()
+    }
+
+    override fun getCurrentPosition(): UndoManager.UndoPosition = Position(history.getOrNull(position - 1))
+
+    override fun atMarkedPositionProperty(): ObservableBooleanValue = atMarkedPosition
+
+    override fun isAtMarkedPosition(): Boolean = atMarkedPosition.get()
+
+    override fun close() {
+        subscription.unsubscribe()
+    }
+}
@@ -0,0 +1,135 @@
+package io.github.frostzie.nodex.features.search
+
+/**
+ * Scores how well a typed query matches a path, the way quick open pickers do: every query character has to appear
+ * in order, and a match counts for more at the start of a path segment or word, in a run of matches and inside the
+ * file name. Gaps between matches cost a little.
+ *
+ * Nothing is allocated per scored path, and what only depends on the path is worked out up front by [lower] and
+ * [bonuses], so a whole workspace can be ranked again on every keystroke. Paths are read from shared arrays by
+ * offset, so many of them can be packed next to each other.
+ */
+object FuzzyScorer {
+    const val NO_MATCH = Int.MIN_VALUE
+
+    private const val SCORE_MATCH = 16
+    private const val GAP_START = 3
+    private const val GAP_EXTENSION = 1
+    private const val BONUS_SEGMENT = 10
+    private const val BONUS_WORD = 8
+    private const val BONUS_CAMEL = 7
+    private const val BONUS_CONSECUTIVE = 5
+    private const val BONUS_FILE_NAME = 6
+    private const val BONUS_WORD_END = 8
+
+    /**
+     * A query prepared once per keystroke. Whitespace is ignored and `\` matches `/`.
+     */
+    class Query(text: String) {
+        val chars: CharArray = text.filterNot { it.isWhitespace() }.map { lower(if (it == '\\') '/' else it) }.toCharArray()
+        val mask: Long = mask(chars)
+
+        val isEmpty: Boolean
+            get() = chars.isEmpty()
+    }
+
+    /**
+     * Lowercases one character at a time, so indices into the result stay those of the original text.
+     */
+    fun lower(c: Char): Char = Character.toLowerCase(c)
+
+    /**
+     * The bonus a match at each index of [text] gets, for starting a path segment, a word or a camel case hump.
+     */
+    fun bonuses(text: String): ByteArray = ByteArray(text.length) { bonusAt(text, it).toByte() }
+
+    /**
+     * The set of letters, digits and separators in [chars]. A path can only match a query whose mask is a
+     * subset of its own, which rules out most paths without scoring them.
+     */
+    fun mask(chars: CharArray): Long {
+        var mask = 0L
+        for (c in chars) mask = mask or bit(c)
+        return mask
+    }
+
+    private fun bit(c: Char): Long = when (c) {
+        in 'a'..'z' -> 1L shl (c - 'a')
+        in '0'..'9' -> 1L shl (26 + (c - '0'))
+        '/' -> 1L shl 36
+        '_' -> 1L shl 37
+        '-' -> 1L shl 38
+        '.' -> 1L shl 39
+        else -> 1L shl 40
+    }
+
+    /**
+     * The score of [query] against the path at [start] until [end] of [lower] and [bonuses], or [NO_MATCH].
+     * Its file name starts at [nameStart]. Matches inside the file name alone are preferred, as that is what is
+     * usually typed, and the whole path is tried otherwise. Check the [mask] first, which is much cheaper.
+     */
+    fun score(query: Query, lower: CharArray, bonuses: ByteArray, start: Int, end: Int, nameStart: Int): Int {
+        if (query.isEmpty) return 0
+        val inName = score(query.chars, lower, bonuses, nameStart, end, nameStart)
+        val best = if (inName != NO_MATCH) inName else score(query.chars, lower, bonuses, start, end, nameStart)
+        // Between equal matches, the shorter path
+        return if (best == NO_MATCH) NO_MATCH else best - (end - start) / 16
+    }
+
+    private fun score(query: CharArray, lower: CharArray, bonuses: ByteArray, from: Int, end: Int, nameStart: Int): Int {
+        if (query.size > end - from) return NO_MATCH
+
+        // The first place all characters appear in order ends the shortest match...
+        var q = 0
+        var i = from
+        while (i < end && q < query.size) {
+            if (lower[i] == query[q]) q++
+            i++
+        }
+        if (q < query.size) return NO_MATCH
+        val matchEnd = i
+
+        // ...and matching backwards from there finds where it starts
+        q = query.size - 1
+        i = matchEnd - 1
+        while (q >= 0) {
+            if (lower[i] == query[q]) q--
+            i--
+        }
+
+        var score = 0
+        var previousMatched = false
+        var runBonus = 0
+        q = 0
+        for (index in i + 1 until matchEnd) {
+            if (q < query.size && lower[index] == query[q]) {
+                val bonus = bonuses[index].toInt()
+                // A run is worth as much as its start, at least the consecutive bonus
+                runBonus = if (previousMatched) maxOf(runBonus, bonus, BONUS_CONSECUTIVE) else bonus
+                score += SCORE_MATCH + if (q == 0) bonus * 2 else runBonus
+                if (index >= nameStart) score += BONUS_FILE_NAME
+                previousMatched = true
+                q++
+            } else {
+                score -= if (previousMatched) GAP_START else GAP_EXTENSION
+                previousMatched = false
+            }
+        }
+        // Typing all of a word, e.g. `tick` for tick.mcfunction over ticket.mcfunction
+        if (matchEnd == end || !lower[matchEnd].isLetterOrDigit()) score += BONUS_WORD_END
+        return score
+    }
+
+    private fun bonusAt(text: String, index: Int): Int {
+        if (index == 0) return BONUS_SEGMENT
+        val previous = text[index - 1]
+        val current = text[index]
+        return when {
+            previous == '/' -> BONUS_SEGMENT
+            previous == '_' || previous == '-' || previous == '.' || previous == ' ' -> BONUS_WORD
+            previous.isLowerCase() && current.isUpperCase() -> BONUS_CAMEL
+            !previous.isDigit() && current.isDigit() -> BONUS_CAMEL
+            else -> 0
+        }
+    }
+}
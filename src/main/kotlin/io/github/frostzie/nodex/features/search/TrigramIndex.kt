@@ -0,0 +1,192 @@
+package io.github.frostzie.nodex.features.search
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * Trigram index of the files below one root, which rules out most files before a query searches their contents.
+ *
+ * Every file keeps its sorted [Trigrams], and every trigram the files containing it. A query starts from the files
+ * of its rarest trigram and checks the others against each file's own list, so it never touches the other files.
+ * The result can still hold files without a match, the exact search of the candidates decides.
+ *
+ * Paths are relative to the root, with `/` separators. Safe to use from any thread.
+ */
+class TrigramIndex {
+
+    /**
+     * An indexed file with the size and modification time it was indexed at. [trigrams] is null for a file that
+     * was not read (e.g. over the size cap), which is a candidate for every query.
+     */
+    class Entry(val path: String, val size: Long, val modified: Long, val trigrams: IntArray?)
+
+    private val lock = ReentrantReadWriteLock()
+    private val entries = ArrayList<Entry?>()
+    private val ids = HashMap<String, Int>()
+    private val freeIds = ArrayDeque<Int>()
+    private val postings = HashMap<Int, IntList>()
+    private val unread = HashSet<Int>()
+
+    val fileCount: Int
+        get() = lock.read { ids.size }
+
+    val trigramCount: Int
+        get() = lock.read { postings.size }
+
+    fun get(path: String): Entry? = lock.read { ids[path]?.let { entries[it] } }
+
+    /**
+     * All entries at or below [path], every entry for an empty path.
+     */
+    fun entriesUnder(path: String): List<Entry> = lock.read {
+        entries.filterNotNull().filter { isUnder(it.path, path) }
+    }
+
+    fun put(entry: Entry) = lock.write {
+        ids[entry.path]?.let { removeId(it) }
+        val id = freeIds.removeLastOrNull() ?: entries.size.also { entries.add(null) }
+        entries[id] = entry
+        ids[entry.path] = id
+        val trigrams = entry.trigrams
+        if (trigrams == null) {
+            unread.add(id)
+        } else {
+            trigrams.forEach { postings.getOrPut(it) { IntList() }.add(id) }
+        }
+    }
+
+    /**
+     * Removes [path] and everything below it.
+     */
+    fun removeUnder(path: String) = lock.write {
+        ids.entries.filter { isUnder(it.key, path) }.map { it.value }.forEach { removeId(it) }
+    }
+
+    /**
+     * Removes the files at exactly [paths], each looked up directly instead of scanning every entry.
+     */
+    fun remove(paths: Collection<String>) = lock.write {
+        paths.forEach { path -> ids[path]?.let { removeId(it) } }
+    }
+
+    private fun removeId(id: Int) {
+        val entry = entries[id] ?: return
+        entry.trigrams?.forEach { trigram ->
+            val files = postings[trigram] ?: return@forEach
+            files.remove(id)
+            if (files.size == 0) postings.remove(trigram)
+        }
+        unread.remove(id)
+        ids.remove(entry.path)
+        entries[id] = null
+        freeIds.addLast(id)
+    }
+
+    /**
+     * The files that can contain all of [trigrams], which must not be empty.
+     */
+    fun query(trigrams: IntArray): List<String> = lock.read {
+        require(trigrams.isNotEmpty()) { "No trigrams to query" }
+        val result = ArrayList<String>()
+        unread.forEach { result.add(entries[it]!!.path) }
+
+        val files = trigrams.map { postings[it] ?: return@read result }
+        val rarest = files.minBy { it.size }
+        for (i in 0 until rarest.size) {
+            val entry = entries[rarest.values[i]]!!
+            val fileTrigrams = entry.trigrams!!
+            if (trigrams.all { fileTrigrams.binarySearch(it) >= 0 }) result.add(entry.path)
+        }
+        result
+    }
+
+    /**
+     * Writes the entries, the postings are rebuilt from them when read.
+     */
+    fun write(output: DataOutputStream) = lock.read {
+        output.writeInt(ids.size)
+        for (entry in entries) {
+            if (entry == null) continue
+            output.writeUTF(entry.path)
+            output.writeLong(entry.size)
+            output.writeLong(entry.modified)
+            val trigrams = entry.trigrams
+            output.writeInt(trigrams?.size ?: -1)
+            // Sorted, so the gaps are small and mostly take a single byte
+            var previous = 0
+            trigrams?.forEach {
+                writeVarInt(output, it - previous)
+                previous = it
+            }
+        }
+    }
+
+    companion object {
+        fun read(input: DataInputStream): TrigramIndex {
+            val index = TrigramIndex()
+            repeat(input.readInt()) {
+                val path = input.readUTF()
+                val size = input.readLong()
+                val modified = input.readLong()
+                val count = input.readInt()
+                val trigrams = if (count < 0) null else {
+                    var previous = 0
+                    IntArray(count) { (previous + readVarInt(input)).also { previous = it } }
+                }
+                index.put(Entry(path, size, modified, trigrams))
+            }
+            return index
+        }
+
+        private fun isUnder(path: String, parent: String): Boolean {
+            return parent.isEmpty() || path == parent || (path.startsWith(parent) && path[parent.length] == '/')
+        }
+
+        private fun writeVarInt(output: DataOutputStream, value: Int) {
+            var remaining = value
+            while ((remaining and 0x7F.inv()) != 0) {
+                output.writeByte((remaining and 0x7F) or 0x80)
+                remaining = remaining ushr 7
+            }
+            output.writeByte(remaining)
+        }
+
+        private fun readVarInt(input: DataInputStream): Int {
+            var value = 0
+            var shift = 0
+            while (true) {
+                val byte = input.readUnsignedByte()
+                value = value or ((byte and 0x7F) shl shift)
+                if ((byte and 0x80) == 0) return value
+                shift += 7
+                if (shift > 28) throw IOException("Malformed trigram index")
+            }
+        }
+    }
+}
+
+/**
+ * Growable list of file ids, in no particular order.
+ */
+private class IntList {
+    var values = IntArray(4)
+    var size = 0
+
+    fun add(value: Int) {
+        if (size == values.size) values = values.copyOf(size * 2)
+        values[size++] = value
+    }
+
+    fun remove(value: Int) {
+        for (i in 0 until size) {
+            if (values[i] == value) {
+                values[i] = values[--size]
+                return
+            }
+        }
+    }
+}
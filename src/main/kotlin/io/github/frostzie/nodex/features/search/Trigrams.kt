@@ -0,0 +1,215 @@
+package io.github.frostzie.nodex.features.search
+
+import io.github.frostzie.nodex.features.editor.find.FindQuery
+
+/**
+ * Trigrams of file contents and of queries, as stored in a [TrigramIndex].
+ *
+ * A trigram is three consecutive characters, case folded the way the find matcher compares them and packed into
+ * an Int. Only trigrams of ASCII characters are kept: nearly all of a datapack is ASCII, and at 7 bits each three
+ * of them pack into 21 bits without collisions.
+ */
+object Trigrams {
+
+    /**
+     * The distinct trigrams of [text], sorted.
+     */
+    fun of(text: CharSequence): IntArray {
+        val trigrams = IntHashSet()
+        forEach(text) { trigrams.add(it) }
+        return trigrams.toSortedArray()
+    }
+
+    /**
+     * The distinct trigrams every match of [query] contains, sorted. Empty when nothing can be said about its matches,
+     * e.g. for a query shorter than three characters or a regex without literal text.
+     */
+    fun required(query: FindQuery): IntArray {
+        val runs = if (query.regex) literalRuns(query.text) ?: return IntArray(0) else listOf(query.text)
+        val trigrams = IntHashSet()
+        runs.forEach { run -> forEach(run) { trigrams.add(it) } }
+        return trigrams.toSortedArray()
+    }
+
+    private inline fun forEach(text: CharSequence, action: (Int) -> Unit) {
+        var trigram = 0
+        var valid = 0
+        for (i in 0 until text.length) {
+            val char = fold(text[i])
+            if (char < 0) {
+                valid = 0
+                continue
+            }
+            trigram = ((trigram shl 7) or char) and 0x1FFFFF
+            if (++valid >= 3) action(trigram)
+        }
+    }
+
+    // Same folding as the literal matcher, -1 for characters that are not ASCII once folded
+    private fun fold(char: Char): Int {
+        val folded = when {
+            char < 'A' -> char
+            char <= 'Z' -> char + ('a' - 'A')
+            char < '\u0080' -> char
+            else -> Character.toLowerCase(Character.toUpperCase(char))
+        }
+        return if (folded < '\u0080') folded.code else -1
+    }
+
+    /**
+     * The runs of literal text every match of [regex] contains, or null if the pattern is beyond this simple reading.
+     * Groups, classes and escapes only end a run, a character made optional by a quantifier is dropped from its run.
+     */
+    private fun literalRuns(regex: String): List<String>? {
+        // Inline flags such as (?x) change what the literal characters mean
+        if ("(?" in regex) return null
+        val runs = ArrayList<String>()
+        val run = StringBuilder()
+        var lastWasLiteral = false
+
+        fun endRun() {
+            if (run.length >= 3) runs.add(run.toString())
+            run.setLength(0)
+            lastWasLiteral = false
+        }
+
+        var i = 0
+        while (i < regex.length) {
+            when (val char = regex[i]) {
+                // Either side may match, so neither is required
+                '|' -> return null
+                '\\' -> {
+                    val next = regex.getOrNull(i + 1) ?: return null
+                    when {
+                        !next.isLetterOrDigit() -> {
+                            run.append(next)
+                            lastWasLiteral = true
+                        }
+                        // Escapes with arguments (e.g. \x41, \p{L}, \Q...\E) and back references
+                        next.isDigit() || next in "xuUcpPNkQ" -> return null
+                        else -> endRun()
+                    }
+                    i += 2
+                    continue
+                }
+                '[' -> {
+                    endRun()
+                    i = skipClass(regex, i)
+                    continue
+                }
+                '(' -> {
+                    endRun()
+                    i = skipGroup(regex, i) ?: return null
+                    continue
+                }
+                ')' -> return null
+                '?', '*' -> {
+                    if (lastWasLiteral) run.setLength(run.length - 1)
+                    endRun()
+                }
+                '+' -> endRun()
+                '{' -> {
+                    // A repetition that allows zero occurrences makes the character optional
+                    val close = regex.indexOf('}', i)
+                    if (close < 0) return null
+                    val min = regex.substring(i + 1, close).substringBefore(',').trim().toIntOrNull() ?: 0
+                    if (lastWasLiteral && min == 0) run.setLength(run.length - 1)
+                    endRun()
+                    i = close + 1
+                    continue
+                }
+                '.', '^', '$' -> endRun()
+                else -> {
+                    run.append(char)
+                    lastWasLiteral = true
+                }
+            }
+            i++
+        }
+        endRun()
+        return runs
+    }
+
+    /**
+     * The index after the character class starting at [start], classes can be nested.
+     */
+    private fun skipClass(regex: String, start: Int): Int {
+        var i = start + 1
+        if (regex.getOrNull(i) == '^') i++
+        // A ] right at the start is a literal
+        if (regex.getOrNull(i) == ']') i++
+        var depth = 1
+        while (i < regex.length) {
+            when (regex[i]) {
+                '\\' -> i++
+                '[' -> depth++
+                ']' -> if (--depth == 0) return i + 1
+            }
+            i++
+        }
+        return i
+    }
+
+    /**
+     * The index after the group starting at [start], or null if it is not closed.
+     */
+    private fun skipGroup(regex: String, start: Int): Int? {
+        var i = start + 1
+        var depth = 1
+        while (i < regex.length) {
+            when (regex[i]) {
+                '\\' -> i++
+                '[' -> {
+                    i = skipClass(regex, i)
+                    continue
+                }
+                '(' -> depth++
+                ')' -> if (--depth == 0) return i + 1
+            }
+            i++
+        }
+        return null
+    }
+}
+
+/**
+ * Open addressing set of trigrams, which are never negative, without boxing every one of them.
+ */
+private class IntHashSet {
+    private var slots = IntArray(256) { -1 }
+    private var size = 0
+
+    fun add(value: Int) {
+        if (size * 2 >= slots.size) grow()
+        if (insert(slots, value)) size++
+    }
+
+    private fun insert(target: IntArray, value: Int): Boolean {
+        val mask = target.size - 1
+        var slot = (value * -0x61c88647) ushr 8 and mask
+        while (true) {
+            when (target[slot]) {
+                -1 -> {
+                    target[slot] = value
+                    return true
+                }
+                value -> return false
+            }
+            slot = (slot + 1) and mask
+        }
+    }
+
+    private fun grow() {
+        val grown = IntArray(slots.size * 2) { -1 }
+        slots.forEach { if (it >= 0) insert(grown, it) }
+        slots = grown
+    }
+
+    fun toSortedArray(): IntArray {
+        val result = IntArray(size)
+        var i = 0
+        slots.forEach { if (it >= 0) result[i++] = it }
+        result.sort()
+        return result
+    }
+}
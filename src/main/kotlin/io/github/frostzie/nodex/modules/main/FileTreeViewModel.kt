@@ -2,6 +2,8 @@ package io.github.frostzie.nodex.modules.main
 
 import io.github.frostzie.nodex.events.DirectorySelected
 import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.events.FileCreated
+import io.github.frostzie.nodex.events.FileDeleted
 import io.github.frostzie.nodex.events.FileMoved
 import io.github.frostzie.nodex.events.MoveFile
 import io.github.frostzie.nodex.events.ToggleFileTree
@@ -12,10 +14,10 @@ import io.github.frostzie.nodex.screen.elements.main.FileTreeItem
 import io.github.frostzie.nodex.services.FileService
 import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
 import io.github.frostzie.nodex.utils.LoggerProvider
+import io.github.frostzie.nodex.utils.file.DirectorySnapshotCache
 import io.github.frostzie.nodex.utils.file.FileSystemUpdate
 import javafx.application.Platform
 import javafx.beans.property.SimpleBooleanProperty
-import java.nio.file.Files
 import javafx.beans.property.SimpleObjectProperty
 import javafx.scene.control.TreeItem
 import kotlinx.coroutines.CoroutineScope
@@ -25,7 +27,6 @@ import kotlinx.coroutines.cancel
 import kotlinx.coroutines.launch
 import java.nio.file.Path
 import java.nio.file.Paths
-import kotlin.io.path.isDirectory
 
 class FileTreeViewModel {
     private val logger = LoggerProvider.getLogger("FileTreeViewModel")
@@ -40,6 +41,14 @@ class FileTreeViewModel {
     private val expandedPaths = mutableSetOf<Path>()
     private var isRestoringExpansion = false
 
+    // Listings of the directories shown so far, refreshes only read the ones that changed
+    private val snapshots = DirectorySnapshotCache()
+
+    // Every node below the workspace root by its path, only touched on the FX thread
+    private val nodesByPath = HashMap<Path, TreeItem<FileTreeItem>>()
+    // Directories inside a compacted chain, e.g. `a` of `a.b`, to the path of the node showing the chain
+    private val chainAliases = HashMap<Path, Path>()
+
     init {
         val dummyRoot = TreeItem(FileTreeItem(Paths.get("Workspace"), "Workspace"))
         dummyRoot.isExpanded = true
@@ -92,28 +101,28 @@ class FileTreeViewModel {
                 val rootNode = root.get()
                 
                 // Remove nodes that are no longer in the project list
-                rootNode.children.removeIf { item ->
+                val removed = rootNode.children.filter { item ->
                     val path = item.value?.path
                     path != null && projects.none { it.path == path }
                 }
+                rootNode.children.removeAll(removed)
+                removed.forEach { forget(it) }
 
                 // Add or Update nodes
                 projects.forEach { project ->
-                    val existingNode = rootNode.children.find { it.value?.path == project.path }
+                    val existingNode = nodesByPath[project.path]?.takeIf { it.parent === rootNode }
                     if (existingNode == null) {
                         // Create new project node
-                        val projectNode = TreeItem(FileTreeItem(project.path, project.name))
+                        val projectNode = TreeItem(FileTreeItem(project.path, project.name, isDirectory = true))
                         projectNode.isExpanded = true // Auto-expand project roots
                         
                         // Load children asynchronously
                         scope.launch {
                             val children = loadChildren(project.path)
-                            Platform.runLater {
-                                projectNode.children.setAll(children)
-                                restoreExpandedPaths(projectNode) // Try to restore
-                            }
+                            Platform.runLater { applyChildren(projectNode, children) }
                         }
                         rootNode.children.add(projectNode)
+                        remember(projectNode)
                         
                         // Add listener to project root itself
                         addExpansionListener(projectNode, project.path)
@@ -124,19 +133,6 @@ class FileTreeViewModel {
         }
     }
     
-    private fun restoreExpandedPaths(node: TreeItem<FileTreeItem>) {
-        if (node.value == null) return
-        
-        // Check children
-        node.children.forEach { child ->
-            val childPath = child.value?.path
-            if (childPath != null && childPath in expandedPaths) {
-                child.isExpanded = true
-                restoreExpandedPaths(child)
-            }
-        }
-    }
-
     @Suppress("unused")
     @SubscribeEvent
     fun onFileMoved(event: MoveFile) {
@@ -149,106 +145,200 @@ class FileTreeViewModel {
             
             EventBus.post(FileMoved(event.sourcePath, event.targetPath))
 
-            refreshNode(event.sourcePath.parent)
-            refreshNode(event.targetPath.parent)
+            refreshNodes(listOf(event.sourcePath.parent, event.targetPath.parent))
 
         } catch (e: Exception) {
             logger.error("Failed to move file: ${event.sourcePath}", e)
         }
     }
 
+    // Watcher events, including the tree's own moves, patch the cached listings before the next refresh reads them
+    @Suppress("unused")
     @SubscribeEvent
-    fun onFileSystemUpdate(event: FileSystemUpdate) {
-        refreshNode(event.path)
+    fun onFileCreated(event: FileCreated) {
+        snapshots.patch(event.path)
     }
 
-    private fun refreshNode(path: Path?) {
-        if (path == null) return
+    @Suppress("unused")
+    @SubscribeEvent
+    fun onFileDeleted(event: FileDeleted) {
+        snapshots.patch(event.path)
+    }
 
-        // If the path to refresh doesn't exist (it was just renamed/deleted)
-        // refresh its parent to update the tree structure.
-        if (!FileService.isDirectory(path) && !Files.exists(path)) {
-            refreshNode(path.parent)
-            return
-        }
+    @Suppress("unused")
+    @SubscribeEvent
+    fun onPathMoved(event: FileMoved) {
+        snapshots.patch(event.oldPath)
+        snapshots.patch(event.newPath)
+    }
 
-        Platform.runLater {
-            var currentPath = path
-            var targetNode: TreeItem<FileTreeItem>? = null
-
-            // Find the closest existing ancestor node
-            while (currentPath != null && targetNode == null) {
-                targetNode = findNode(root.get(), currentPath)
-                if (targetNode == null) {
-                    currentPath = currentPath.parent
-                }
-            }
+    @SubscribeEvent
+    fun onFileSystemUpdate(event: FileSystemUpdate) {
+        refreshNodes(event.directories, recursive = event.overflowed)
+    }
 
-            if (targetNode != null && targetNode.isExpanded) {
-                val nodeToRefresh = targetNode
-                val pathToRefresh = nodeToRefresh.value.path
+    /**
+     * Refreshes the expanded nodes showing [directories], in one pass on the FX thread. A directory without a node
+     * of its own, e.g. inside a compacted chain or a collapsed folder, refreshes the closest node above it.
+     */
+    private fun refreshNodes(directories: Collection<Path?>, recursive: Boolean = false) {
+        // A directory that is gone shows up in its parent's listing
+        val existing = directories.mapNotNull { directory ->
+            var current = directory
+            while (current != null && !FileService.isDirectory(current)) current = current.parent
+            current
+        }.toSet()
+        if (existing.isEmpty()) return
 
-                scope.launch {
-                    val children = loadChildren(pathToRefresh)
-                    Platform.runLater {
-                        nodeToRefresh.children.setAll(children)
-                        restoreExpandedPaths(nodeToRefresh)
-                    }
+        Platform.runLater {
+            val nodes = LinkedHashSet<TreeItem<FileTreeItem>>()
+            for (directory in existing) {
+                // A changed directory inside a chain can end or extend it, which its parent's listing decides
+                val chainNode = chainAliases[directory]?.let { nodesByPath[it] }
+                if (chainNode != null) {
+                    chainNode.parent?.let { nodes.add(it) }
+                    continue
+                }
+                var current: Path? = directory
+                var targetNode: TreeItem<FileTreeItem>? = null
+                while (current != null && targetNode == null) {
+                    targetNode = findNode(current)
+                    current = current.parent
                 }
+                targetNode?.let { nodes.add(it) }
             }
+            nodes.forEach { refreshExpanded(it, recursive) }
         }
     }
 
-    private fun findNode(root: TreeItem<FileTreeItem>, path: Path): TreeItem<FileTreeItem>? {
-        if (root.value?.path == path) return root
+    /**
+     * Re-reads the children of [node] and, if [recursive], those of its expanded descendants, which kept nodes
+     * otherwise leave as they are. Directories that did not change are served from the snapshot cache for the cost
+     * of a stat.
+     */
+    private fun refreshExpanded(node: TreeItem<FileTreeItem>, recursive: Boolean) {
+        // Not loaded yet, it reads its children when first expanded
+        if (!node.isExpanded || node.children.firstOrNull()?.let { it.value == null } == true) return
+        val path = node.value.path
+        scope.launch {
+            val children = loadChildren(path)
+            Platform.runLater {
+                val created = applyChildren(node, children)
+                if (recursive) node.children.filter { it.isExpanded && it !in created }.forEach { refreshExpanded(it, true) }
+            }
+        }
+    }
 
-        // Optimization: Check if path belongs to this branch
-        if (root.value?.displayName == "Workspace") {
-            for (child in root.children) {
-                if (path.startsWith(child.value.path)) {
-                    return findNode(child, path)
+    /**
+     * Brings the children of [node] in line with [items], matched by path. Nodes still listed are kept as they are,
+     * with their expansion and loaded subtrees, so only the inserted and removed rows change.
+     *
+     * @return The nodes that were created.
+     */
+    private fun applyChildren(node: TreeItem<FileTreeItem>, items: List<FileTreeItem>): Set<TreeItem<FileTreeItem>> {
+        val children = node.children
+        val wanted = items.associateBy { it.path }
+        // The placeholder of an unloaded directory has no value and goes with the first load
+        val removed = children.filter { child ->
+            val value = child.value
+            value == null || wanted[value.path]?.isDirectory != value.isDirectory
+        }
+        children.removeAll(removed)
+        removed.forEach { forget(it) }
+
+        val created = HashSet<TreeItem<FileTreeItem>>()
+        var index = 0
+        while (index < items.size) {
+            val existing = children.getOrNull(index)
+            if (existing != null && existing.value.path == items[index].path) {
+                // Same directory reached through a different compacted chain
+                if (existing.value != items[index]) {
+                    forgetChain(existing.value)
+                    existing.value = items[index]
+                    rememberChain(items[index])
                 }
+                index++
+                continue
+            }
+            // Kept nodes are in the same order as the listing, so everything up to the next one is new.
+            // A kept node out of that order is created again here and dropped with the leftovers below.
+            val insertAt = index
+            val run = ArrayList<TreeItem<FileTreeItem>>()
+            while (index < items.size && items[index].path != existing?.value?.path) {
+                run.add(createNode(items[index]))
+                index++
             }
-            return null
+            children.addAll(insertAt, run)
+            created.addAll(run)
+        }
+        if (children.size > items.size) {
+            val leftovers = children.subList(items.size, children.size).toList()
+            children.remove(items.size, children.size)
+            leftovers.forEach { forget(it) }
         }
 
-        for (child in root.children) {
-            val childPath = child.value?.path ?: continue
-            if (path == childPath) return child
-            if (path.startsWith(childPath)) {
-                return findNode(child, path)
-            }
+        created.forEach { child ->
+            remember(child)
+            if (child.value.path in expandedPaths) child.isExpanded = true
         }
-        return null
+        return created
+    }
+
+    /**
+     * The node showing [path], looked up in the index rather than by walking the tree. A directory inside
+     * a compacted chain resolves to the node of the chain.
+     */
+    private fun findNode(path: Path): TreeItem<FileTreeItem>? {
+        return nodesByPath[path] ?: chainAliases[path]?.let { nodesByPath[it] }
+    }
+
+    private fun remember(node: TreeItem<FileTreeItem>) {
+        val item = node.value ?: return
+        nodesByPath[item.path] = node
+        rememberChain(item)
+    }
+
+    /**
+     * Drops [node] and everything loaded below it from the index, once it was removed from the tree.
+     */
+    private fun forget(node: TreeItem<FileTreeItem>) {
+        val item = node.value ?: return
+        // A node of the same path can already have taken its place, e.g. after a kept node was out of order
+        if (nodesByPath[item.path] === node) {
+            nodesByPath.remove(item.path)
+            forgetChain(item)
+        }
+        node.children.forEach { forget(it) }
+    }
+
+    private fun rememberChain(item: FileTreeItem) {
+        chainDirectories(item).forEach { chainAliases[it] = item.path }
+    }
+
+    private fun forgetChain(item: FileTreeItem) {
+        chainDirectories(item).forEach { chainAliases.remove(it, item.path) }
+    }
+
+    // The directories of a compacted chain above its deepest one
+    private fun chainDirectories(item: FileTreeItem): Sequence<Path> {
+        val start = item.compactedFrom ?: return emptySequence()
+        return generateSequence(item.path.parent) { it.parent }.takeWhile { it.startsWith(start) }
     }
 
     /**
      * Loads the children for a given directory, sorting them and compacting empty parent directories.
+     * Listings come from the snapshot cache, only directories that changed since they were last shown are read.
      */
-    private fun loadChildren(directory: Path): List<TreeItem<FileTreeItem>> {
+    private fun loadChildren(directory: Path): List<FileTreeItem> {
         return try {
-            // This set tracks paths that have been processed as part of a compacted directory
-            // to avoid adding them as duplicate, separate entries in the tree.
-            val processedPaths = mutableSetOf<Path>()
-            FileService.listDirectory(directory)
-                .sortedWith(compareBy<Path> { !it.isDirectory() }.thenComparator { a, b ->
-                    naturalOrderComparator.compare(a.fileName.toString(), b.fileName.toString())
-                })
-                .mapNotNull { entry ->
-                    if (entry in processedPaths) return@mapNotNull null
-
-                    if (entry.isDirectory()) {
-                        val (finalPath, displayName) = findCompactedPath(entry)
-                        var current = finalPath
-                        while (current != entry.parent) {
-                            if (current != entry) processedPaths.add(current)
-                            current = current.parent ?: break
-                        }
-                        createNode(FileTreeItem(finalPath, displayName))
-                    } else {
-                        createNode(FileTreeItem(entry, entry.fileName.toString()))
-                    }
+            snapshots.list(directory).map { entry ->
+                if (entry.isDirectory) {
+                    val (finalPath, displayName) = findCompactedPath(entry.path)
+                    FileTreeItem(finalPath, displayName, isDirectory = true, compactedFrom = entry.path.takeIf { it != finalPath })
+                } else {
+                    FileTreeItem(entry.path, entry.path.fileName.toString(), isDirectory = false)
                 }
+            }
         } catch (e: Exception) {
             logger.error("Failed to load children for directory: $directory", e)
             emptyList()
@@ -264,19 +354,9 @@ class FileTreeViewModel {
      * @return A Pair containing the final, deepest path in the chain and the compacted display name.
      */ //TODO: Add settings to change separation character
     private fun findCompactedPath(startPath: Path): Pair<Path, String> {
-        var currentPath = startPath
-        val nameParts = mutableListOf(startPath.fileName.toString())
-
-        while (true) {
-            val entries = FileService.listDirectory(currentPath)
-            if (entries.size == 1 && entries.first().isDirectory()) {
-                currentPath = entries.first()
-                nameParts.add(currentPath.fileName.toString())
-            } else {
-                break
-            }
-        }
-        return Pair(currentPath, nameParts.joinToString("."))
+        val chain = snapshots.compactedChain(startPath)
+        val nameParts = listOf(startPath) + chain
+        return Pair(chain.lastOrNull() ?: startPath, nameParts.joinToString(".") { it.fileName.toString() })
     }
 
     private fun createNode(itemData: FileTreeItem): TreeItem<FileTreeItem> {
@@ -284,17 +364,14 @@ class FileTreeViewModel {
         
         addExpansionListener(treeItem, itemData.path)
 
-        if (itemData.path.isDirectory()) {
+        if (itemData.isDirectory) {
             treeItem.children.add(TreeItem()) // Fake item for expandability
 
             treeItem.expandedProperty().addListener { _, _, isExpanded ->
                 if (isExpanded && treeItem.children.firstOrNull()?.value == null) {
                     scope.launch {
                         val children = loadChildren(itemData.path)
-                        Platform.runLater {
-                            treeItem.children.setAll(children)
-                            restoreExpandedPaths(treeItem) // Restore children state
-                        }
+                        Platform.runLater { applyChildren(treeItem, children) }
                     }
                 }
             }
@@ -314,40 +391,4 @@ class FileTreeViewModel {
             WorkspaceManager.updateExpandedPaths(expandedPaths)
         }
     }
-
-    //TODO: Move to utils
-    private val naturalOrderComparator = Comparator<String> { a, b ->
-        var i = 0
-        var j = 0
-
-        while (i < a.length && j < b.length) {
-            val ca = a[i]
-            val cb = b[j]
-
-            if (ca.isDigit() && cb.isDigit()) {
-                var na = StringBuilder()
-                var nb = StringBuilder()
-
-                while (i < a.length && a[i].isDigit()) {
-                    na.append(a[i])
-                    i++
-                }
-                while (j < b.length && b[j].isDigit()) {
-                    nb.append(b[j])
-                    j++
-                }
-
-                val lenDiff = na.length - nb.length
-                val diff = if (lenDiff != 0 ) lenDiff else na.toString().compareTo(nb.toString())
-                if (diff != 0) return@Comparator diff
-            } else {
-                val diff = ca.lowercaseChar() - cb.lowercaseChar()
-                if (diff != 0) return@Comparator diff
-                i++
-                j++
-            }
-        }
-
-        a.length - b.length
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package io.github.frostzie.nodex.modules.main
+
+import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.events.OpenFile
+import io.github.frostzie.nodex.events.OpenGoToFile
+import io.github.frostzie.nodex.project.WorkspaceManager
+import io.github.frostzie.nodex.services.WorkspacePathIndex
+import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
+import javafx.beans.property.SimpleBooleanProperty
+import javafx.beans.property.SimpleStringProperty
+import javafx.collections.FXCollections
+import javafx.collections.ObservableList
+
+/**
+ * ViewModel for the go to file popup, ranking the paths of the whole workspace again on every change of [query].
+ * Recently opened files come first for an empty query and rank higher otherwise.
+ */
+class GoToFileViewModel {
+    companion object {
+        private const val MAX_RESULTS = 50
+    }
+
+    val isVisible = SimpleBooleanProperty(false)
+    val query = SimpleStringProperty("")
+    val results: ObservableList<WorkspacePathIndex.Match> = FXCollections.observableArrayList()
+
+    init {
+        EventBus.register(this)
+        query.addListener { _, _, _ -> update() }
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onOpenGoToFile(event: OpenGoToFile) {
+        if (WorkspaceManager.workspace.projects.isEmpty()) return
+        query.set("")
+        update()
+        isVisible.set(true)
+    }
+
+    fun open(match: WorkspacePathIndex.Match) {
+        hide()
+        EventBus.post(OpenFile(match.entry.path))
+    }
+
+    fun hide() {
+        isVisible.set(false)
+    }
+
+    private fun update() {
+        val recent = WorkspaceManager.getCurrentState().recentFiles
+        results.setAll(WorkspacePathIndex.search(query.get() ?: "", MAX_RESULTS, recent))
+    }
+
+    fun cleanup() {
+        EventBus.unregister(this)
+    }
+}
@@ -0,0 +1,146 @@
+package io.github.frostzie.nodex.modules.main
+
+import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.events.OpenFile
+import io.github.frostzie.nodex.events.ShowSearchResults
+import io.github.frostzie.nodex.events.ToggleSearchPanel
+import io.github.frostzie.nodex.features.editor.find.FindQuery
+import io.github.frostzie.nodex.project.WorkspaceManager
+import io.github.frostzie.nodex.services.FindInFilesService
+import io.github.frostzie.nodex.services.SearchIndexService
+import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
+import io.github.frostzie.nodex.settings.categories.MainConfig
+import io.github.frostzie.nodex.utils.LoggerProvider
+import javafx.application.Platform
+import javafx.beans.property.SimpleBooleanProperty
+import javafx.beans.property.SimpleStringProperty
+import javafx.collections.FXCollections
+import javafx.collections.ObservableList
+import java.nio.file.Path
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.regex.PatternSyntaxException
+
+/**
+ * ViewModel for the find in files panel, searching every project of the workspace.
+ * Results arrive from the search threads and are added to [results] in batches, at most once per pulse.
+ */
+class SearchViewModel {
+    private val logger = LoggerProvider.getLogger("SearchViewModel")
+
+    val isVisible = SimpleBooleanProperty(false)
+    val isSearching = SimpleBooleanProperty(false)
+    val status = SimpleStringProperty("")
+    val results: ObservableList<FindInFilesService.FileResult> = FXCollections.observableArrayList()
+    // Shown while the search index debug option is on
+    val indexStats = SimpleStringProperty("")
+
+    private var search: FindInFilesService.Search? = null
+    // Each result tagged with the search it came from, as threads of a cancelled search can still deliver one
+    private val arrived = ConcurrentLinkedQueue<Pair<Int, FindInFilesService.FileResult>>()
+    private var generation = 0
+    private val flushScheduled = AtomicBoolean(false)
+
+    init {
+        EventBus.register(this)
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onToggleSearchPanel(event: ToggleSearchPanel) {
+        isVisible.set(!isVisible.get())
+        if (isVisible.get()) updateIndexStats()
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onShowSearchResults(event: ShowSearchResults) {
+        cancel()
+        results.setAll(event.results)
+        status.set(event.status)
+        isVisible.set(true)
+    }
+
+    /**
+     * Starts a new search, cancelling the running one. An empty query only clears the results.
+     */
+    fun search(query: FindQuery) {
+        cancel()
+        results.clear()
+        status.set("")
+        if (query.text.isEmpty()) return
+
+        val searchGeneration = ++generation
+        val roots = WorkspaceManager.workspace.projects.flatMap { listOf(it.path) + it.additionalPaths }
+        val started = try {
+            FindInFilesService.search(roots, query, MainConfig.findInFilesMaxFileSizeKb.get() * 1024L) { result ->
+                arrived.add(searchGeneration to result)
+                if (flushScheduled.compareAndSet(false, true)) {
+                    Platform.runLater { flush() }
+                }
+            }
+        } catch (e: PatternSyntaxException) {
+            status.set(e.description)
+            return
+        }
+        search = started
+        isSearching.set(true)
+        status.set("Searching...")
+
+        started.completion.whenComplete { summary, error ->
+            Platform.runLater {
+                if (search !== started) return@runLater
+                flush()
+                search = null
+                isSearching.set(false)
+                when {
+                    error is CancellationException -> status.set("Cancelled")
+                    error != null -> {
+                        logger.error("Find in files failed", error)
+                        status.set("Search failed")
+                    }
+                    else -> {
+                        val skipped = if (summary.skippedFiles > 0) ", ${summary.skippedFiles} files skipped" else ""
+                        status.set("${summary.matches} results in ${summary.matchedFiles} of ${summary.searchedFiles} files$skipped")
+                    }
+                }
+                updateIndexStats()
+            }
+        }
+    }
+
+    fun cancel() {
+        val running = search ?: return
+        search = null
+        generation++
+        running.cancel()
+        isSearching.set(false)
+        status.set("Cancelled")
+    }
+
+    private fun flush() {
+        flushScheduled.set(false)
+        val batch = generateSequence { arrived.poll() }.filter { it.first == generation }.map { it.second }.toList()
+        if (batch.isNotEmpty()) results.addAll(batch)
+    }
+
+    fun updateIndexStats() {
+        val stats = SearchIndexService.stats()
+        indexStats.set(
+            if (stats.building > 0) {
+                "Index: building ${stats.building} of ${stats.indexes}"
+            } else {
+                "Index: ${stats.files} files, ${stats.trigrams} trigrams, ${stats.diskBytes / 1024} KB, built in ${stats.buildMillis} ms. " +
+                    "Last query ${"%.2f".format(stats.lastQueryMicros / 1000.0)} ms, ${stats.lastCandidates} candidates"
+            }
+        )
+    }
+
+    fun open(path: Path, match: FindInFilesService.Match) {
+        EventBus.post(OpenFile(path, match.line, match.column, match.length))
+    }
+
+    fun cleanup() {
+        cancel()
+        EventBus.unregister(this)
+    }
+}
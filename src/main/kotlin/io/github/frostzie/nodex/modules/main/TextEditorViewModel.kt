@@ -1,26 +1,42 @@
 package io.github.frostzie.nodex.modules.main
 
 import io.github.frostzie.nodex.events.*
+import io.github.frostzie.nodex.features.editor.autosave.AutosaveService
+import io.github.frostzie.nodex.features.editor.document.DocumentListener
+import io.github.frostzie.nodex.features.editor.document.PieceTableDocument
+import io.github.frostzie.nodex.features.editor.document.TextDiff
+import io.github.frostzie.nodex.features.editor.document.TextMerge
+import io.github.frostzie.nodex.features.editor.hibernation.TabHibernationManager
+import io.github.frostzie.nodex.features.editor.hibernation.TextSnapshot
+import io.github.frostzie.nodex.features.editor.journal.EditJournal
+import io.github.frostzie.nodex.features.editor.largefile.MappedTextFile
 import io.github.frostzie.nodex.modules.bars.BottomBarModule
+import io.github.frostzie.nodex.project.symbols.SymbolLocation
 import io.github.frostzie.nodex.project.WorkspaceManager
 import io.github.frostzie.nodex.services.FileService
+import io.github.frostzie.nodex.services.FindInFilesService
+import io.github.frostzie.nodex.services.SaveService
+import io.github.frostzie.nodex.services.SymbolIndexService
+import io.github.frostzie.nodex.settings.categories.MainConfig
 import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
 import io.github.frostzie.nodex.utils.LoggerProvider
 import javafx.application.Platform
 import javafx.beans.InvalidationListener
 import javafx.beans.property.BooleanProperty
 import javafx.beans.property.IntegerProperty
+import javafx.beans.property.ObjectProperty
 import javafx.beans.property.SimpleBooleanProperty
 import javafx.beans.property.SimpleIntegerProperty
 import javafx.beans.property.SimpleObjectProperty
 import javafx.collections.FXCollections
 import javafx.collections.ObservableList
 import javafx.beans.value.ChangeListener
-import javafx.beans.property.SimpleStringProperty
-import javafx.beans.property.StringProperty
 import java.nio.file.Files
 import java.nio.file.Path
 import java.util.UUID
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 /**
  * ViewModel for the text editor that manages multiple tabs.
@@ -30,11 +46,18 @@ class TextEditorViewModel {
     private val logger = LoggerProvider.getLogger("TextEditorViewModel")
 
     enum class EditorAction {
-        UNDO, REDO, CUT, COPY, PASTE, SELECT_ALL
+        UNDO, REDO, CUT, COPY, PASTE, SELECT_ALL, FIND, GO_TO_DEFINITION, FIND_USAGES
     }
 
     val currentAction = SimpleObjectProperty<EditorAction?>(null)
 
+    /**
+     * A position to select in a tab, e.g. a search result. The view applies it once the tab's editor exists.
+     */
+    class Navigation(val tabId: String, val line: Int, val column: Int, val length: Int)
+
+    val navigation = SimpleObjectProperty<Navigation?>(null)
+
     /**
      * Data class representing a single editor tab
      */
@@ -42,10 +65,19 @@ class TextEditorViewModel {
         val id: String = UUID.randomUUID().toString(),
         val filePath: Path,
         val displayName: String,
-        val content: StringProperty = SimpleStringProperty(""),
+        // The tab's text, the CodeArea applies and reports edits through it rather than copying the full text
+        val document: PieceTableDocument = PieceTableDocument.fromFileText(""),
+        // Mirrors document.isModified, so undoing back to the saved text clears it again
         val isDirty: BooleanProperty = SimpleBooleanProperty(false),
+        // Set while the file is shown read-only in large-file mode, content stays empty until loaded fully
+        val largeFile: ObjectProperty<MappedTextFile?> = SimpleObjectProperty(null),
+        // False for tabs restored from the session until first activated and for hibernated tabs, see TabHibernationManager
+        val isLoaded: BooleanProperty = SimpleBooleanProperty(true),
+        // Unsaved text of a hibernated tab, restored into the document when it is loaded again
+        var snapshot: TextSnapshot? = null,
         // Listeners to be managed for cleanup
-        var isDirtyListener: ChangeListener<Boolean>? = null
+        var isDirtyListener: ChangeListener<Boolean>? = null,
+        var documentListener: DocumentListener? = null
     )
 
     // Observable list of all open tabs
@@ -60,6 +92,36 @@ class TextEditorViewModel {
 
     private var isRestoringSession = false
 
+    private val hibernation = TabHibernationManager()
+
+    private val journal = EditJournal()
+
+    private val autosave = AutosaveService(
+        save = { tabId -> tabs.find { it.id == tabId && it.isDirty.get() }?.let { saveFile(it) } },
+        hasConflicts = { tabId ->
+            // A hibernated tab's text is in its snapshot
+            tabs.find { it.id == tabId }
+                ?.let { TextMerge.hasConflictMarkers(it.snapshot?.text() ?: it.document.getText()) } ?: false
+        }
+    )
+
+    // File reads run off the FX thread, each on its own virtual thread
+    private val readExecutor = Executors.newVirtualThreadPerTaskExecutor()
+
+    // Reads started while restoring the session, picked up when the tab is activated, by tab id
+    private val prefetchedReads = mutableMapOf<String, CompletableFuture<FileContent>>()
+
+    // Ids of tabs whose file is being read for activation
+    private val loadingTabs = mutableSetOf<String>()
+
+    /**
+     * A tab's file as read in the background.
+     */
+    private sealed interface FileContent {
+        class Text(val text: String, val recovery: EditJournal.Recovery?) : FileContent
+        class Mapped(val file: MappedTextFile) : FileContent
+    }
+
     init {
         EventBus.register(this)
         
@@ -69,6 +131,10 @@ class TextEditorViewModel {
         })
         
         activeTab.addListener { _, _, newTab ->
+             if (newTab != null) {
+                 hibernation.touch(newTab)
+                 hibernation.enforceBudget(tabs, newTab)
+             }
              persistState()
              EventBus.post(ActiveTabChangedEvent(newTab?.filePath))
         }
@@ -111,16 +177,29 @@ class TextEditorViewModel {
             // Open new files
             savedFiles.forEach { path ->
                  if (path !in currentPaths && Files.exists(path)) {
-                     createNewTab(path)
+                     // Only the tab entry is created, the file is read when the tab is first activated
+                     createNewTab(path, lazy = true)
                  }
             }
             
-            // Restore active tab
-            if (lastActive != null) {
-                val tab = tabs.find { it.filePath == lastActive }
-                if (tab != null) {
-                    activeTab.set(tab)
+            // Read the restored files in parallel ahead of their activation
+            tabs.filter { !it.isLoaded.get() && it.snapshot == null && it.id !in prefetchedReads && it.id !in loadingTabs }
+                .forEach { tab ->
+                    val read = readFileAsync(tab.filePath)
+                    prefetchedReads[tab.id] = read
+                    // Tabs with unsaved edits in the journal are loaded right away, so they show up as modified
+                    read.thenAccept { content ->
+                        if ((content as? FileContent.Text)?.recovery != null) {
+                            Platform.runLater { tabs.find { it.id == tab.id }?.let { loadTab(it) } }
+                        }
+                    }
                 }
+
+            // Restore active tab
+            // Restored tabs are not activated as they are created, so fall back to the last one
+            val tab = tabs.find { it.filePath == lastActive } ?: activeTab.get() ?: tabs.lastOrNull()
+            if (tab != null) {
+                activeTab.set(tab)
             }
         } finally {
             isRestoringSession = false
@@ -150,11 +229,15 @@ class TextEditorViewModel {
             if (existingTab != null) {
                 logger.info("File already open, switching to tab: ${event.path.fileName}")
                 activeTab.set(existingTab)
-                return@runLater
+            } else {
+                logger.debug("Opening new file in tab: {}", event.path.fileName)
+                createNewTab(event.path)
             }
 
-            logger.debug("Opening new file in tab: {}", event.path.fileName)
-            createNewTab(event.path)
+            if (event.line >= 0) {
+                val tab = tabs.find { it.filePath == event.path } ?: return@runLater
+                navigation.set(Navigation(tab.id, event.line, event.column, event.length))
+            }
         }
     }
 
@@ -164,7 +247,8 @@ class TextEditorViewModel {
     @SubscribeEvent @Suppress("unused")
     fun onSaveAll(event: SaveAllFiles) {
         logger.debug("Saving all modified files...")
-        tabs.filter { it.isDirty.get() }.forEach { saveFile(it) }
+        // Queued at once, SaveService writes different files concurrently
+        tabs.filter { it.isDirty.get() && canSaveUnasked(it) }.forEach { saveFile(it) }
     }
 
     // Currently only used for while editing Theme, but overall file saving should move out of this
@@ -173,7 +257,7 @@ class TextEditorViewModel {
     fun onSaveFile(event: SaveFileEvent) {
         Platform.runLater {
             val tab = tabs.find { it.filePath == event.path }
-            if (tab != null) {
+            if (tab != null && canSaveUnasked(tab)) {
                 saveFile(tab)
             }
         }
@@ -209,19 +293,125 @@ class TextEditorViewModel {
         currentAction.set(EditorAction.SELECT_ALL)
     }
 
+    @SubscribeEvent @Suppress("unused")
+    fun onEditorFind(event: EditorFind) {
+        currentAction.set(EditorAction.FIND)
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onEditorGoToDefinition(event: EditorGoToDefinition) {
+        currentAction.set(EditorAction.GO_TO_DEFINITION)
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onEditorFindUsages(event: EditorFindUsages) {
+        currentAction.set(EditorAction.FIND_USAGES)
+    }
+
+    /**
+     * Opens the definition of the symbol at a 0 based [line] and [column] of [tab], whose line reads [lineText].
+     * A symbol defined in several places lists them in the search panel instead.
+     */
+    fun goToDefinition(tab: TabData, line: Int, column: Int, lineText: String) {
+        val symbol = SymbolIndexService.symbolAt(tab.filePath, line, column, lineText) ?: return
+        val definitions = SymbolIndexService.definitions(symbol)
+        when (definitions.size) {
+            0 -> EventBus.post(ShowSearchResults("No definition of ${symbol.displayName} in the workspace", emptyList()))
+            1 -> definitions.first().let { EventBus.post(OpenFile(it.path, it.line, it.column, it.length)) }
+            else -> EventBus.post(ShowSearchResults("${definitions.size} definitions of ${symbol.displayName}", toResults(definitions)))
+        }
+    }
+
+    /**
+     * Lists every reference to the symbol at a 0 based [line] and [column] of [tab] in the search panel.
+     */
+    fun findUsages(tab: TabData, line: Int, column: Int, lineText: String) {
+        val symbol = SymbolIndexService.symbolAt(tab.filePath, line, column, lineText) ?: return
+        val references = SymbolIndexService.references(symbol)
+        EventBus.post(ShowSearchResults("${references.size} usages of ${symbol.displayName}", toResults(references)))
+    }
+
+    private fun toResults(locations: List<SymbolLocation>): List<FindInFilesService.FileResult> {
+        return locations.groupBy { it.path }.toSortedMap().map { (path, inFile) ->
+            val matches = inFile.sortedWith(compareBy({ it.line }, { it.column }))
+                .map { FindInFilesService.Match(it.line, it.column, it.length, it.lineText) }
+            FindInFilesService.FileResult(path, matches, false)
+        }
+    }
+
     @SubscribeEvent @Suppress("unused")
     fun onFileModified(event: FileModified) {
         Platform.runLater {
             val tab = tabs.find { it.filePath == event.path } ?: return@runLater
-            // Only reload if not dirty to avoid overwriting user changes (Maybe add de-sync notification)
-            if (!tab.isDirty.get()) {
-                try {
-                    val newContent = FileService.readText(event.path)
-                    tab.content.set(newContent)
-                    // Reset dirty state since this is a sync with disk
-                    tab.isDirty.set(false)
-                } catch (e: Exception) {
-                    logger.error("Failed to reload modified file: ${event.path}", e)
+            // Not read yet, it picks up the new content when first activated
+            if (!tab.isLoaded.get()) {
+                prefetchedReads.remove(tab.id)?.let { discard(it) }
+                return@runLater
+            }
+            if (tab.largeFile.get() != null) {
+                // Re-map so the read-only view shows the new content
+                readInBackground({ MappedTextFile.open(event.path) }) { remapped, error ->
+                    val mapped = tab.largeFile.get()
+                    if (error != null) {
+                        logger.error("Failed to re-map modified large file: ${event.path}", error)
+                    } else if (mapped == null || tabs.none { it.id == tab.id }) {
+                        remapped?.close()
+                    } else {
+                        tab.largeFile.set(remapped)
+                        mapped.close()
+                    }
+                }
+                return@runLater
+            }
+            reloadFromDisk(tab)
+        }
+    }
+
+    private class Reload(val fileText: String, val hunks: List<TextDiff.Hunk>, val conflicts: Int)
+
+    /**
+     * Brings a loaded tab up to date with its file after an external change. The diff is computed in the
+     * background and only the changed ranges are replaced, so the caret, scroll position and undo history stay.
+     * Unsaved edits are merged with the change on disk, regions changed on both sides get conflict markers.
+     */
+    private fun reloadFromDisk(tab: TabData) {
+        val document = tab.document
+        val version = document.version
+        val current = document.getText()
+        // The saved text is the common base of both sides, it is not known after hibernating the tab
+        val base = if (tab.isDirty.get()) {
+            document.savedText() ?: run {
+                logger.warn("Not reloading ${tab.displayName}, its unsaved changes cannot be merged with the file")
+                return
+            }
+        } else null
+
+        readInBackground({
+            val fileText = FileService.readText(tab.filePath)
+            val theirs = PieceTableDocument.normalize(fileText)
+            val merge = base?.let { TextMerge.merge(it, current, theirs) }
+            Reload(fileText, TextDiff.diff(current, merge?.text ?: theirs), merge?.conflicts ?: 0)
+        }) { reload, error ->
+            val currentTab = tabs.find { it.id == tab.id }
+            when {
+                error != null -> logger.error("Failed to reload modified file: ${tab.filePath}", error)
+                reload == null || currentTab == null || !currentTab.isLoaded.get() || currentTab.largeFile.get() != null -> {}
+                // Edited while the diff was computed, so the hunks no longer apply
+                document.version != version -> reloadFromDisk(currentTab)
+                // Reloading counts as saved, so the tab stays clean
+                base == null -> document.reload(reload.fileText, reload.hunks)
+                else -> {
+                    document.rebase(reload.fileText, reload.hunks)
+                    currentTab.isDirty.set(document.isModified)
+                    // The journal's base is the old saved text, start it over from the file
+                    journal.saved(currentTab)
+                    if (reload.conflicts > 0) {
+                        // Leave resolving the conflicts to the user instead of autosaving the markers
+                        autosave.hold(currentTab.id)
+                        logger.warn("Merged external change into ${currentTab.displayName} with ${reload.conflicts} conflicts")
+                    } else {
+                        logger.info("Merged external change into ${currentTab.displayName}")
+                    }
                 }
             }
         }
@@ -243,16 +433,19 @@ class TextEditorViewModel {
 
             // Detach old listeners
             oldTab.isDirtyListener?.let { oldTab.isDirty.removeListener(it) }
+            oldTab.documentListener?.let { oldTab.document.removeListener(it) }
 
             // Create new TabData with an updated path but same CodeArea/ID
             val newTab = oldTab.copy(
                 filePath = event.newPath,
                 displayName = event.newPath.fileName.toString(),
-                isDirtyListener = null
+                isDirtyListener = null,
+                documentListener = null
             )
 
             // Setup listeners on new tab data
             setupTabListeners(newTab)
+            journal.moved(newTab, event.oldPath)
 
             // Update dirtyFiles set if it was dirty
             if (oldTab.isDirty.get()) {
@@ -271,23 +464,16 @@ class TextEditorViewModel {
 
     /**
      * Creates a new tab for the given file path
+     *
+     * @param lazy Only creates the tab entry without reading the file or activating it, see [loadTab].
      */
-    private fun createNewTab(filePath: Path) {
+    private fun createNewTab(filePath: Path, lazy: Boolean = false) {
         try {
-            // Safety Guard: Never open a directory as a tab
-            if (FileService.isDirectory(filePath)) {
-                logger.warn("Attempted to open a directory as a tab: $filePath")
-                return
-            }
-
-            // Read file content
-            val contentText = FileService.readText(filePath)
-            logger.debug("Read file content: {} ({} characters)", filePath.fileName, contentText.length)
-
+            // The file is read in the background, the view shows a placeholder until it arrives
             val tabData = TabData(
                 filePath = filePath,
                 displayName = filePath.fileName.toString(),
-                content = SimpleStringProperty(contentText)
+                isLoaded = SimpleBooleanProperty(false)
             )
 
             setupTabListeners(tabData)
@@ -303,7 +489,10 @@ class TextEditorViewModel {
 
             tabs.add(index.coerceIn(0, tabs.size), tabData)
 
-            activeTab.set(tabData)
+            if (!lazy) {
+                loadTab(tabData)
+                activeTab.set(tabData)
+            }
 
             logger.debug("Tab created for file: {}", filePath.fileName)
 
@@ -312,6 +501,86 @@ class TextEditorViewModel {
         }
     }
 
+    /**
+     * Loads the content of a tab that is not loaded yet, called when it is opened or activated.
+     * A hibernated tab is restored right away, otherwise the file is read in the background and the tab is closed
+     * if that fails.
+     */
+    fun loadTab(tabData: TabData) {
+        if (tabData.isLoaded.get() || tabData.id in loadingTabs) return
+
+        if (hibernation.restore(tabData)) {
+            tabData.isDirty.set(tabData.document.isModified)
+            finishLoading(tabData)
+            return
+        }
+
+        loadingTabs.add(tabData.id)
+        val read = prefetchedReads.remove(tabData.id) ?: readFileAsync(tabData.filePath)
+        read.whenComplete { content, error ->
+            Platform.runLater {
+                loadingTabs.remove(tabData.id)
+                // Looked up by id, the tab may have been closed or replaced by a move meanwhile
+                val tab = tabs.find { it.id == tabData.id }
+                if (tab == null || tab.isLoaded.get()) {
+                    (content as? FileContent.Mapped)?.file?.close()
+                    return@runLater
+                }
+                if (error != null) {
+                    logger.error("Failed to open file: ${tab.filePath.fileName}", error.cause ?: error)
+                    closeTab(tab, save = false)
+                    return@runLater
+                }
+                when (content) {
+                    is FileContent.Mapped -> {
+                        logger.info("Opening large file read-only: ${tab.filePath.fileName}")
+                        tab.largeFile.set(content.file)
+                    }
+                    is FileContent.Text -> {
+                        logger.debug("Read file content: {} ({} characters)", tab.filePath.fileName, content.text.length)
+                        // Loading counts as saved, so the tab starts clean
+                        tab.document.load(content.text)
+                        if (content.recovery != null && journal.recover(tab, content.recovery)) {
+                            tab.isDirty.set(tab.document.isModified)
+                        }
+                    }
+                }
+                finishLoading(tab)
+            }
+        }
+    }
+
+    private fun finishLoading(tabData: TabData) {
+        tabData.isLoaded.set(true)
+        hibernation.enforceBudget(tabs, activeTab.get())
+    }
+
+    private fun readFileAsync(filePath: Path): CompletableFuture<FileContent> {
+        val largeFileBytes = MainConfig.largeFileModeThresholdMb.get() * 1024L * 1024L
+        return CompletableFuture.supplyAsync({
+            // Safety Guard: Never open a directory as a tab
+            require(!FileService.isDirectory(filePath)) { "Attempted to open a directory as a tab: $filePath" }
+            if (Files.size(filePath) > largeFileBytes) {
+                FileContent.Mapped(MappedTextFile.open(filePath))
+            } else {
+                FileContent.Text(FileService.readText(filePath), EditJournal.read(filePath))
+            }
+        }, readExecutor)
+    }
+
+    private fun discard(read: CompletableFuture<FileContent>) {
+        read.thenAccept { (it as? FileContent.Mapped)?.file?.close() }
+    }
+
+    /**
+     * Runs [read] on a virtual thread and passes its result or failure to [onDone] on the FX thread.
+     */
+    private fun <T> readInBackground(read: () -> T, onDone: (T?, Throwable?) -> Unit) {
+        CompletableFuture.supplyAsync(read, readExecutor).whenComplete { result, error ->
+            Platform.runLater { onDone(result, error?.let { it.cause ?: it }) }
+        }
+    }
+
     private fun setupTabListeners(tabData: TabData) {
         tabData.isDirtyListener = ChangeListener { _, _, isDirty ->
             if (isDirty) {
@@ -320,6 +589,34 @@ class TextEditorViewModel {
                 WorkspaceManager.dirtyFiles.remove(tabData.filePath)
             }
         }.also { tabData.isDirty.addListener(it) }
+
+        tabData.documentListener = DocumentListener { edit ->
+            // While hibernated the document is empty, the tab keeps the state it had
+            if (tabData.isLoaded.get()) {
+                tabData.isDirty.set(tabData.document.isModified)
+                journal.record(tabData, edit)
+                if (tabData.isDirty.get()) autosave.onEdit(tabData.id)
+            }
+        }.also { tabData.document.addListener(it) }
+    }
+
+    /**
+     * Leaves large-file mode for a tab by reading the whole file into the editor.
+     */
+    fun loadFully(tabData: TabData) {
+        if (tabData.largeFile.get() == null) return
+        readInBackground({ FileService.readText(tabData.filePath) }) { text, error ->
+            // Still in large-file mode, it may have been closed or re-mapped meanwhile
+            val mapped = tabData.largeFile.get()
+            if (error != null) {
+                logger.error("Failed to load large file: ${tabData.displayName}", error)
+            } else if (text != null && mapped != null && tabs.any { it.id == tabData.id }) {
+                tabData.document.load(text)
+                tabData.largeFile.set(null)
+                mapped.close()
+                logger.info("Loaded large file fully: ${tabData.displayName}")
+            }
+        }
     }
 
     /**
@@ -337,13 +634,14 @@ class TextEditorViewModel {
     fun closeTab(tabData: TabData, persist: Boolean = true, save: Boolean = true) {
         logger.debug("Closing tab: ${tabData.displayName}")
 
-        if (save) {
-            // Auto-save before closing
-            try {
+        if (save && tabData.isDirty.get()) {
+            if (canSaveUnasked(tabData)) {
+                // Auto-save before closing, the content is taken now and written in the background
                 saveFile(tabData)
                 logger.debug("Auto-saved file before closing: ${tabData.displayName}")
-            } catch (e: Exception) {
-                logger.error("Failed to auto-save before closing: ${tabData.displayName}", e)
+            } else {
+                // Its journal is kept, so the edits come back when the file is opened again
+                logger.warn("Not saving ${tabData.displayName} on close, it has unresolved merge conflicts")
             }
         }
 
@@ -353,6 +651,15 @@ class TextEditorViewModel {
         // Remove listeners to prevent memory leaks
         tabData.isDirtyListener?.let { tabData.isDirty.removeListener(it) }
         tabData.isDirtyListener = null
+        tabData.documentListener?.let { tabData.document.removeListener(it) }
+        tabData.documentListener = null
+
+        tabData.largeFile.get()?.close()
+        hibernation.forget(tabData)
+        autosave.forget(tabData.id)
+        prefetchedReads.remove(tabData.id)?.let { discard(it) }
+        // A dirty tab closed with a save drops its journal once the save completed
+        if (!save) journal.discard(tabData)
 
         tabs.remove(tabData)
 
@@ -374,28 +681,54 @@ class TextEditorViewModel {
      */
     fun saveActiveTab() {
         val tab = activeTab.get() ?: return
+        // Saving on purpose writes whatever conflicts are left, so autosave may continue after it
+        autosave.release(tab.id)
         saveFile(tab)
         logger.info("Manually saved file: ${tab.displayName}")
     }
 
-    private fun saveFile(tabData: TabData) {
-        try {
-            // Safety guard: Never try to write content to a directory path
-            // This prevents crashes if a tab accidentally points to a directory
-            if (FileService.isDirectory(tabData.filePath)) {
-                logger.warn("Attempted to save to a directory path: ${tabData.filePath}. Aborting save!")
-                tabData.isDirty.set(false)
-                return
-            }
+    /**
+     * Whether the tab may be saved without the user saving it explicitly, which a tab with conflict markers left
+     * from merging an external change may not.
+     */
+    private fun canSaveUnasked(tabData: TabData): Boolean = autosave.canSave(tabData.id)
 
-            val content = tabData.content.get()
-            WorkspaceManager.ignoreWatcherPath(tabData.filePath)
-            FileService.writeText(tabData.filePath, content)
-            tabData.isDirty.set(false)
-            logger.debug("File saved: {} ({} characters)", tabData.filePath.fileName, content.length)
-        } catch (e: Exception) {
-            logger.error("Failed to save file: ${tabData.filePath.fileName}", e)
-            // TODO: Show error notification to user
+    /**
+     * Queues the tab's content with [SaveService], the tab is marked as saved once the write completes.
+     */
+    private fun saveFile(tabData: TabData): CompletableFuture<*>? {
+        // Read-only or not read yet, either way the content is not loaded and there is nothing to write
+        val snapshot = tabData.snapshot
+        if (tabData.largeFile.get() != null || !tabData.isLoaded.get() && snapshot == null) return null
+
+        // A hibernated tab is written from its snapshot
+        val content = snapshot?.text() ?: tabData.document.toFileText()
+        val state = tabData.document.captureState()
+        return SaveService.save(tabData.filePath, content).whenComplete { result, error ->
+            Platform.runLater {
+                if (result == SaveService.SaveResult.SUPERSEDED) {
+                    // A later save of this tab wrote newer content and marks it instead
+                } else if (error != null) {
+                    // The tab stays dirty, so the next save tries again
+                    logger.error("Failed to save file: ${tabData.filePath.fileName}", error.cause ?: error)
+                    // TODO: Show error notification to user
+                } else if (snapshot != null) {
+                    // Clean now if still hibernated, it is read from disk when activated
+                    if (tabData.snapshot === snapshot) {
+                        tabData.snapshot = null
+                        tabData.document.markSaved()
+                        tabData.isDirty.set(false)
+                        journal.discard(tabData)
+                    }
+                } else {
+                    // Typing during the write keeps the tab dirty
+                    tabData.document.markSaved(state)
+                    if (tabData.isLoaded.get()) {
+                        tabData.isDirty.set(tabData.document.isModified)
+                        journal.saved(tabData)
+                    }
+                }
+            }
         }
     }
 
@@ -403,18 +736,22 @@ class TextEditorViewModel {
      * Cleanup method to be called when the editor is closed
      */
     fun cleanup() {
-        // Auto-save all tabs before cleanup
-        tabs.forEach { tab ->
-            try {
-                saveFile(tab)
-                logger.debug("Auto-saved during cleanup: ${tab.displayName}")
-            } catch (e: Exception) {
-                logger.error("Failed to auto-save during cleanup: ${tab.displayName}", e)
-            }
+        // Auto-save all modified tabs before cleanup, waiting for the writes as the app may be closing.
+        // Tabs with unresolved conflicts keep only their journal.
+        val saves = tabs.filter { it.isDirty.get() && canSaveUnasked(it) }.mapNotNull { saveFile(it) }
+        try {
+            CompletableFuture.allOf(*saves.toTypedArray()).get(30, TimeUnit.SECONDS)
+            logger.debug("Auto-saved {} files during cleanup", saves.size)
+        } catch (e: Exception) {
+            logger.error("Failed to auto-save during cleanup", e)
         }
+        // Only now, as its holds decide which tabs were saved above
+        autosave.dispose()
 
         tabs.clear()
         activeTab.set(null)
+        readExecutor.shutdown()
+        journal.close()
         EventBus.unregister(this)
         logger.info("TextEditorViewModel cleaned up")
     }
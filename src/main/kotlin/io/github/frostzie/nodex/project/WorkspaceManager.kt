@@ -9,6 +9,7 @@ import io.github.frostzie.nodex.config.ConfigManager
 import io.github.frostzie.nodex.events.EventBus
 import io.github.frostzie.nodex.events.OpenProjectManagerEvent
 import io.github.frostzie.nodex.events.ResetWorkspaceEvent
+import io.github.frostzie.nodex.events.WindowFocusChanged
 import io.github.frostzie.nodex.events.WorkspaceUpdated
 import io.github.frostzie.nodex.project.metadata.DatapackParser
 import io.github.frostzie.nodex.project.state.ProjectState
@@ -240,7 +241,9 @@ object WorkspaceManager {
     private var currentProjectState = ProjectState()
 
     fun updateOpenFiles(files: Set<Path>, activeFile: Path?) {
-        currentProjectState = currentProjectState.copy(openFiles = files, activeFile = activeFile)
+        val recent = if (activeFile == null) currentProjectState.recentFiles
+            else (listOf(activeFile) + currentProjectState.recentFiles.filter { it != activeFile }).take(50)
+        currentProjectState = currentProjectState.copy(openFiles = files, activeFile = activeFile, recentFiles = recent)
         saveCurrentState()
     }
     
@@ -283,6 +286,7 @@ object WorkspaceManager {
     
     fun setWindowFocused(focused: Boolean) {
         watchers.values.forEach { it.setWindowFocused(focused) }
+        EventBus.post(WindowFocusChanged(focused))
     }
     
     fun ignoreWatcherPath(path: Path) {
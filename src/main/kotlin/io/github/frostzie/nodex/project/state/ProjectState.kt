@@ -8,5 +8,7 @@ import java.nio.file.Path
 data class ProjectState(
     val openFiles: Set<Path> = emptySet(),
     val activeFile: Path? = null,
-    val expandedPaths: Set<Path> = emptySet()
+    val expandedPaths: Set<Path> = emptySet(),
+    // Most recently active first
+    val recentFiles: List<Path> = emptyList()
 )
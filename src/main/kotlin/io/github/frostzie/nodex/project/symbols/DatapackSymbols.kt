@@ -0,0 +1,327 @@
+package io.github.frostzie.nodex.project.symbols
+
+import com.google.gson.JsonArray
+import com.google.gson.JsonElement
+import com.google.gson.JsonObject
+import com.google.gson.JsonParser
+import com.google.gson.JsonPrimitive
+
+/**
+ * A resource location of one [kind], or a scoreboard objective, which has no namespace.
+ *
+ * Kinds are named after the folder their files live in, e.g. `function`, `loot_table`, `tags/function`
+ * or `worldgen/biome`, plus [OBJECTIVE] and [STORAGE], which are only ever created by commands.
+ */
+data class Symbol(val kind: String, val id: String) {
+    companion object {
+        const val FUNCTION = "function"
+        const val ADVANCEMENT = "advancement"
+        const val PREDICATE = "predicate"
+        const val LOOT_TABLE = "loot_table"
+        const val ITEM_MODIFIER = "item_modifier"
+        const val RECIPE = "recipe"
+        const val OBJECTIVE = "objective"
+        const val STORAGE = "storage"
+        const val TAG_PREFIX = "tags/"
+    }
+
+    val displayName: String
+        get() = when {
+            kind.startsWith(TAG_PREFIX) -> "#$id (${kind.removePrefix(TAG_PREFIX)} tag)"
+            else -> "${kind.replace('_', ' ')} $id"
+        }
+}
+
+/**
+ * Where a [symbol] is defined or referenced, at a 0 based [line] and [column].
+ */
+class Occurrence(val symbol: Symbol, val line: Int, val column: Int, val length: Int)
+
+class FileSymbols(val definitions: List<Occurrence>, val references: List<Occurrence>)
+
+/**
+ * Reads the symbols a datapack file defines and references.
+ *
+ * Files under `data/<namespace>/<kind>/` define the resource their path names. Functions define scoreboard
+ * objectives and storages and reference most other kinds through their commands, JSON files reference
+ * functions, loot tables, predicates and the like through a handful of well known fields.
+ *
+ * This is a reading of the common command and file shapes rather than a full parser, so an unusual
+ * command can go unnoticed, but what is found is always at its exact position.
+ */
+object DatapackSymbols {
+
+    // Folder names of versions before 1.21, which used plurals
+    private val SINGULAR_FOLDERS = mapOf(
+        "functions" to "function",
+        "advancements" to "advancement",
+        "predicates" to "predicate",
+        "loot_tables" to "loot_table",
+        "item_modifiers" to "item_modifier",
+        "recipes" to "recipe",
+        "structures" to "structure",
+        "blocks" to "block",
+        "items" to "item",
+        "entity_types" to "entity_type",
+        "fluids" to "fluid",
+        "game_events" to "game_event"
+    )
+
+    private val RESOURCE_LOCATION = Regex("[a-z0-9_.-]+:[a-z0-9_./-]+")
+    private val PLAIN_RESOURCE_PATH = Regex("[a-z0-9_./-]+")
+    private val OBJECTIVE_NAME = Regex("[A-Za-z0-9_.+-]+")
+    private val SCORE_OPERATORS = setOf("<", "<=", "=", ">=", ">")
+
+    /**
+     * The symbol a file defines by its [path] below a `data` folder, as `<namespace>/<kind>/<name>.<extension>`.
+     */
+    fun definedBy(path: List<String>): Symbol? {
+        if (path.size < 3) return null
+        val namespace = path[0]
+        val folder = SINGULAR_FOLDERS[path[1]] ?: path[1]
+        val (kind, nameStart) = when (folder) {
+            "tags" -> {
+                if (path.size < 4) return null
+                // Tags of nested registries, e.g. tags/worldgen/biome
+                if (path[2] == "worldgen" && path.size >= 5) "tags/worldgen/${path[3]}" to 4
+                else "tags/${SINGULAR_FOLDERS[path[2]] ?: path[2]}" to 3
+            }
+            "worldgen" -> if (path.size >= 4) "worldgen/${path[2]}" to 3 else return null
+            else -> folder to 2
+        }
+        val file = path.last()
+        val extension = file.substringAfterLast('.', "")
+        val expected = if (kind == Symbol.FUNCTION) "mcfunction" else "json"
+        if (extension != expected) return null
+        val name = (path.subList(nameStart, path.size - 1) + file.substringBeforeLast('.')).joinToString("/")
+        return Symbol(kind, "$namespace:$name")
+    }
+
+    /**
+     * The symbols in the [text] of a file that defines [definedBy], or of any other datapack file if it is null.
+     * Definitions by path are placed at the start of the file.
+     */
+    fun read(definedBy: Symbol?, fileName: String, text: String): FileSymbols {
+        val definitions = ArrayList<Occurrence>()
+        val references = ArrayList<Occurrence>()
+        if (definedBy != null) definitions.add(Occurrence(definedBy, 0, 0, 0))
+        when {
+            fileName.endsWith(".mcfunction") -> {
+                text.lineSequence().forEachIndexed { line, lineText -> readCommand(lineText, line, definitions, references) }
+            }
+            fileName.endsWith(".json") -> readJson(definedBy, text, references)
+        }
+        return FileSymbols(definitions, references)
+    }
+
+    /**
+     * The symbols of one line of a function.
+     */
+    fun readCommand(text: String, line: Int, definitions: MutableList<Occurrence>, references: MutableList<Occurrence>) {
+        val tokens = tokenize(text)
+        if (tokens.isEmpty()) return
+
+        fun word(index: Int): String? = tokens.getOrNull(index)?.text
+
+        fun add(target: MutableList<Occurrence>, kind: String, index: Int, requireNamespace: Boolean = false) {
+            val token = tokens.getOrNull(index) ?: return
+            val symbol = resourceSymbol(kind, token.text, requireNamespace) ?: return
+            target.add(Occurrence(symbol, line, token.column, token.text.length))
+        }
+
+        fun addObjective(target: MutableList<Occurrence>, index: Int) {
+            val token = tokens.getOrNull(index) ?: return
+            if (!OBJECTIVE_NAME.matches(token.text)) return
+            target.add(Occurrence(Symbol(Symbol.OBJECTIVE, token.text), line, token.column, token.text.length))
+        }
+
+        fun firstNamespaced(from: Int): Int {
+            for (index in from until tokens.size) {
+                if (RESOURCE_LOCATION.matches(tokens[index].text)) return index
+            }
+            return -1
+        }
+
+        for ((i, token) in tokens.withIndex()) {
+            when (token.text) {
+                "function" -> add(references, Symbol.FUNCTION, i + 1)
+                "schedule" -> if (word(i + 1) == "clear") add(references, Symbol.FUNCTION, i + 2)
+                "predicate" -> add(references, Symbol.PREDICATE, i + 1)
+                "advancement" -> if (word(i + 3) in setOf("only", "from", "until", "through")) add(references, Symbol.ADVANCEMENT, i + 4)
+                // The loot command itself is followed by its target, only a second `loot` names a table
+                "loot" -> add(references, Symbol.LOOT_TABLE, i + 1, requireNamespace = true)
+                "item" -> if (word(i + 1) == "modify") add(references, Symbol.ITEM_MODIFIER, firstNamespaced(i + 2))
+                "recipe" -> if (word(i + 1) == "give" || word(i + 1) == "take") add(references, Symbol.RECIPE, firstNamespaced(i + 2))
+                "storage" -> {
+                    val writes = (word(i - 2) == "data" && (word(i - 1) == "modify" || word(i - 1) == "merge")) || word(i - 2) == "store"
+                    add(if (writes) definitions else references, Symbol.STORAGE, i + 1)
+                }
+                "scoreboard" -> when (word(i + 1)) {
+                    "objectives" -> when (word(i + 2)) {
+                        "add" -> addObjective(definitions, i + 3)
+                        "remove", "modify" -> addObjective(references, i + 3)
+                        "setdisplay" -> addObjective(references, i + 4)
+                    }
+                    "players" -> when (word(i + 2)) {
+                        "set", "add", "remove", "get", "reset", "enable" -> addObjective(references, i + 4)
+                        "display" -> addObjective(references, i + 5)
+                        "operation" -> {
+                            addObjective(references, i + 4)
+                            addObjective(references, i + 7)
+                        }
+                    }
+                }
+                "score" -> {
+                    addObjective(references, i + 2)
+                    // if score <target> <objective> <operator> <source> <objective>
+                    if (word(i + 3) in SCORE_OPERATORS) addObjective(references, i + 5)
+                }
+            }
+        }
+    }
+
+    /**
+     * The symbol of a resource location as written in a command, null if [text] is not one. `#` marks a tag.
+     */
+    private fun resourceSymbol(kind: String, text: String, requireNamespace: Boolean): Symbol? {
+        // Macro arguments are only known when the function runs
+        if ("$(" in text) return null
+        val isTag = text.startsWith("#")
+        val location = text.removePrefix("#")
+        val id = when {
+            RESOURCE_LOCATION.matches(location) -> location
+            !requireNamespace && PLAIN_RESOURCE_PATH.matches(location) -> "minecraft:$location"
+            else -> return null
+        }
+        return if (isTag) Symbol(Symbol.TAG_PREFIX + kind, id) else Symbol(kind, id)
+    }
+
+    private class Token(val text: String, val column: Int)
+
+    /**
+     * Splits a command into its words. Brackets and quotes are kept within a word, so an NBT compound,
+     * a JSON text component or a selector with arguments is a single word that is never mistaken for a command.
+     */
+    private fun tokenize(line: String): List<Token> {
+        var i = 0
+        while (i < line.length && line[i].isWhitespace()) i++
+        if (i >= line.length || line[i] == '#') return emptyList()
+        // Macro lines start with $
+        if (line[i] == '$') i++
+
+        val tokens = ArrayList<Token>()
+        while (i < line.length) {
+            if (line[i].isWhitespace()) {
+                i++
+                continue
+            }
+            val start = i
+            var depth = 0
+            var quote = 0.toChar()
+            while (i < line.length) {
+                val c = line[i]
+                when {
+                    quote != 0.toChar() -> when (c) {
+                        '\\' -> i++
+                        quote -> quote = 0.toChar()
+                    }
+                    c == '"' || c == '\'' -> quote = c
+                    c == '{' || c == '[' -> depth++
+                    c == '}' || c == ']' -> depth--
+                    c.isWhitespace() && depth <= 0 -> break
+                }
+                i++
+            }
+            tokens.add(Token(line.substring(start, minOf(i, line.length)), start))
+        }
+        return tokens
+    }
+
+    /**
+     * References in a JSON file. Positions are found by looking for each value after the previous one,
+     * as the parsed tree keeps the order of the file but not its positions.
+     */
+    private fun readJson(definedBy: Symbol?, text: String, references: MutableList<Occurrence>) {
+        val root = try {
+            JsonParser.parseString(text)
+        } catch (_: Exception) {
+            return
+        }
+        val lineStarts = lineStarts(text)
+        var searchFrom = 0
+
+        fun reference(kind: String, value: JsonElement?) {
+            if (value == null || !value.isJsonPrimitive || !value.asJsonPrimitive.isString) return
+            val raw = value.asString
+            val symbol = if (kind == Symbol.OBJECTIVE) {
+                if (OBJECTIVE_NAME.matches(raw)) Symbol(kind, raw) else null
+            } else {
+                resourceSymbol(kind, raw, requireNamespace = false)
+            } ?: return
+            val quoted = "\"$raw\""
+            // Fields of one object are not necessarily read in the order they are written
+            val found = text.indexOf(quoted, searchFrom).takeIf { it >= 0 } ?: text.indexOf(quoted)
+            if (found < 0) return
+            searchFrom = found + quoted.length
+            val line = lineStarts.binarySearch(found).let { if (it >= 0) it else -it - 2 }
+            references.add(Occurrence(symbol, line, found + 1 - lineStarts[line], raw.length))
+        }
+
+        val kind = definedBy?.kind
+        if (kind != null && kind.startsWith(Symbol.TAG_PREFIX) && root.isJsonObject) {
+            // Tags list members of their registry, or other tags of it with a leading #
+            val registry = kind.removePrefix(Symbol.TAG_PREFIX)
+            root.asJsonObject.getAsJsonArray("values")?.forEach { value ->
+                val id = if (value.isJsonObject) value.asJsonObject.get("id") else value
+                val isTag = id?.takeIf { it.isJsonPrimitive }?.asString?.startsWith("#") == true
+                if (isTag || registry == Symbol.FUNCTION) reference(registry, id)
+            }
+            return
+        }
+
+        fun visit(element: JsonElement) {
+            when {
+                element.isJsonObject -> {
+                    val json = element.asJsonObject
+                    readObject(kind, json, ::reference)
+                    json.entrySet().forEach { visit(it.value) }
+                }
+                element.isJsonArray -> element.asJsonArray.forEach { visit(it) }
+            }
+        }
+        visit(root)
+    }
+
+    private inline fun readObject(fileKind: String?, json: JsonObject, reference: (String, JsonElement?) -> Unit) {
+        val type = json.get("type").stringOrNull()?.removePrefix("minecraft:")
+        if (fileKind == Symbol.ADVANCEMENT) {
+            reference(Symbol.ADVANCEMENT, json.get("parent"))
+            json.getAsJsonObject("rewards")?.let { rewards ->
+                reference(Symbol.FUNCTION, rewards.get("function"))
+                (rewards.get("loot") as? JsonArray)?.forEach { reference(Symbol.LOOT_TABLE, it) }
+                (rewards.get("recipes") as? JsonArray)?.forEach { reference(Symbol.RECIPE, it) }
+            }
+        }
+        when {
+            json.get("condition").stringOrNull()?.removePrefix("minecraft:") == "reference" -> reference(Symbol.PREDICATE, json.get("name"))
+            json.get("function").stringOrNull()?.removePrefix("minecraft:") == "reference" -> reference(Symbol.ITEM_MODIFIER, json.get("name"))
+            type == "loot_table" -> reference(Symbol.LOOT_TABLE, json.get("value") ?: json.get("name"))
+            type == "score" -> reference(Symbol.OBJECTIVE, json.get("score"))
+            type == "storage" -> reference(Symbol.STORAGE, json.get("storage"))
+        }
+        if (json.get("condition").stringOrNull()?.removePrefix("minecraft:") == "entity_scores") {
+            json.getAsJsonObject("scores")?.keySet()?.forEach { reference(Symbol.OBJECTIVE, JsonPrimitive(it)) }
+        }
+    }
+
+    private fun JsonElement?.stringOrNull(): String? {
+        return if (this != null && isJsonPrimitive && asJsonPrimitive.isString) asString else null
+    }
+
+    private fun lineStarts(text: String): IntArray {
+        val starts = ArrayList<Int>()
+        starts.add(0)
+        text.forEachIndexed { index, c -> if (c == '\n') starts.add(index + 1) }
+        return starts.toIntArray()
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.frostzie.nodex.project.symbols
+
+import java.nio.file.Path
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * A [Symbol] at a position in a file, with the text of its line for display.
+ */
+class SymbolLocation(val path: Path, val line: Int, val column: Int, val length: Int, val lineText: String)
+
+/**
+ * Definitions and references of every symbol in a set of files, looked up by symbol in constant time.
+ *
+ * Each file's symbols are kept together, so updating a file replaces exactly what it contributed before.
+ * Safe to use from any thread.
+ */
+class SymbolIndex {
+    private class FileEntry(val definitions: List<Pair<Symbol, SymbolLocation>>, val references: List<Pair<Symbol, SymbolLocation>>)
+
+    private val lock = ReentrantReadWriteLock()
+    private val files = HashMap<Path, FileEntry>()
+    // Per symbol the files it occurs in, so updating a file only touches its own symbols
+    private val definitions = HashMap<Symbol, HashMap<Path, MutableList<SymbolLocation>>>()
+    private val references = HashMap<Symbol, HashMap<Path, MutableList<SymbolLocation>>>()
+    private val byId = HashMap<String, HashSet<Symbol>>()
+
+    val fileCount: Int
+        get() = lock.read { files.size }
+
+    val symbolCount: Int
+        get() = lock.read { definitions.size }
+
+    /**
+     * Replaces the symbols of [path] with [symbols], read from its [lines].
+     */
+    fun update(path: Path, symbols: FileSymbols, lines: List<String>) = lock.write {
+        remove(path)
+        fun locate(occurrence: Occurrence): Pair<Symbol, SymbolLocation> {
+            val lineText = lines.getOrElse(occurrence.line) { "" }.take(MAX_LINE_PREVIEW)
+            return occurrence.symbol to SymbolLocation(path, occurrence.line, occurrence.column, occurrence.length, lineText)
+        }
+        val entry = FileEntry(symbols.definitions.map(::locate), symbols.references.map(::locate))
+        files[path] = entry
+        entry.definitions.forEach { (symbol, location) -> add(definitions, symbol, location) }
+        entry.references.forEach { (symbol, location) -> add(references, symbol, location) }
+    }
+
+    private fun add(target: HashMap<Symbol, HashMap<Path, MutableList<SymbolLocation>>>, symbol: Symbol, location: SymbolLocation) {
+        target.getOrPut(symbol) { HashMap() }.getOrPut(location.path) { ArrayList() }.add(location)
+        byId.getOrPut(symbol.id) { HashSet() }.add(symbol)
+    }
+
+    fun remove(path: Path) = lock.write {
+        val entry = files.remove(path) ?: return@write
+        entry.definitions.forEach { (symbol, _) -> drop(definitions, symbol, path) }
+        entry.references.forEach { (symbol, _) -> drop(references, symbol, path) }
+    }
+
+    /**
+     * Removes [path] and every file below it.
+     */
+    fun removeUnder(path: Path) = lock.write {
+        files.keys.filter { it.startsWith(path) }.forEach { remove(it) }
+    }
+
+    private fun drop(target: HashMap<Symbol, HashMap<Path, MutableList<SymbolLocation>>>, symbol: Symbol, path: Path) {
+        val byPath = target[symbol] ?: return
+        byPath.remove(path)
+        if (byPath.isNotEmpty()) return
+        target.remove(symbol)
+        if (symbol !in definitions && symbol !in references) {
+            byId[symbol.id]?.let { symbols ->
+                symbols.remove(symbol)
+                if (symbols.isEmpty()) byId.remove(symbol.id)
+            }
+        }
+    }
+
+    fun definitions(symbol: Symbol): List<SymbolLocation> = lock.read {
+        definitions[symbol]?.values?.flatten() ?: emptyList()
+    }
+
+    fun references(symbol: Symbol): List<SymbolLocation> = lock.read {
+        references[symbol]?.values?.flatten() ?: emptyList()
+    }
+
+    fun isDefined(symbol: Symbol): Boolean = lock.read { symbol in definitions }
+
+    /**
+     * Every symbol with the [id], of any kind.
+     */
+    fun symbols(id: String): Set<Symbol> = lock.read { byId[id]?.toSet() ?: emptySet() }
+
+    /**
+     * The symbols [path] defines, and the references it makes, as of its last update.
+     */
+    fun definedIn(path: Path): List<Pair<Symbol, SymbolLocation>> = lock.read { files[path]?.definitions ?: emptyList() }
+
+    fun referencedIn(path: Path): List<Pair<Symbol, SymbolLocation>> = lock.read { files[path]?.references ?: emptyList() }
+
+    companion object {
+        private const val MAX_LINE_PREVIEW = 200
+    }
+}
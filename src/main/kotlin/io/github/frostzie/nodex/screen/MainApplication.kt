@@ -1,6 +1,7 @@
 package io.github.frostzie.nodex.screen
 
 import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.events.OpenGoToFile
 import io.github.frostzie.nodex.events.WorkspaceUpdated
 import io.github.frostzie.nodex.handlers.bars.BottomBarHandler
 import io.github.frostzie.nodex.handlers.bars.LeftBarHandler
@@ -19,10 +20,15 @@ import io.github.frostzie.nodex.screen.elements.bars.BottomBarView
 import io.github.frostzie.nodex.screen.elements.bars.LeftBarView
 import io.github.frostzie.nodex.screen.elements.bars.top.TopBarView
 import io.github.frostzie.nodex.screen.elements.main.FileTreeView
+import io.github.frostzie.nodex.screen.elements.main.GoToFileView
+import io.github.frostzie.nodex.screen.elements.main.SearchView
 import io.github.frostzie.nodex.screen.elements.main.TextEditorView
 import io.github.frostzie.nodex.screen.elements.popup.settings.SettingsView
 import io.github.frostzie.nodex.screen.elements.project.ProjectManagerView
 import io.github.frostzie.nodex.project.WorkspaceManager
+import io.github.frostzie.nodex.services.SearchIndexService
+import io.github.frostzie.nodex.services.SymbolIndexService
+import io.github.frostzie.nodex.services.WorkspacePathIndex
 import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
 import io.github.frostzie.nodex.utils.JavaFXInitializer
 import io.github.frostzie.nodex.utils.LoggerProvider
@@ -33,8 +39,12 @@ import io.github.frostzie.nodex.utils.CSSManager
 import io.github.frostzie.nodex.utils.WindowDrag
 import io.github.frostzie.nodex.utils.UIConstants
 import javafx.application.Platform
+import javafx.geometry.Insets
+import javafx.geometry.Pos
 import javafx.scene.Scene
 import javafx.scene.image.Image
+import javafx.scene.input.KeyCode
+import javafx.scene.input.KeyEvent
 import javafx.scene.layout.BorderPane
 import javafx.scene.layout.HBox
 import javafx.scene.layout.Priority
@@ -42,6 +52,8 @@ import javafx.scene.control.SplitPane
 import javafx.scene.layout.StackPane
 import javafx.stage.Stage
 import javafx.stage.StageStyle
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 import io.github.frostzie.nodex.settings.categories.ThemeConfig
 import io.github.frostzie.nodex.utils.ThemeUtils
 import io.github.frostzie.nodex.config.LayoutManager
@@ -57,6 +69,8 @@ class MainApplication {
         private var topBarView: TopBarView? = null
         private var leftBarView: LeftBarView? = null
         private var fileTreeView: FileTreeView? = null
+        private var searchView: SearchView? = null
+        private var goToFileView: GoToFileView? = null
         private var bottomBarView: BottomBarView? = null
         private var settingsView: SettingsView? = null
         private var textEditorView: TextEditorView? = null
@@ -143,6 +157,8 @@ class MainApplication {
 
             textEditorView = TextEditorView()
             fileTreeView = FileTreeView()
+            searchView = SearchView()
+            goToFileView = GoToFileView()
 
             themeModule = ThemeModule()
             themeHandler = ThemeHandler(themeModule!!)
@@ -182,6 +198,19 @@ class MainApplication {
                 }
             }
 
+            // The search panel sits between the file tree and the editor while it is open
+            searchView!!.viewModel.isVisible.addListener { _, _, isVisible ->
+                val splitPane = contentArea ?: return@addListener
+                if (isVisible) {
+                    if (!splitPane.items.contains(searchView)) {
+                        splitPane.items.add(splitPane.items.indexOf(textEditorView), searchView)
+                        SplitPane.setResizableWithParent(searchView, false)
+                    }
+                } else {
+                    splitPane.items.remove(searchView)
+                }
+            }
+
             val centerContent = HBox().apply {
                 children.addAll(leftBarView, contentArea)
                 HBox.setHgrow(contentArea, Priority.ALWAYS)
@@ -190,6 +219,14 @@ class MainApplication {
             ideLayout!!.top = topBarView
             ideLayout!!.center = centerContent
             ideLayout!!.bottom = bottomBarView
+
+            // Go to file works from anywhere in the IDE, not only the editor
+            ideLayout!!.addEventFilter(KeyEvent.KEY_PRESSED) { event ->
+                if (event.isShortcutDown && (event.code == KeyCode.P || (event.isShiftDown && event.code == KeyCode.N))) {
+                    EventBus.post(OpenGoToFile())
+                    event.consume()
+                }
+            }
             
             // Start Screen Construction
             projectManagerView = ProjectManagerView()
@@ -198,7 +235,9 @@ class MainApplication {
             rootContainer = StackPane()
             rootContainer!!.styleClass.add("window")
             // Wrap in modal pane stack
-            val rootStack = StackPane(rootContainer!!, NotificationMessageArea)
+            val rootStack = StackPane(rootContainer!!, goToFileView, NotificationMessageArea)
+            StackPane.setAlignment(goToFileView, Pos.TOP_CENTER)
+            StackPane.setMargin(goToFileView, Insets(UIConstants.TOP_BAR_HEIGHT + 8.0, 0.0, 0.0, 0.0))
             setupStageDimensions(stage, rootContainer!!)
 
             // The resizable wrapper should wrap the entire root stack
@@ -392,6 +431,15 @@ class MainApplication {
                     WorkspaceManager.setWindowFocused(focused)
                 }
 
+                // The workspace indexes are only built once the IDE is actually used
+                stage.showingProperty().addListener { _, _, showing ->
+                    if (showing) {
+                        SearchIndexService.start()
+                        SymbolIndexService.start()
+                        WorkspacePathIndex.start()
+                    }
+                }
+
                 primaryStage = stage
                 updateMainView()
                 logger.info("Main IDE Window created with ResizeHandler (hidden)!")
@@ -400,6 +448,26 @@ class MainApplication {
             }
         }
 
+        /**
+         * Saves the edited tabs and closes the edit journal before the game exits, blocking until the pending
+         * writes are done, as they run on daemon threads that die with the JVM.
+         */
+        fun shutdown() {
+            val editor = textEditorView ?: return
+            val done = CountDownLatch(1)
+            JavaFXInitializer.runLater {
+                try {
+                    editor.cleanup()
+                } finally {
+                    done.countDown()
+                }
+            }
+            // The editor itself waits up to 30 seconds for the writes
+            if (!done.await(35, TimeUnit.SECONDS)) {
+                logger.warn("Timed out waiting for the editor to save before exiting")
+            }
+        }
+
         fun hideMainWindow() {
             JavaFXInitializer.runLater {
                 primaryStage?.takeIf { it.isShowing }?.let { stage ->
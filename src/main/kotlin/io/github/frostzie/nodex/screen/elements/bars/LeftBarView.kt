@@ -2,6 +2,7 @@ package io.github.frostzie.nodex.screen.elements.bars
 
 import atlantafx.base.theme.Styles
 import io.github.frostzie.nodex.events.ToggleFileTree
+import io.github.frostzie.nodex.events.ToggleSearchPanel
 import io.github.frostzie.nodex.events.EventBus
 import io.github.frostzie.nodex.utils.LoggerProvider
 import io.github.frostzie.nodex.utils.UIConstants
@@ -36,9 +37,7 @@ class LeftBarView : ToolBar() {
             Feather.SEARCH,
             "Search"
         ) {
-            logger.warn("Search button not implemented yet!")
-        }.apply {
-            isDisable = true
+            EventBus.post(ToggleSearchPanel())
         }
 
         val spacer = Region().apply {
@@ -155,7 +155,10 @@ class TopBarView(private val viewModel: TopBarViewModel) : HBox() {
                 MenuItem("Cut").apply { setOnAction { EventBus.post(EditorCut()) } },
                 MenuItem("Copy").apply { setOnAction { EventBus.post(EditorCopy()) } },
                 MenuItem("Paste").apply { setOnAction { EventBus.post(EditorPaste()) } },
-                MenuItem("Find").apply { setOnAction { EventBus.post(EditorFind()) }; isDisable = true },
+                MenuItem("Find").apply { setOnAction { EventBus.post(EditorFind()) } },
+                MenuItem("Go to Definition").apply { setOnAction { EventBus.post(EditorGoToDefinition()) } },
+                MenuItem("Find Usages").apply { setOnAction { EventBus.post(EditorFindUsages()) } },
+                MenuItem("Go to File").apply { setOnAction { EventBus.post(OpenGoToFile()) } },
                 MenuItem("Select All").apply { setOnAction { EventBus.post(EditorSelectAll()) } }
             ),
 
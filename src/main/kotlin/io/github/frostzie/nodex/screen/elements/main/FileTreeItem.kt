@@ -4,10 +4,14 @@ import java.nio.file.Path
 
 /**
  * A simple data class representing a single item in the file tree.
+ * [isDirectory] is read once when the item is listed, so cells never touch the file system.
+ * For a compacted chain of directories, [path] is the deepest one and [compactedFrom] the first.
  */
 data class FileTreeItem(
     val path: Path,
-    val displayName: String
+    val displayName: String,
+    val isDirectory: Boolean = false,
+    val compactedFrom: Path? = null
 ) {
     /**
      * Overriding toString() provides a default, human-readable name
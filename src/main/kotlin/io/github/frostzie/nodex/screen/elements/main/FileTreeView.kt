@@ -9,7 +9,7 @@ import io.github.frostzie.nodex.project.WorkspaceManager
 import io.github.frostzie.nodex.settings.categories.MainConfig
 import io.github.frostzie.nodex.settings.categories.ThemeConfig
 import io.github.frostzie.nodex.utils.UIConstants
-import javafx.beans.InvalidationListener
+import javafx.collections.SetChangeListener
 import javafx.scene.control.TreeCell
 import javafx.scene.control.TreeView
 import javafx.scene.input.ClipboardContent
@@ -19,10 +19,10 @@ import javafx.scene.input.MouseButton
 import javafx.scene.input.TransferMode
 import javafx.scene.layout.Priority
 import javafx.scene.layout.VBox
+import java.lang.ref.WeakReference
 import java.nio.file.Path
 import org.kordamp.ikonli.javafx.FontIcon
 import org.kordamp.ikonli.material2.Material2AL
-import kotlin.io.path.isDirectory
 
 /**
  * The View for the file tree. This class is responsible for displaying the tree.
@@ -35,6 +35,11 @@ class FileTreeView : VBox() {
     // This ensures that the tree only handles drops that it originated, preventing conflicts with
     // other drag-and-drop sources. The string is a unique identifier, conventionally using a package name format.
     private val dragDataFormat = DataFormat("io.github.frostzie.nodex.FileTreeItem")
+    private var draggedPath: Path? = null
+
+    // The cells showing each path, so a dirty state change restyles those cells instead of all of them.
+    // A path can have several, the tree also renders rows through cells it only uses for measuring.
+    private val cellsByPath = HashMap<Path, MutableList<WeakReference<FileTreeCell>>>()
 
     init {
         styleClass.add("file-tree-container")
@@ -56,112 +61,162 @@ class FileTreeView : VBox() {
 
         treeView.isShowRoot = false
 
+        // Restyle only the shown cells of the paths whose dirty state changed
+        WorkspaceManager.dirtyFiles.addListener(SetChangeListener { change ->
+            cellsFor(change.elementAdded ?: change.elementRemoved).forEach { it.updateStyle() }
+        })
+        MainConfig.dirtyFileColor.addListener { _ ->
+            WorkspaceManager.dirtyFiles.forEach { path -> cellsFor(path).forEach { it.updateStyle() } }
+        }
+
         // A cell factory is used to customize each cell in the tree. This includes setting up
         // mouse click listeners for opening files and handling all drag-and-drop gestures.
-        treeView.setCellFactory { _ ->
-            object : TreeCell<FileTreeItem>() {
-                private val invalidationListener = InvalidationListener { updateStyle() }
-
-                init {
-                    WorkspaceManager.dirtyFiles.addListener(invalidationListener)
-                    MainConfig.dirtyFileColor.addListener(invalidationListener)
-
-                    setOnMouseClicked { event ->
-                        if (event.button == MouseButton.PRIMARY && event.clickCount == 2) {
-                            val currentItem = item ?: return@setOnMouseClicked
-                            if (!currentItem.path.isDirectory()) {
-                                EventBus.post(OpenFile(currentItem.path))
-                            }
-                        }
-                    }
+        treeView.setCellFactory { FileTreeCell() }
+    }
 
-                    setOnDragDetected { event ->
-                        if (item == null) return@setOnDragDetected
-                        val db = startDragAndDrop(TransferMode.MOVE)
-                        val content = ClipboardContent()
-                        content[dragDataFormat] = item.path.toString()
-                        db.setContent(content)
-                        event.consume()
-                    }
+    /**
+     * The cells currently shown for [path]. Cells are only weakly held, so the tree can drop them at will.
+     */
+    private fun cellsFor(path: Path?): List<FileTreeCell> {
+        val references = cellsByPath[path ?: return emptyList()] ?: return emptyList()
+        references.removeIf { it.get() == null }
+        if (references.isEmpty()) {
+            cellsByPath.remove(path)
+            return emptyList()
+        }
+        return references.mapNotNull { reference ->
+            reference.get()?.takeIf { it.item?.path == path && it.isVisible && it.scene != null }
+        }
+    }
 
-                    setOnDragOver { event ->
-                        if (isValidDropTarget(event)) {
-                            event.acceptTransferModes(TransferMode.MOVE)
-                        }
-                        event.consume()
+    /**
+     * A row of the tree. Everything it shows comes from its [FileTreeItem], so rendering never touches the disk,
+     * and it holds no listeners on anything that outlives it.
+     */
+    private inner class FileTreeCell : TreeCell<FileTreeItem>() {
+        // Reused across items, only its glyph and size change
+        private val icon = FontIcon()
+        private var indexedPath: Path? = null
+
+        init {
+            setOnMouseClicked { event ->
+                if (event.button == MouseButton.PRIMARY && event.clickCount == 2) {
+                    val currentItem = item ?: return@setOnMouseClicked
+                    if (!currentItem.isDirectory) {
+                        EventBus.post(OpenFile(currentItem.path))
                     }
+                }
+            }
 
-                    setOnDragEntered { event ->
-                        if (isValidDropTarget(event)) {
-                            styleClass.add("drag-over")
-                        }
-                    }
+            setOnDragDetected { event ->
+                val currentItem = item ?: return@setOnDragDetected
+                val db = startDragAndDrop(TransferMode.MOVE)
+                val content = ClipboardContent()
+                content[dragDataFormat] = currentItem.path.toString()
+                db.setContent(content)
+                draggedPath = currentItem.path
+                event.consume()
+            }
 
-                    setOnDragExited {
-                        styleClass.remove("drag-over")
-                    }
+            setOnDragDone {
+                draggedPath = null
+            }
 
-                    setOnDragDropped { event ->
-                        styleClass.remove("drag-over")
-                        val db = event.dragboard
-                        var success = false
-                        if (db.hasContent(dragDataFormat)) {
-                            val targetItem = item ?: return@setOnDragDropped
-                            val sourcePath = Path.of(db.getContent(dragDataFormat) as String)
-                            val targetPath = targetItem.path.resolve(sourcePath.fileName)
-
-                            EventBus.post(RequestMoveConfirmation(sourcePath, targetPath))
-                            success = true
-                        }
-                        event.isDropCompleted = success
-                        event.consume()
-                    }
+            setOnDragOver { event ->
+                if (isValidDropTarget(event)) {
+                    event.acceptTransferModes(TransferMode.MOVE)
                 }
+                event.consume()
+            }
 
-                override fun updateItem(item: FileTreeItem?, empty: Boolean) {
-                    super.updateItem(item, empty)
-
-                    if (empty || item == null) {
-                        text = null
-                        graphic = null
-                        style = "" // Reset style
-                    } else {
-                        text = item.toString()
-                        graphic = if (MainConfig.showFileIcons.get()) {
-                            val iconCode = if (item.path.isDirectory()) Material2AL.FOLDER else Material2AL.DESCRIPTION
-                            FontIcon(iconCode).apply { iconSize = ThemeConfig.fontSize.get() }
-                        } else {
-                            null
-                        }
-                        updateStyle()
-                    }
+            setOnDragEntered { event ->
+                if (isValidDropTarget(event)) {
+                    styleClass.add("drag-over")
                 }
+            }
 
-                private fun updateStyle() {
-                    if (isEmpty || item == null) {
-                        style = ""
-                        return
-                    }
+            setOnDragExited {
+                styleClass.remove("drag-over")
+            }
 
-                    style = if (item.path in WorkspaceManager.dirtyFiles) {
-                        "-fx-text-fill: ${MainConfig.dirtyFileColor.get()};"
-                    } else {
-                        "" // Reset to default
-                    }
+            setOnDragDropped { event ->
+                styleClass.remove("drag-over")
+                var success = false
+                val sourcePath = draggedSource(event)
+                if (sourcePath != null) {
+                    val targetItem = item ?: return@setOnDragDropped
+                    val targetPath = targetItem.path.resolve(sourcePath.fileName)
+
+                    EventBus.post(RequestMoveConfirmation(sourcePath, targetPath))
+                    success = true
+                }
+                event.isDropCompleted = success
+                event.consume()
+            }
+        }
+
+        override fun updateItem(item: FileTreeItem?, empty: Boolean) {
+            super.updateItem(item, empty)
+            index(if (empty) null else item?.path)
+
+            if (empty || item == null) {
+                text = null
+                graphic = null
+                style = "" // Reset style
+            } else {
+                text = item.toString()
+                graphic = if (MainConfig.showFileIcons.get()) {
+                    icon.iconCode = if (item.isDirectory) Material2AL.FOLDER else Material2AL.DESCRIPTION
+                    icon.iconSize = ThemeConfig.fontSize.get()
+                    icon
+                } else {
+                    null
                 }
+                updateStyle()
+            }
+        }
 
-                private fun isValidDropTarget(event: DragEvent): Boolean {
-                    if (event.gestureSource == this || !event.dragboard.hasContent(dragDataFormat)) {
-                        return false
-                    }
+        private fun index(path: Path?) {
+            if (path == indexedPath) return
+            indexedPath?.let { old ->
+                val references = cellsByPath[old] ?: return@let
+                references.removeIf { it.get().let { cell -> cell == null || cell === this } }
+                if (references.isEmpty()) cellsByPath.remove(old)
+            }
+            path?.let { cellsByPath.getOrPut(it) { ArrayList(1) }.add(WeakReference(this)) }
+            indexedPath = path
+        }
 
-                    val targetItem = item ?: return false
-                    val sourcePath = Path.of(event.dragboard.getContent(dragDataFormat) as String)
+        fun updateStyle() {
+            if (isEmpty || item == null) {
+                style = ""
+                return
+            }
 
-                    // Valid if the target is a directory, not the source itself, and not a child of the source
-                    return targetItem.path.isDirectory() && sourcePath != targetItem.path && !targetItem.path.startsWith(sourcePath)
-                }
+            style = if (item.path in WorkspaceManager.dirtyFiles) {
+                "-fx-text-fill: ${MainConfig.dirtyFileColor.get()};"
+            } else {
+                "" // Reset to default
             }
         }
+
+        private fun isValidDropTarget(event: DragEvent): Boolean {
+            if (event.gestureSource == this) return false
+
+            val targetItem = item ?: return false
+            val sourcePath = draggedSource(event) ?: return false
+
+            // Valid if the target is a directory, not the source itself, and not a child of the source
+            return targetItem.isDirectory && sourcePath != targetItem.path && !targetItem.path.startsWith(sourcePath)
+        }
+    }
+
+    /**
+     * The path dragged from this tree, kept from the start of the drag so drag-over events do not parse it again.
+     * Only a drag this tree did not start itself falls back to the dragboard.
+     */
+    private fun draggedSource(event: DragEvent): Path? {
+        if (!event.dragboard.hasContent(dragDataFormat)) return null
+        return draggedPath ?: Path.of(event.dragboard.getContent(dragDataFormat) as String)
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,186 @@
+package io.github.frostzie.nodex.screen.elements.main
+
+import atlantafx.base.theme.Styles
+import io.github.frostzie.nodex.features.editor.find.FindQuery
+import io.github.frostzie.nodex.features.editor.find.FindSession
+import javafx.beans.InvalidationListener
+import javafx.geometry.Insets
+import javafx.geometry.Pos
+import javafx.scene.control.Button
+import javafx.scene.control.Label
+import javafx.scene.control.TextField
+import javafx.scene.control.ToggleButton
+import javafx.scene.control.Tooltip
+import javafx.scene.input.KeyCode
+import javafx.scene.input.KeyEvent
+import javafx.scene.layout.HBox
+import javafx.scene.layout.Priority
+import javafx.scene.layout.VBox
+import org.kordamp.ikonli.javafx.FontIcon
+import org.kordamp.ikonli.material2.Material2AL
+
+/**
+ * Find and replace bar shown above the editor. Searches in the [FindSession] of the active tab,
+ * which [TextEditorView] swaps in whenever another tab becomes active.
+ */
+class FindBar(private val onClose: () -> Unit) : VBox() {
+
+    private val queryField = TextField().apply {
+        promptText = "Find"
+        styleClass.add(Styles.SMALL)
+    }
+    private val replaceField = TextField().apply {
+        promptText = "Replace"
+        styleClass.add(Styles.SMALL)
+    }
+    private val matchCaseToggle = createToggle("Aa", "Match Case")
+    private val regexToggle = createToggle(".*", "Regex")
+    private val statusLabel = Label().apply { styleClass.add(Styles.TEXT_MUTED) }
+
+    private val statusListener = InvalidationListener { updateStatus() }
+
+    /**
+     * The session searched in, null while no editor tab is active.
+     */
+    var session: FindSession? = null
+        set(value) {
+            field?.let { unbind(it) }
+            field = value
+            value?.let { bind(it) }
+            // Switching tabs keeps the caret of the new tab where it was
+            search(selectNearest = false)
+        }
+
+    init {
+        styleClass.add("find-bar")
+        padding = Insets(4.0, 8.0, 4.0, 8.0)
+        spacing = 4.0
+        isVisible = false
+        isManaged = false
+
+        HBox.setHgrow(queryField, Priority.ALWAYS)
+        HBox.setHgrow(replaceField, Priority.ALWAYS)
+
+        val findRow = HBox(
+            queryField, matchCaseToggle, regexToggle, statusLabel,
+            createButton(Material2AL.ARROW_UPWARD, "Previous Match") { session?.previous() },
+            createButton(Material2AL.ARROW_DOWNWARD, "Next Match") { session?.next() },
+            createButton(Material2AL.CLOSE, "Close") { close() }
+        )
+        val replaceRow = HBox(
+            replaceField,
+            Button("Replace").apply {
+                styleClass.add(Styles.SMALL)
+                setOnAction { session?.replaceCurrent(replaceField.text) }
+            },
+            Button("Replace All").apply {
+                styleClass.add(Styles.SMALL)
+                setOnAction { session?.replaceAll(replaceField.text) }
+            }
+        )
+        listOf(findRow, replaceRow).forEach {
+            it.alignment = Pos.CENTER_LEFT
+            it.spacing = 4.0
+        }
+        children.addAll(findRow, replaceRow)
+
+        queryField.textProperty().addListener { _, _, _ -> search() }
+        matchCaseToggle.selectedProperty().addListener { _, _, _ -> search() }
+        regexToggle.selectedProperty().addListener { _, _, _ -> search() }
+
+        queryField.setOnAction { session?.next() }
+        replaceField.setOnAction { session?.replaceCurrent(replaceField.text) }
+        addEventFilter(KeyEvent.KEY_PRESSED) { event ->
+            when {
+                event.code == KeyCode.ESCAPE -> {
+                    close()
+                    event.consume()
+                }
+                event.code == KeyCode.ENTER && event.isShiftDown && event.target == queryField -> {
+                    session?.previous()
+                    event.consume()
+                }
+            }
+        }
+    }
+
+    val isOpen: Boolean
+        get() = isVisible
+
+    /**
+     * Shows the bar and focuses the query, starting with [initialQuery] if it is not blank.
+     */
+    fun open(initialQuery: String?) {
+        isVisible = true
+        isManaged = true
+        // Multi-line selections are rarely meant as a query
+        if (!initialQuery.isNullOrBlank() && '\n' !in initialQuery) {
+            queryField.text = initialQuery
+        }
+        queryField.requestFocus()
+        queryField.selectAll()
+        search()
+    }
+
+    fun close() {
+        if (!isOpen) return
+        isVisible = false
+        isManaged = false
+        session?.search(null)
+        onClose()
+    }
+
+    private fun search(selectNearest: Boolean = true) {
+        if (!isOpen) return
+        val text = queryField.text
+        val query = if (text.isNullOrEmpty()) null else FindQuery(text, regexToggle.isSelected, matchCaseToggle.isSelected)
+        session?.search(query, selectNearest)
+        updateStatus()
+    }
+
+    private fun bind(session: FindSession) {
+        session.matchCount.addListener(statusListener)
+        session.currentMatch.addListener(statusListener)
+        session.error.addListener(statusListener)
+    }
+
+    private fun unbind(session: FindSession) {
+        session.matchCount.removeListener(statusListener)
+        session.currentMatch.removeListener(statusListener)
+        session.error.removeListener(statusListener)
+        session.search(null)
+    }
+
+    private fun updateStatus() {
+        val session = session
+        val error = session?.error?.get()
+        statusLabel.pseudoClassStateChanged(Styles.STATE_DANGER, error != null)
+        statusLabel.text = when {
+            session == null || queryField.text.isNullOrEmpty() -> ""
+            error != null -> error
+            session.matchCount.get() == 0 -> "No results"
+            else -> {
+                val count = session.matchCount.get()
+                val total = if (count >= FindSession.MAX_MATCHES) "$count+" else count.toString()
+                val current = session.currentMatch.get()
+                if (current >= 0) "${current + 1} of $total" else "$total results"
+            }
+        }
+    }
+
+    private fun createToggle(text: String, tooltipText: String): ToggleButton {
+        return ToggleButton(text).apply {
+            tooltip = Tooltip(tooltipText)
+            styleClass.addAll(Styles.FLAT, Styles.SMALL)
+        }
+    }
+
+    private fun createButton(icon: Material2AL, tooltipText: String, action: () -> Unit): Button {
+        return Button().apply {
+            graphic = FontIcon(icon)
+            tooltip = Tooltip(tooltipText)
+            styleClass.addAll(Styles.FLAT, Styles.BUTTON_ICON, Styles.SMALL)
+            setOnAction { action() }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package io.github.frostzie.nodex.screen.elements.main
+
+import atlantafx.base.theme.Styles
+import atlantafx.base.theme.Tweaks
+import io.github.frostzie.nodex.modules.main.GoToFileViewModel
+import io.github.frostzie.nodex.services.WorkspacePathIndex
+import io.github.frostzie.nodex.settings.categories.MainConfig
+import io.github.frostzie.nodex.settings.categories.ThemeConfig
+import javafx.collections.ListChangeListener
+import javafx.geometry.Insets
+import javafx.geometry.Pos
+import javafx.scene.control.Label
+import javafx.scene.control.ListCell
+import javafx.scene.control.ListView
+import javafx.scene.control.TextField
+import javafx.scene.input.KeyCode
+import javafx.scene.input.KeyEvent
+import javafx.scene.input.MouseButton
+import javafx.scene.layout.HBox
+import javafx.scene.layout.Priority
+import javafx.scene.layout.Region
+import javafx.scene.layout.VBox
+import org.kordamp.ikonli.javafx.FontIcon
+import org.kordamp.ikonli.material2.Material2AL
+
+/**
+ * The View for the go to file popup, shown above the IDE while open.
+ * Typing ranks the workspace's files, Enter opens the selected one and Escape or clicking elsewhere closes it.
+ */
+class GoToFileView : VBox() {
+    internal val viewModel = GoToFileViewModel()
+
+    private val queryField = TextField().apply {
+        promptText = "Go to file"
+    }
+    private val listView = ListView(viewModel.results)
+
+    init {
+        styleClass.add("go-to-file")
+        maxWidth = 600.0
+        maxHeight = Region.USE_PREF_SIZE
+        padding = Insets(6.0)
+        spacing = 6.0
+
+        visibleProperty().bind(viewModel.isVisible)
+        managedProperty().bind(viewModel.isVisible)
+
+        queryField.textProperty().bindBidirectional(viewModel.query)
+
+        listView.styleClass.add(Tweaks.EDGE_TO_EDGE)
+        listView.prefHeight = 400.0
+        listView.isFocusTraversable = false
+        listView.setCellFactory { MatchCell() }
+
+        children.addAll(queryField, listView)
+
+        // Keys stay in the query field, the list only follows them
+        queryField.addEventFilter(KeyEvent.KEY_PRESSED) { event ->
+            when (event.code) {
+                KeyCode.DOWN -> move(1)
+                KeyCode.UP -> move(-1)
+                KeyCode.PAGE_DOWN -> move(10)
+                KeyCode.PAGE_UP -> move(-10)
+                KeyCode.ENTER -> openSelected()
+                KeyCode.ESCAPE -> viewModel.hide()
+                else -> return@addEventFilter
+            }
+            event.consume()
+        }
+
+        viewModel.results.addListener { _: ListChangeListener.Change<out WorkspacePathIndex.Match> ->
+            if (viewModel.results.isNotEmpty()) {
+                listView.selectionModel.select(0)
+                listView.scrollTo(0)
+            }
+        }
+
+        viewModel.isVisible.addListener { _, _, visible ->
+            if (visible) queryField.requestFocus()
+        }
+        focusWithinProperty().addListener { _, _, focused ->
+            if (!focused) viewModel.hide()
+        }
+    }
+
+    private fun move(by: Int) {
+        if (viewModel.results.isEmpty()) return
+        val index = (listView.selectionModel.selectedIndex + by).coerceIn(0, viewModel.results.size - 1)
+        listView.selectionModel.select(index)
+        listView.scrollTo(index)
+    }
+
+    private fun openSelected() {
+        val match = listView.selectionModel.selectedItem ?: viewModel.results.firstOrNull() ?: return
+        viewModel.open(match)
+    }
+
+    private inner class MatchCell : ListCell<WorkspacePathIndex.Match>() {
+        private val icon = FontIcon(Material2AL.DESCRIPTION)
+        private val name = Label()
+        private val directory = Label().apply {
+            styleClass.addAll(Styles.TEXT_MUTED, Styles.TEXT_SMALL)
+        }
+        private val row = HBox(name, directory).apply {
+            alignment = Pos.CENTER_LEFT
+            spacing = 8.0
+        }
+
+        init {
+            HBox.setHgrow(directory, Priority.ALWAYS)
+            setOnMouseClicked { event ->
+                val match = item ?: return@setOnMouseClicked
+                if (event.button == MouseButton.PRIMARY) viewModel.open(match)
+            }
+        }
+
+        override fun updateItem(item: WorkspacePathIndex.Match?, empty: Boolean) {
+            super.updateItem(item, empty)
+            text = null
+            if (empty || item == null) {
+                graphic = null
+                return
+            }
+            val display = item.entry.display
+            val nameStart = display.lastIndexOf('/') + 1
+            name.text = display.substring(nameStart)
+            directory.text = display.substring(0, (nameStart - 1).coerceAtLeast(0))
+            if (MainConfig.showFileIcons.get()) {
+                icon.iconSize = ThemeConfig.fontSize.get()
+                name.graphic = icon
+            } else {
+                name.graphic = null
+            }
+            graphic = row
+        }
+    }
+
+    fun cleanup() {
+        viewModel.cleanup()
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.frostzie.nodex.screen.elements.main
+
+import atlantafx.base.theme.Styles
+import io.github.frostzie.nodex.features.editor.largefile.MappedTextFile
+import javafx.collections.ObservableListBase
+import javafx.geometry.Insets
+import javafx.geometry.Pos
+import javafx.scene.control.Button
+import javafx.scene.control.Label
+import javafx.scene.layout.HBox
+import javafx.scene.layout.Priority
+import javafx.scene.layout.Region
+import javafx.scene.layout.VBox
+import javafx.scene.text.Text
+import org.fxmisc.flowless.Cell
+import org.fxmisc.flowless.VirtualFlow
+import org.fxmisc.flowless.VirtualizedScrollPane
+
+/**
+ * Read-only view for files opened in large-file mode.
+ * Rows are decoded from the [MappedTextFile] only when they scroll into view, and cells are reused,
+ * so memory use does not depend on the size of the file.
+ */
+class LargeFileView(
+    private val file: MappedTextFile,
+    onLoadFully: () -> Unit
+) : VBox() {
+
+    /**
+     * Row indexes of the file, without materializing them.
+     */
+    private val rows = object : ObservableListBase<Int>() {
+        override fun get(index: Int): Int = index
+        override val size: Int get() = file.rowCount
+    }
+
+    private val gutterWidth = file.lineCount.toString().length
+
+    init {
+        styleClass.add("large-file-view")
+
+        val sizeMb = "%.1f".format(file.size / (1024.0 * 1024.0))
+        val info = Label("Large file ($sizeMb MB, ${file.lineCount} lines) opened read-only.")
+        val spacer = Region()
+        HBox.setHgrow(spacer, Priority.ALWAYS)
+        val loadButton = Button("Load fully for editing").apply {
+            styleClass.add(Styles.SMALL)
+            setOnAction {
+                isDisable = true
+                onLoadFully()
+            }
+        }
+        val banner = HBox(info, spacer, loadButton).apply {
+            styleClass.add("large-file-banner")
+            alignment = Pos.CENTER_LEFT
+            spacing = 8.0
+            padding = Insets(4.0, 8.0, 4.0, 8.0)
+        }
+
+        val flow = VirtualFlow.createVertical(rows) { row -> RowCell(row) }
+        val scrollPane = VirtualizedScrollPane(flow)
+        setVgrow(scrollPane, Priority.ALWAYS)
+
+        children.addAll(banner, scrollPane)
+    }
+
+    private inner class RowCell(row: Int) : Cell<Int, HBox> {
+        private val number = Label().apply {
+            styleClass.add("lineno")
+            minWidth = Region.USE_PREF_SIZE
+        }
+        private val text = Text().apply { styleClass.add("text") }
+        private val node = HBox(number, text).apply {
+            styleClass.add("large-file-row")
+            spacing = 8.0
+            style = "-fx-font-family: monospace;"
+        }
+
+        init {
+            updateItem(row)
+        }
+
+        override fun getNode(): HBox = node
+
+        override fun isReusable(): Boolean = true
+
+        override fun updateItem(item: Int) {
+            number.text = if (file.isLineStart(item)) {
+                (file.lineOf(item) + 1).toString().padStart(gutterWidth)
+            } else {
+                " ".repeat(gutterWidth)
+            }
+            text.text = file.row(item)
+        }
+    }
+}
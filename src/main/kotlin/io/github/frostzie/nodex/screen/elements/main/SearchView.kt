@@ -0,0 +1,182 @@
+package io.github.frostzie.nodex.screen.elements.main
+
+import atlantafx.base.theme.Styles
+import atlantafx.base.theme.Tweaks
+import io.github.frostzie.nodex.features.editor.find.FindQuery
+import io.github.frostzie.nodex.modules.main.SearchViewModel
+import io.github.frostzie.nodex.project.WorkspaceManager
+import io.github.frostzie.nodex.services.FindInFilesService
+import io.github.frostzie.nodex.settings.categories.AdvancedConfig
+import io.github.frostzie.nodex.utils.UIConstants
+import javafx.collections.ListChangeListener
+import javafx.geometry.Insets
+import javafx.geometry.Pos
+import javafx.scene.control.Button
+import javafx.scene.control.Label
+import javafx.scene.control.TextField
+import javafx.scene.control.ToggleButton
+import javafx.scene.control.Tooltip
+import javafx.scene.control.TreeCell
+import javafx.scene.control.TreeItem
+import javafx.scene.control.TreeView
+import javafx.scene.input.KeyCode
+import javafx.scene.input.MouseButton
+import javafx.scene.layout.HBox
+import javafx.scene.layout.Priority
+import javafx.scene.layout.VBox
+import java.nio.file.Path
+import org.kordamp.ikonli.javafx.FontIcon
+import org.kordamp.ikonli.material2.Material2AL
+
+/**
+ * The View for the find in files panel, shown next to the file tree.
+ * Results are grouped by file and added to the tree as they stream in.
+ */
+class SearchView : VBox() {
+    internal val viewModel = SearchViewModel()
+
+    private sealed class Row {
+        class File(val result: FindInFilesService.FileResult) : Row()
+        class Hit(val path: Path, val match: FindInFilesService.Match) : Row()
+    }
+
+    private val queryField = TextField().apply {
+        promptText = "Find in files"
+        styleClass.add(Styles.SMALL)
+    }
+    private val matchCaseToggle = createToggle("Aa", "Match Case")
+    private val regexToggle = createToggle(".*", "Regex")
+    private val statusLabel = Label().apply {
+        styleClass.addAll(Styles.TEXT_MUTED, Styles.TEXT_SMALL)
+    }
+    private val indexStatsLabel = Label().apply {
+        styleClass.addAll(Styles.TEXT_MUTED, Styles.TEXT_SMALL)
+        isWrapText = true
+    }
+    private val treeView = TreeView<Row>(TreeItem())
+
+    init {
+        styleClass.add("search-container")
+
+        prefWidth = UIConstants.FILE_TREE_DEFAULT_WIDTH
+        minWidth = UIConstants.FILE_TREE_MIN_WIDTH
+        maxWidth = UIConstants.FILE_TREE_MAX_WIDTH
+        padding = Insets(4.0, 0.0, 0.0, 0.0)
+        spacing = 4.0
+
+        visibleProperty().bind(viewModel.isVisible)
+        managedProperty().bind(viewModel.isVisible)
+
+        val cancelButton = Button().apply {
+            graphic = FontIcon(Material2AL.CLOSE)
+            tooltip = Tooltip("Cancel Search")
+            styleClass.addAll(Styles.FLAT, Styles.BUTTON_ICON, Styles.SMALL)
+            visibleProperty().bind(viewModel.isSearching)
+            managedProperty().bind(viewModel.isSearching)
+            setOnAction { viewModel.cancel() }
+        }
+        HBox.setHgrow(queryField, Priority.ALWAYS)
+        val queryRow = HBox(queryField, matchCaseToggle, regexToggle, cancelButton).apply {
+            alignment = Pos.CENTER_LEFT
+            spacing = 4.0
+            padding = Insets(0.0, 4.0, 0.0, 4.0)
+        }
+        statusLabel.textProperty().bind(viewModel.status)
+        statusLabel.padding = Insets(0.0, 4.0, 0.0, 4.0)
+        indexStatsLabel.textProperty().bind(viewModel.indexStats)
+        indexStatsLabel.padding = Insets(0.0, 4.0, 0.0, 4.0)
+        indexStatsLabel.visibleProperty().bind(AdvancedConfig.debugSearchIndex)
+        indexStatsLabel.managedProperty().bind(AdvancedConfig.debugSearchIndex)
+
+        treeView.isShowRoot = false
+        treeView.styleClass.add(Tweaks.EDGE_TO_EDGE)
+        treeView.setCellFactory { ResultCell() }
+        setVgrow(treeView, Priority.ALWAYS)
+
+        children.addAll(queryRow, statusLabel, indexStatsLabel, treeView)
+
+        // Searching on every keystroke would walk the whole workspace each time, so only on Enter
+        queryField.setOnAction { search() }
+        matchCaseToggle.setOnAction { search() }
+        regexToggle.setOnAction { search() }
+        treeView.setOnKeyPressed { event ->
+            if (event.code == KeyCode.ENTER) openSelected()
+        }
+
+        viewModel.results.addListener { change: ListChangeListener.Change<out FindInFilesService.FileResult> ->
+            while (change.next()) {
+                when {
+                    // Streamed results only ever append, anything else replaced the list
+                    change.wasRemoved() || change.wasReplaced() || change.wasPermutated() -> {
+                        treeView.root.children.setAll(viewModel.results.map { createFileItem(it) })
+                        return@addListener
+                    }
+                    change.wasAdded() -> treeView.root.children.addAll(change.addedSubList.map { createFileItem(it) })
+                }
+            }
+        }
+
+        viewModel.isVisible.addListener { _, _, visible ->
+            if (visible) queryField.requestFocus()
+        }
+    }
+
+    private fun search() {
+        viewModel.search(FindQuery(queryField.text ?: "", regexToggle.isSelected, matchCaseToggle.isSelected))
+    }
+
+    private fun createFileItem(result: FindInFilesService.FileResult): TreeItem<Row> {
+        return TreeItem<Row>(Row.File(result)).apply {
+            children.addAll(result.matches.map { TreeItem<Row>(Row.Hit(result.path, it)) })
+            isExpanded = true
+        }
+    }
+
+    private fun openSelected() {
+        when (val row = treeView.selectionModel.selectedItem?.value) {
+            is Row.Hit -> viewModel.open(row.path, row.match)
+            is Row.File -> row.result.matches.firstOrNull()?.let { viewModel.open(row.result.path, it) }
+            null -> {}
+        }
+    }
+
+    // Shown relative to its project, which is what tells files with the same name apart
+    private fun displayPath(path: Path): String {
+        val project = WorkspaceManager.workspace.projects.firstOrNull { path.startsWith(it.path) }
+        return project?.let { "${it.name}/${it.path.relativize(path)}" } ?: path.toString()
+    }
+
+    private inner class ResultCell : TreeCell<Row>() {
+        init {
+            setOnMouseClicked { event ->
+                if (event.button == MouseButton.PRIMARY && event.clickCount == 2 && !isEmpty) openSelected()
+            }
+        }
+
+        override fun updateItem(item: Row?, empty: Boolean) {
+            super.updateItem(item, empty)
+            tooltip = null
+            text = when {
+                empty || item == null -> null
+                item is Row.File -> {
+                    tooltip = Tooltip(item.result.path.toString())
+                    val count = item.result.matches.size.toString() + if (item.result.truncated) "+" else ""
+                    "${displayPath(item.result.path)} ($count)"
+                }
+                item is Row.Hit -> "${item.match.line + 1}: ${item.match.lineText.trim()}"
+                else -> null
+            }
+        }
+    }
+
+    private fun createToggle(text: String, tooltipText: String): ToggleButton {
+        return ToggleButton(text).apply {
+            tooltip = Tooltip(tooltipText)
+            styleClass.addAll(Styles.FLAT, Styles.SMALL)
+        }
+    }
+
+    fun cleanup() {
+        viewModel.cleanup()
+    }
+}
@@ -4,11 +4,16 @@ import atlantafx.base.controls.Tab
 import atlantafx.base.controls.TabLine
 import atlantafx.base.theme.Styles
 import io.github.frostzie.nodex.features.FeatureRegistry
+import io.github.frostzie.nodex.features.editor.document.DocumentListener
+import io.github.frostzie.nodex.features.editor.find.FindSession
+import io.github.frostzie.nodex.features.editor.highlighting.HighlighterRegistry
+import io.github.frostzie.nodex.features.editor.highlighting.IncrementalHighlighter
+import io.github.frostzie.nodex.features.editor.largefile.MappedTextFile
+import io.github.frostzie.nodex.features.editor.undo.BoundedUndoManager
 import io.github.frostzie.nodex.modules.main.TextEditorViewModel
-import io.github.frostzie.nodex.RichJsonFX
+import io.github.frostzie.nodex.settings.categories.MainConfig
 import io.github.frostzie.nodex.settings.categories.ThemeConfig
 import io.github.frostzie.nodex.utils.LoggerProvider
-import javafx.animation.PauseTransition
 import javafx.application.Platform
 import javafx.beans.InvalidationListener
 import javafx.beans.value.ChangeListener
@@ -16,6 +21,10 @@ import javafx.collections.ListChangeListener
 import javafx.geometry.Pos
 import javafx.scene.control.Label
 import javafx.scene.control.Tooltip
+import javafx.scene.input.KeyCode
+import javafx.scene.input.KeyEvent
+import javafx.scene.input.MouseButton
+import javafx.scene.input.MouseEvent
 import javafx.scene.layout.HBox
 import javafx.scene.layout.Region
 import javafx.scene.layout.Priority
@@ -26,8 +35,6 @@ import org.fxmisc.richtext.CodeArea
 import org.fxmisc.richtext.LineNumberFactory
 import org.kordamp.ikonli.javafx.FontIcon
 import org.kordamp.ikonli.material2.Material2AL
-import javafx.util.Duration
-import java.nio.file.Path
 
 /**
  * View for the text editor that displays multiple tabs using AtlantaFX TabLine.
@@ -42,8 +49,20 @@ class TextEditorView : VBox() {
     internal val viewModel = TextEditorViewModel()
     private val tabLine = TabLine()
     private val contentArea = StackPane()
+    private val findBar = FindBar { requestFocus() }
     private val decoratorCleanups = mutableMapOf<String, MutableList<() -> Unit>>()
     private val tabCodeAreas = mutableMapOf<String, CodeArea>()
+    private val tabHighlighters = mutableMapOf<String, IncrementalHighlighter<*>>()
+    // Created when the find bar is first used on a tab
+    private val findSessions = mutableMapOf<String, FindSession>()
+    private val documentBindings = mutableMapOf<String, () -> Unit>()
+    private val largeFileViews = mutableMapOf<String, LargeFileView>()
+    private val largeFileListeners = mutableMapOf<String, ChangeListener<MappedTextFile?>>()
+    private val loadListeners = mutableMapOf<String, ChangeListener<Boolean>>()
+    // Caret position and top paragraph of hibernated tabs, applied when their CodeArea is created again
+    private val hibernatedPositions = mutableMapOf<String, Pair<Int, Int>>()
+    // Selections requested for tabs whose CodeArea does not exist yet
+    private val pendingNavigations = mutableMapOf<String, TextEditorViewModel.Navigation>()
     private var currentThemeStyleSheet: String? = null
 
     init {
@@ -54,11 +73,24 @@ class TextEditorView : VBox() {
         setupListeners()
         setupThemeListener()
 
-        children.addAll(tabLine, contentArea)
+        children.addAll(tabLine, findBar, contentArea)
         setVgrow(contentArea, Priority.ALWAYS)
+
+        addEventFilter(KeyEvent.KEY_PRESSED) { event ->
+            if (event.isShortcutDown && event.code == KeyCode.F) {
+                openFindBar()
+                event.consume()
+            } else if (event.code == KeyCode.F12 && !event.isShortcutDown) {
+                handleEditorAction(
+                    if (event.isShiftDown) TextEditorViewModel.EditorAction.FIND_USAGES
+                    else TextEditorViewModel.EditorAction.GO_TO_DEFINITION
+                )
+                event.consume()
+            }
+        }
     }
 
-    // Temp for Json syntax
+    // Temp for syntax colors
     private fun setupThemeListener() {
         val updateListener = InvalidationListener { updateThemeColors() }
         ThemeConfig.jsonStartObjectColor.addListener(updateListener)
@@ -71,6 +103,17 @@ class TextEditorView : VBox() {
         ThemeConfig.jsonEmbeddedColor.addListener(updateListener)
         ThemeConfig.jsonTrueColor.addListener(updateListener)
         ThemeConfig.jsonFalseColor.addListener(updateListener)
+        ThemeConfig.mcfCommentColor.addListener(updateListener)
+        ThemeConfig.mcfCommandColor.addListener(updateListener)
+        ThemeConfig.mcfKeywordColor.addListener(updateListener)
+        ThemeConfig.mcfMacroColor.addListener(updateListener)
+        ThemeConfig.mcfSelectorColor.addListener(updateListener)
+        ThemeConfig.mcfKeyColor.addListener(updateListener)
+        ThemeConfig.mcfStringColor.addListener(updateListener)
+        ThemeConfig.mcfNumberColor.addListener(updateListener)
+        ThemeConfig.mcfResourceColor.addListener(updateListener)
+        ThemeConfig.mcfBooleanColor.addListener(updateListener)
+        ThemeConfig.mcfBracketColor.addListener(updateListener)
 
         updateThemeColors()
     }
@@ -87,6 +130,17 @@ class TextEditorView : VBox() {
             .code-area .json-embedded { -fx-fill: ${ThemeConfig.jsonEmbeddedColor.get()}; }
             .code-area .json-true { -fx-fill: ${ThemeConfig.jsonTrueColor.get()}; }
             .code-area .json-false { -fx-fill: ${ThemeConfig.jsonFalseColor.get()}; }
+            .code-area .mcf-comment { -fx-fill: ${ThemeConfig.mcfCommentColor.get()}; }
+            .code-area .mcf-command { -fx-fill: ${ThemeConfig.mcfCommandColor.get()}; }
+            .code-area .mcf-keyword { -fx-fill: ${ThemeConfig.mcfKeywordColor.get()}; }
+            .code-area .mcf-macro { -fx-fill: ${ThemeConfig.mcfMacroColor.get()}; }
+            .code-area .mcf-selector { -fx-fill: ${ThemeConfig.mcfSelectorColor.get()}; }
+            .code-area .mcf-key { -fx-fill: ${ThemeConfig.mcfKeyColor.get()}; }
+            .code-area .mcf-string { -fx-fill: ${ThemeConfig.mcfStringColor.get()}; }
+            .code-area .mcf-number { -fx-fill: ${ThemeConfig.mcfNumberColor.get()}; }
+            .code-area .mcf-resource { -fx-fill: ${ThemeConfig.mcfResourceColor.get()}; }
+            .code-area .mcf-boolean { -fx-fill: ${ThemeConfig.mcfBooleanColor.get()}; }
+            .code-area .mcf-bracket { -fx-fill: ${ThemeConfig.mcfBracketColor.get()}; }
         """.trimIndent()
 
         val dataUri = "data:text/css;base64," + java.util.Base64.getEncoder().encodeToString(css.toByteArray())
@@ -158,6 +212,14 @@ class TextEditorView : VBox() {
             }
         }
 
+        viewModel.navigation.addListener { _, _, navigation ->
+            if (navigation != null) {
+                pendingNavigations[navigation.tabId] = navigation
+                applyNavigation(navigation.tabId)
+                Platform.runLater { viewModel.navigation.set(null) }
+            }
+        }
+
         // Listen for editor actions (Undo, Redo, etc.)
         viewModel.currentAction.addListener { _, _, action ->
             if (action != null) {
@@ -171,48 +233,13 @@ class TextEditorView : VBox() {
      * Adds a new tab to the TabLine for the given TabData
      */
     private fun addTab(tabData: TextEditorViewModel.TabData, index: Int = -1) {
-        // Create CodeArea and binding logic
-        val codeArea = CodeArea(tabData.content.get())
-        codeArea.paragraphGraphicFactory = LineNumberFactory.get(codeArea)
-        codeArea.styleClass.add("code-area")
-
-        // Temp for json syntax
-        if (isJsonFile(tabData.filePath)) {
-            setupJsonSyntaxHighlighting(codeArea)
-        }
-        
-        // Listener to sync CodeArea -> ViewModel (User typing)
-        val textListener = InvalidationListener {
-            if (codeArea.text != tabData.content.get()) {
-                tabData.content.set(codeArea.text)
-                if (!tabData.isDirty.get()) {
-                    tabData.isDirty.set(true)
-                }
-            }
-        }
-        codeArea.textProperty().addListener(textListener)
-        
-        // Listener to sync ViewModel -> CodeArea (External reload)
-        val contentListener = InvalidationListener {
-             if (codeArea.text != tabData.content.get()) {
-                 codeArea.replaceText(tabData.content.get())
-             }
-        }
-        tabData.content.addListener(contentListener)
-        
-        // Listener for caret position
-        val caretListener = InvalidationListener {
-             if (viewModel.activeTab.get() == tabData) {
-                 viewModel.updateLineAndColumn(codeArea.currentParagraph + 1, codeArea.caretColumn + 1)
-             }
-        }
-        codeArea.caretPositionProperty().addListener(caretListener)
-        
-        tabCodeAreas[tabData.id] = codeArea
-
         // Create a custom graphic for the tab content, allowing direct access to the label for styling
         val tabLabel = Label(tabData.displayName)
-        val tabIcon = FontIcon(Material2AL.FOLDER)
+        val tabIcon = FontIcon(Material2AL.FOLDER).apply {
+            // Until decorated, which for restored tabs only happens once they are activated
+            isVisible = MainConfig.showFileIcons.get()
+            isManaged = isVisible
+        }
 
         // An invisible placeholder that reserves space for the close button.
         // The width is an estimate of the close button's size. If you find a more exact one, change pls.
@@ -237,11 +264,22 @@ class TextEditorView : VBox() {
         }
         tab.selectedProperty().addListener(selectionListener)
 
-        val cleanups = mutableListOf<() -> Unit>()
-        FeatureRegistry.editorTabDecorators.forEach { decorator ->
-            cleanups.add(decorator.decorate(tab, codeArea, tabData))
+        if (tabData.isLoaded.get()) {
+            createTabContent(tab, tabData)
         }
-        decoratorCleanups[tabData.id] = cleanups
+        // Tabs restored from the session are loaded on first activation, hibernated tabs are unloaded and loaded again
+        val loadListener = ChangeListener<Boolean> { _, _, loaded ->
+            if (loaded) {
+                createTabContent(tab, tabData)
+                if (viewModel.activeTab.get() == tabData) {
+                    switchToTab(tabData)
+                }
+            } else {
+                disposeTabContent(tabData, rememberPosition = true)
+            }
+        }
+        tabData.isLoaded.addListener(loadListener)
+        loadListeners[tabData.id] = loadListener
 
         tab.setOnCloseRequest { event ->
             tab.selectedProperty().removeListener(selectionListener) // Clean up listener
@@ -254,50 +292,123 @@ class TextEditorView : VBox() {
         } else {
             tabLine.tabs.add(tab)
         }
-        tabLine.selectionModel.select(tab)
+        // Selecting activates the tab, which would load every restored tab at once
+        if (tabData.isLoaded.get()) {
+            tabLine.selectionModel.select(tab)
+        }
 
         logger.debug("Added tab: ${tabData.displayName}, ID: ${tabData.id}")
     }
 
-    // Temp Json syntax highlighting
-    private fun isJsonFile(path: Path): Boolean {
-        val fileName = path.fileName.toString().lowercase()
-        return fileName.endsWith(".json") || fileName.endsWith(".mcmeta")
+    /**
+     * Creates the editor or large-file view for a loaded tab and decorates it
+     */
+    private fun createTabContent(tab: Tab, tabData: TextEditorViewModel.TabData) {
+        val largeFile = tabData.largeFile.get()
+        if (largeFile != null) {
+            largeFileViews[tabData.id] = LargeFileView(largeFile) { viewModel.loadFully(tabData) }
+        } else {
+            createCodeArea(tabData)
+        }
+        decorateTab(tab, tabData)
+
+        // Swap between the read-only view and a CodeArea when the tab leaves or re-enters large-file mode
+        val largeFileListener = ChangeListener<MappedTextFile?> { _, _, mapped ->
+            onLargeFileChanged(tab, tabData, mapped)
+        }
+        tabData.largeFile.addListener(largeFileListener)
+        largeFileListeners[tabData.id] = largeFileListener
     }
 
-    private fun setupJsonSyntaxHighlighting(codeArea: CodeArea) {
-        val highlighter = RichJsonFX()
-        val debounce = PauseTransition(Duration.millis(300.0))
+    /**
+     * Creates the CodeArea for a tab and binds it to the tab's data
+     */
+    private fun createCodeArea(tabData: TextEditorViewModel.TabData): CodeArea {
+        // Create CodeArea and binding logic. RichTextFX keeps its own copy of the text, the document is the other one.
+        val document = tabData.document
+        val codeArea = CodeArea(document.getText())
+        codeArea.paragraphGraphicFactory = LineNumberFactory.get(codeArea)
+        codeArea.styleClass.add("code-area")
+        codeArea.undoManager = BoundedUndoManager(codeArea, MainConfig.undoHistoryLimitKb.get() * 1024L)
 
-        fun applyHighlighting() {
+        HighlighterRegistry.create(codeArea, tabData.filePath)?.let { tabHighlighters[tabData.id] = it }
+        
+        // Only the edited range is passed along in either direction, the full text is never copied
+        var applyingDocumentEdit = false
+
+        // Sync CodeArea -> ViewModel (User typing)
+        val textSubscription = codeArea.plainTextChanges().subscribe { change ->
+            if (applyingDocumentEdit) return@subscribe
+            document.replace(change.position, change.removalEnd, change.inserted, codeArea)
+        }
+
+        // Sync ViewModel -> CodeArea (External reload)
+        val documentListener = DocumentListener { edit ->
+            if (edit.source === codeArea) return@DocumentListener
+            applyingDocumentEdit = true
             try {
-                highlighter.highlightCodeArea(codeArea)
-            } catch (e: Exception) {
-                // Ignore parsing errors while typing (e.g. incomplete JSON)
+                codeArea.replaceText(edit.position, edit.position + edit.removed.length, edit.inserted)
+            } finally {
+                applyingDocumentEdit = false
             }
         }
+        document.addListener(documentListener)
 
-        debounce.setOnFinished { applyHighlighting() }
+        documentBindings[tabData.id] = {
+            textSubscription.unsubscribe()
+            document.removeListener(documentListener)
+        }
+        
+        // Listener for caret position
+        val caretListener = InvalidationListener {
+             if (viewModel.activeTab.get() == tabData) {
+                 viewModel.updateLineAndColumn(codeArea.currentParagraph + 1, codeArea.caretColumn + 1)
+             }
+        }
+        codeArea.caretPositionProperty().addListener(caretListener)
 
-        codeArea.textProperty().addListener { _, _, _ ->
-            debounce.playFromStart()
+        // Ctrl+Click goes to the definition of what was clicked
+        codeArea.addEventFilter(MouseEvent.MOUSE_CLICKED) { event ->
+            if (!event.isShortcutDown || event.button != MouseButton.PRIMARY) return@addEventFilter
+            val hit = codeArea.hit(event.x, event.y)
+            codeArea.moveTo(hit.insertionIndex)
+            handleEditorAction(TextEditorViewModel.EditorAction.GO_TO_DEFINITION)
+            event.consume()
         }
 
-        // Initial highlight
-        applyHighlighting()
+        hibernatedPositions.remove(tabData.id)?.let { (caret, topParagraph) ->
+            codeArea.moveTo(caret.coerceAtMost(codeArea.length))
+            codeArea.showParagraphAtTop(topParagraph.coerceAtMost(codeArea.paragraphs.size - 1))
+        }
+        
+        tabCodeAreas[tabData.id] = codeArea
+        applyNavigation(tabData.id)
+        return codeArea
     }
 
     /**
-     * Removes a tab from the TabLine
+     * Selects the position requested for a tab, if there is one and its CodeArea exists
      */
-    private fun removeTab(tabData: TextEditorViewModel.TabData) {
-        tabLine.tabs.find { it.id == tabData.id }?.let {
-            tabLine.tabs.remove(it)
+    private fun applyNavigation(tabId: String) {
+        val codeArea = tabCodeAreas[tabId] ?: return
+        val navigation = pendingNavigations.remove(tabId) ?: return
+        val line = navigation.line.coerceIn(0, codeArea.paragraphs.size - 1)
+        val start = codeArea.getAbsolutePosition(line, navigation.column.coerceIn(0, codeArea.getParagraphLength(line)))
+        codeArea.selectRange(start, (start + navigation.length).coerceAtMost(codeArea.length))
+        codeArea.requestFollowCaret()
+    }
+
+    private fun decorateTab(tab: Tab, tabData: TextEditorViewModel.TabData) {
+        val codeArea = tabCodeAreas[tabData.id]
+        val cleanups = mutableListOf<() -> Unit>()
+        FeatureRegistry.editorTabDecorators.forEach { decorator ->
+            cleanups.add(decorator.decorate(tab, codeArea, tabData))
         }
-        
-        tabCodeAreas.remove(tabData.id)
+        decoratorCleanups[tabData.id] = cleanups
+    }
 
-        // Execute and remove all cleanup functions associated with the closed tab
+    private fun cleanupDecorators(tabData: TextEditorViewModel.TabData) {
+        // Execute and remove all cleanup functions associated with the tab
         decoratorCleanups.remove(tabData.id)?.forEach { cleanup ->
             try {
                 cleanup()
@@ -305,20 +416,67 @@ class TextEditorView : VBox() {
                 logger.error("Error during tab decorator cleanup for ${tabData.displayName}", e)
             }
         }
+    }
+
+    private fun onLargeFileChanged(tab: Tab, tabData: TextEditorViewModel.TabData, mapped: MappedTextFile?) {
+        largeFileViews.remove(tabData.id)
+        if (mapped != null) {
+            largeFileViews[tabData.id] = LargeFileView(mapped) { viewModel.loadFully(tabData) }
+        } else if (tabCodeAreas[tabData.id] == null) {
+            // Loaded fully, re-apply decorators so they can attach to the new CodeArea
+            createCodeArea(tabData)
+            cleanupDecorators(tabData)
+            decorateTab(tab, tabData)
+        }
+
+        if (viewModel.activeTab.get() == tabData) {
+            switchToTab(tabData)
+        }
+    }
+
+    /**
+     * Removes a tab from the TabLine
+     */
+    private fun removeTab(tabData: TextEditorViewModel.TabData) {
+        tabLine.tabs.find { it.id == tabData.id }?.let {
+            tabLine.tabs.remove(it)
+        }
+
+        loadListeners.remove(tabData.id)?.let { tabData.isLoaded.removeListener(it) }
+        disposeTabContent(tabData, rememberPosition = false)
+        hibernatedPositions.remove(tabData.id)
+        pendingNavigations.remove(tabData.id)
         logger.debug("Removed tab and cleaned up decorators: ${tabData.displayName}, ID: ${tabData.id}")
     }
 
+    /**
+     * Drops the editor or large-file view of a tab along with everything bound to it
+     */
+    private fun disposeTabContent(tabData: TextEditorViewModel.TabData, rememberPosition: Boolean) {
+        tabCodeAreas.remove(tabData.id)?.let { codeArea ->
+            if (rememberPosition) {
+                val topParagraph = if (codeArea.visibleParagraphs.isEmpty()) 0 else codeArea.firstVisibleParToAllParIndex()
+                hibernatedPositions[tabData.id] = codeArea.caretPosition to topParagraph
+            }
+        }
+        tabHighlighters.remove(tabData.id)?.dispose()
+        findSessions.remove(tabData.id)?.let { session ->
+            if (findBar.session === session) findBar.session = null
+            session.dispose()
+        }
+        // The document can outlive the tab, e.g. when a moved file reopens with the same TabData contents
+        documentBindings.remove(tabData.id)?.invoke()
+        largeFileViews.remove(tabData.id)
+        largeFileListeners.remove(tabData.id)?.let { tabData.largeFile.removeListener(it) }
+
+        cleanupDecorators(tabData)
+    }
+
     /**
      * Switches the content area to display the CodeArea for the given tab
      */
     private fun switchToTab(tabData: TextEditorViewModel.TabData) {
         contentArea.children.clear()
-        val codeArea = tabCodeAreas[tabData.id] ?: return
-        
-        contentArea.children.add(VirtualizedScrollPane(codeArea))
-        
-        // Update status bar for this tab
-        viewModel.updateLineAndColumn(codeArea.currentParagraph + 1, codeArea.caretColumn + 1)
 
         // Select the corresponding tab in the TabLine
         val tab = tabLine.tabs.find { it.id == tabData.id }
@@ -326,6 +484,29 @@ class TextEditorView : VBox() {
             tabLine.selectionModel.select(tab)
         }
 
+        if (!tabData.isLoaded.get()) {
+            // The file is read in the background, the load listener from addTab shows the content once it arrives
+            contentArea.children.add(createLoadingPlaceholder(tabData))
+            findBar.session = null
+            viewModel.loadTab(tabData)
+            return
+        }
+
+        val codeArea = tabCodeAreas[tabData.id]
+        if (codeArea == null) {
+            largeFileViews[tabData.id]?.let { contentArea.children.add(it) }
+            findBar.session = null
+            return
+        }
+        if (findBar.isOpen) {
+            findBar.session = findSession(tabData, codeArea)
+        }
+        
+        contentArea.children.add(VirtualizedScrollPane(codeArea))
+        
+        // Update status bar for this tab
+        viewModel.updateLineAndColumn(codeArea.currentParagraph + 1, codeArea.caretColumn + 1)
+
         Platform.runLater {
             codeArea.requestFocus()
         }
@@ -333,7 +514,35 @@ class TextEditorView : VBox() {
         logger.debug("Switched to tab: ${tabData.displayName}, ID: ${tabData.id}")
     }
 
+    private fun createLoadingPlaceholder(tabData: TextEditorViewModel.TabData): StackPane {
+        val label = Label("Loading ${tabData.displayName}...").apply {
+            styleClass.add(Styles.TEXT_MUTED)
+        }
+        return StackPane(label).apply {
+            styleClass.add("editor-loading-placeholder")
+        }
+    }
+
+    private fun findSession(tabData: TextEditorViewModel.TabData, codeArea: CodeArea): FindSession {
+        return findSessions.getOrPut(tabData.id) { FindSession(codeArea, tabData.document) }
+    }
+
+    /**
+     * Opens the find bar on the active tab, searching for the selected text if there is any
+     */
+    private fun openFindBar() {
+        val activeTab = viewModel.activeTab.get() ?: return
+        val codeArea = tabCodeAreas[activeTab.id] ?: return
+        val session = findSession(activeTab, codeArea)
+        if (findBar.session !== session) findBar.session = session
+        findBar.open(codeArea.selectedText)
+    }
+
     private fun handleEditorAction(action: TextEditorViewModel.EditorAction) {
+        if (action == TextEditorViewModel.EditorAction.FIND) {
+            openFindBar()
+            return
+        }
         val activeTab = viewModel.activeTab.get() ?: return
         val codeArea = tabCodeAreas[activeTab.id] ?: return
 
@@ -344,6 +553,15 @@ class TextEditorView : VBox() {
             TextEditorViewModel.EditorAction.COPY -> codeArea.copy()
             TextEditorViewModel.EditorAction.PASTE -> codeArea.paste()
             TextEditorViewModel.EditorAction.SELECT_ALL -> codeArea.selectAll()
+            TextEditorViewModel.EditorAction.GO_TO_DEFINITION -> {
+                val line = codeArea.currentParagraph
+                viewModel.goToDefinition(activeTab, line, codeArea.caretColumn, codeArea.getParagraph(line).text)
+            }
+            TextEditorViewModel.EditorAction.FIND_USAGES -> {
+                val line = codeArea.currentParagraph
+                viewModel.findUsages(activeTab, line, codeArea.caretColumn, codeArea.getParagraph(line).text)
+            }
+            TextEditorViewModel.EditorAction.FIND -> Unit
         }
         codeArea.requestFocus()
     }
@@ -0,0 +1,256 @@
+package io.github.frostzie.nodex.services
+
+import io.github.frostzie.nodex.features.editor.find.FindQuery
+import io.github.frostzie.nodex.features.editor.find.SearchCancelledException
+import io.github.frostzie.nodex.features.editor.find.TextMatcher
+import io.github.frostzie.nodex.utils.LoggerProvider
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.CharBuffer
+import java.nio.channels.ClosedByInterruptException
+import java.nio.channels.FileChannel
+import java.nio.charset.CodingErrorAction
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Searches every file below a set of roots, e.g. all projects of the workspace.
+ *
+ * Each directory listing and each file is its own task on a virtual thread, so whole trees are walked and
+ * searched in parallel without sizing a pool, with only [MAX_OPEN_FILES] open at once. Files are read onto the heap,
+ * only those over [MAP_THRESHOLD_BYTES] are memory-mapped. A mapping is only released once it is garbage collected,
+ * and until then Windows keeps the file locked, so saving, renaming or deleting such a file right after a search can
+ * fail. Files with a known binary extension, files containing a NUL byte near their start and files over the size
+ * cap are skipped.
+ *
+ * Once the [SearchIndexService] has indexed a root, only the files its trigrams allow are searched there instead of
+ * walking the whole tree.
+ *
+ * Results are handed out per file from the worker threads as soon as each file is searched.
+ * Searches on disk contents, unsaved changes of open tabs are not included.
+ */
+object FindInFilesService {
+    private val logger = LoggerProvider.getLogger("FindInFilesService")
+
+    private val BINARY_EXTENSIONS = setOf(
+        "nbt", "mca", "mcr", "dat", "dat_old", "png", "jpg", "jpeg", "gif", "bmp", "ico", "webp",
+        "ogg", "mp3", "wav", "zip", "jar", "class", "mcstructure"
+    )
+    private const val SNIFF_BYTES = 8192
+    private const val MAX_OPEN_FILES = 32
+    private const val MAP_THRESHOLD_BYTES = 4L * 1024 * 1024
+    private const val MAX_MATCHES_PER_FILE = 1000
+    private const val MAX_LINE_PREVIEW = 200
+
+    /**
+     * A match at a 0 based [line] and [column] in characters, with the text of its line for display.
+     */
+    class Match(val line: Int, val column: Int, val length: Int, val lineText: String)
+
+    class FileResult(val path: Path, val matches: List<Match>, val truncated: Boolean)
+
+    class Summary(val searchedFiles: Int, val matchedFiles: Int, val matches: Int, val skippedFiles: Int)
+
+    /**
+     * A running search. [completion] completes with the summary once every file was searched,
+     * or exceptionally with a [java.util.concurrent.CancellationException] after [cancel].
+     */
+    class Search internal constructor(private val executor: ExecutorService) {
+        val completion = CompletableFuture<Summary>()
+
+        @Volatile
+        var isCancelled = false
+            private set
+
+        fun cancel() {
+            if (isCancelled) return
+            isCancelled = true
+            completion.cancel(false)
+            // Interrupts the workers, which stops reading and regex matching
+            executor.shutdownNow()
+        }
+    }
+
+    /**
+     * Starts searching the files below [roots] for [query], skipping files over [maxFileBytes].
+     * [onResult] is called from worker threads for each file with at least one match.
+     *
+     * @throws java.util.regex.PatternSyntaxException for an invalid regex.
+     */
+    fun search(roots: List<Path>, query: FindQuery, maxFileBytes: Long, onResult: (FileResult) -> Unit): Search {
+        val matcher = TextMatcher.create(query)
+        val executor = Executors.newVirtualThreadPerTaskExecutor()
+        val search = Search(executor)
+        val openFiles = Semaphore(MAX_OPEN_FILES)
+
+        // Tasks submitted but not finished, the search is complete once it drops to zero
+        val pending = AtomicInteger()
+        val searched = AtomicInteger()
+        val matchedFiles = AtomicInteger()
+        val matches = AtomicInteger()
+        val skipped = AtomicInteger()
+
+        fun submit(task: () -> Unit) {
+            if (search.isCancelled) return
+            pending.incrementAndGet()
+            try {
+                executor.execute {
+                    try {
+                        if (!search.isCancelled) task()
+                    } finally {
+                        if (pending.decrementAndGet() == 0 && !search.isCancelled) {
+                            executor.shutdown()
+                            search.completion.complete(Summary(searched.get(), matchedFiles.get(), matches.get(), skipped.get()))
+                        }
+                    }
+                }
+            } catch (e: RejectedExecutionException) {
+                // Cancelled while submitting
+                pending.decrementAndGet()
+            }
+        }
+
+        fun searchEntry(path: Path, size: Long) {
+            if (size > maxFileBytes) {
+                skipped.incrementAndGet()
+                return
+            }
+            openFiles.acquire()
+            try {
+                val result = searchText(path, size, matcher, search) ?: run {
+                    skipped.incrementAndGet()
+                    return
+                }
+                searched.incrementAndGet()
+                if (result.matches.isNotEmpty()) {
+                    matchedFiles.incrementAndGet()
+                    matches.addAndGet(result.matches.size)
+                    onResult(result)
+                }
+            } catch (e: Exception) {
+                if (search.isCancelled || e is ClosedByInterruptException || e is SearchCancelledException) return
+                skipped.incrementAndGet()
+                logger.debug("Skipping unreadable file in search: {}", path, e)
+            } finally {
+                openFiles.release()
+            }
+        }
+
+        fun searchCandidate(path: Path) {
+            val attributes = try {
+                Files.readAttributes(path, BasicFileAttributes::class.java)
+            } catch (e: IOException) {
+                // Deleted since it was indexed
+                return
+            }
+            if (attributes.isRegularFile && !hasBinaryExtension(path)) searchEntry(path, attributes.size())
+        }
+
+        fun walk(directory: Path) {
+            try {
+                Files.newDirectoryStream(directory).use { entries ->
+                    for (entry in entries) {
+                        if (search.isCancelled) return
+                        val attributes = Files.readAttributes(entry, BasicFileAttributes::class.java)
+                        val name = entry.fileName.toString()
+                        when {
+                            // Hidden folders such as .git hold nothing worth searching
+                            attributes.isDirectory -> if (!name.startsWith(".")) submit { walk(entry) }
+                            !attributes.isRegularFile -> {}
+                            hasBinaryExtension(entry) -> skipped.incrementAndGet()
+                            else -> submit { searchEntry(entry, attributes.size()) }
+                        }
+                    }
+                }
+            } catch (e: Exception) {
+                if (!search.isCancelled) logger.warn("Failed to list $directory for search", e)
+            }
+        }
+
+        // Submitting the roots from a task keeps the search pending until all of them are, even without any roots
+        submit {
+            roots.distinct().filter { Files.isDirectory(it) }.forEach { root ->
+                val candidates = SearchIndexService.candidates(root, query)
+                if (candidates == null) {
+                    submit { walk(root) }
+                } else {
+                    candidates.forEach { path -> submit { searchCandidate(path) } }
+                }
+            }
+        }
+        return search
+    }
+
+    /**
+     * Searches one file, returns null if it looks binary.
+     */
+    private fun searchText(path: Path, size: Long, matcher: TextMatcher, search: Search): FileResult? {
+        if (size == 0L) return FileResult(path, emptyList(), false)
+        val buffer = if (size < MAP_THRESHOLD_BYTES) {
+            ByteBuffer.wrap(Files.readAllBytes(path))
+        } else {
+            FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            }
+        }
+        if (isBinary(buffer)) return null
+        val text = decode(buffer)
+
+        val matches = ArrayList<Match>()
+        var truncated = false
+        // Lines are counted while going through the matches in order, so the text is scanned once
+        var line = 0
+        var lineStart = 0
+        var scanned = 0
+        matcher.findAll(text) { start, end ->
+            if (search.isCancelled) return@findAll false
+            if (matches.size == MAX_MATCHES_PER_FILE) {
+                truncated = true
+                return@findAll false
+            }
+            while (scanned < start) {
+                if (text[scanned] == '\n') {
+                    line++
+                    lineStart = scanned + 1
+                }
+                scanned++
+            }
+            matches.add(Match(line, start - lineStart, end - start, linePreview(text, lineStart)))
+            true
+        }
+        return FileResult(path, matches, truncated)
+    }
+
+    internal fun hasBinaryExtension(path: Path): Boolean {
+        return path.fileName.toString().substringAfterLast('.', "").lowercase() in BINARY_EXTENSIONS
+    }
+
+    internal fun isBinary(buffer: ByteBuffer): Boolean {
+        for (i in 0 until minOf(buffer.limit(), SNIFF_BYTES)) {
+            if (buffer.get(i) == 0.toByte()) return true
+        }
+        return false
+    }
+
+    internal fun decode(buffer: ByteBuffer): CharBuffer {
+        return StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+            .decode(buffer)
+    }
+
+    private fun linePreview(text: CharBuffer, lineStart: Int): String {
+        var end = lineStart
+        while (end < text.length && end - lineStart < MAX_LINE_PREVIEW && text[end] != '\n' && text[end] != '\r') end++
+        return text.subSequence(lineStart, end).toString()
+    }
+}
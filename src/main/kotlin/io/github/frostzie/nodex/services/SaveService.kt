@@ -0,0 +1,166 @@
+package io.github.frostzie.nodex.services
+
+import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.events.FileSaved
+import io.github.frostzie.nodex.project.WorkspaceManager
+import io.github.frostzie.nodex.utils.LoggerProvider
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.FileTime
+import java.security.MessageDigest
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+
+/**
+ * Writes files in the background.
+ *
+ * Each save goes to a temporary file next to the target, which is flushed to the disk and then renamed over it, so
+ * a crash or a full disk never leaves a half-written file behind. The target's POSIX permissions are copied to the
+ * new file and symlinks are resolved first, so the link stays in place. The owner and other attributes, e.g.
+ * Windows ACLs, are those of a new file in that folder. Saves of the same path run one after another, and a save requested while
+ * another is still waiting replaces its content, the replaced one then completes as [SaveResult.SUPERSEDED] once
+ * the newer content is written. Different paths are written concurrently.
+ *
+ * The hash of what was last written or found on disk is remembered per path, so a save of identical content is
+ * skipped without touching the file, which would otherwise fire watcher events and reloads for nothing.
+ */
+object SaveService {
+    private val logger = LoggerProvider.getLogger("SaveService")
+
+    enum class SaveResult {
+        WRITTEN,
+        UNCHANGED,
+        // Replaced by a later save of the same path before it was written, which reports the outcome
+        SUPERSEDED
+    }
+
+    private class PendingSave(val content: String, val result: CompletableFuture<SaveResult>) {
+        val superseded = ArrayList<CompletableFuture<SaveResult>>()
+    }
+
+    // What is known to be on disk, only trusted while the file's size and modification time are unchanged
+    private class DiskState(val digest: ByteArray, val size: Long, val modified: FileTime)
+
+    private val executor = Executors.newVirtualThreadPerTaskExecutor()
+    private val lock = Any()
+    private val pending = HashMap<Path, PendingSave>()
+    private val running = HashSet<Path>()
+    private val diskStates = ConcurrentHashMap<Path, DiskState>()
+
+    /**
+     * Queues [content] to be written to [path], completing with whether it was written or already on disk, or
+     * with [SaveResult.SUPERSEDED] when a later save of the same path replaced it before it was written.
+     */
+    fun save(path: Path, content: String): CompletableFuture<SaveResult> {
+        synchronized(lock) {
+            val save = PendingSave(content, CompletableFuture())
+            pending.put(path, save)?.let { waiting ->
+                save.superseded.addAll(waiting.superseded)
+                save.superseded.add(waiting.result)
+            }
+            if (running.add(path)) {
+                executor.execute { drain(path) }
+            }
+            return save.result
+        }
+    }
+
+    private fun drain(path: Path) {
+        while (true) {
+            val save = synchronized(lock) {
+                pending.remove(path) ?: run {
+                    running.remove(path)
+                    return
+                }
+            }
+            try {
+                val result = write(path, save.content)
+                save.superseded.forEach { it.complete(SaveResult.SUPERSEDED) }
+                save.result.complete(result)
+            } catch (e: Exception) {
+                logger.error("Failed to save file: $path", e)
+                save.superseded.forEach { it.complete(SaveResult.SUPERSEDED) }
+                save.result.completeExceptionally(e)
+            }
+        }
+    }
+
+    private fun write(path: Path, content: String): SaveResult {
+        // Safety guard: Never try to write content to a directory path
+        if (Files.isDirectory(path)) throw IOException("Attempted to save to a directory path: $path")
+
+        val bytes = content.toByteArray(Charsets.UTF_8)
+        val digest = MessageDigest.getInstance("SHA-256").digest(bytes)
+
+        if (isOnDisk(path, bytes, digest)) {
+            logger.debug("Skipped saving unchanged file: {}", path.fileName)
+            return SaveResult.UNCHANGED
+        }
+
+        // Renaming over a symlink would replace the link, so the file it points to is replaced instead
+        val target = try {
+            path.toRealPath()
+        } catch (_: NoSuchFileException) {
+            path
+        }
+        val temp = target.resolveSibling(".${target.fileName}.${System.nanoTime()}.tmp")
+        WorkspaceManager.ignoreWatcherPath(temp)
+        WorkspaceManager.ignoreWatcherPath(path)
+        if (target != path) WorkspaceManager.ignoreWatcherPath(target)
+        try {
+            FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).use { channel ->
+                val buffer = ByteBuffer.wrap(bytes)
+                while (buffer.hasRemaining()) channel.write(buffer)
+                // On the disk before the rename, or a crash could leave the renamed file empty
+                channel.force(true)
+            }
+            copyPermissions(target, temp)
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            } catch (_: AtomicMoveNotSupportedException) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING)
+            }
+        } finally {
+            Files.deleteIfExists(temp)
+        }
+
+        diskStates[path] = DiskState(digest, bytes.size.toLong(), Files.getLastModifiedTime(path))
+        logger.debug("File saved: {} ({} bytes)", path.fileName, bytes.size)
+        EventBus.post(FileSaved(path))
+        return SaveResult.WRITTEN
+    }
+
+    private fun copyPermissions(from: Path, to: Path) {
+        if (!Files.exists(from)) return
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from))
+        } catch (_: UnsupportedOperationException) {
+            // Not a POSIX file system, the new file gets the folder's defaults
+        }
+    }
+
+    private fun isOnDisk(path: Path, bytes: ByteArray, digest: ByteArray): Boolean {
+        if (!Files.exists(path)) return false
+        val size = Files.size(path)
+        if (size != bytes.size.toLong()) return false
+        val modified = Files.getLastModifiedTime(path)
+
+        val known = diskStates[path]
+        if (known != null && known.size == size && known.modified == modified) {
+            return known.digest.contentEquals(digest)
+        }
+
+        // Unknown or changed outside the app, compare with the actual content once
+        val diskDigest = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(path))
+        diskStates[path] = DiskState(diskDigest, size, modified)
+        return diskDigest.contentEquals(digest)
+    }
+}
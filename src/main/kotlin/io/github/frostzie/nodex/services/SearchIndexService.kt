@@ -0,0 +1,387 @@
+package io.github.frostzie.nodex.services
+
+import io.github.frostzie.nodex.config.ConfigManager
+import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.events.FileCreated
+import io.github.frostzie.nodex.events.FileDeleted
+import io.github.frostzie.nodex.events.FileModified
+import io.github.frostzie.nodex.events.FileMoved
+import io.github.frostzie.nodex.events.FileSaved
+import io.github.frostzie.nodex.events.WorkspaceUpdated
+import io.github.frostzie.nodex.features.editor.find.FindQuery
+import io.github.frostzie.nodex.features.search.TrigramIndex
+import io.github.frostzie.nodex.features.search.Trigrams
+import io.github.frostzie.nodex.project.Workspace
+import io.github.frostzie.nodex.project.WorkspaceManager
+import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
+import io.github.frostzie.nodex.settings.categories.MainConfig
+import io.github.frostzie.nodex.utils.LoggerProvider
+import io.github.frostzie.nodex.utils.file.FileSystemUpdate
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.FileVisitResult
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.SimpleFileVisitor
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.security.MessageDigest
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.io.path.invariantSeparatorsPathString
+
+/**
+ * Keeps a [TrigramIndex] of every project in the workspace, so find in files only searches the files that can match.
+ *
+ * Nothing is indexed until the IDE window is first shown or the workspace changes, so playing without ever opening
+ * the IDE costs nothing. Each index is stored under the config directory and loaded when its project opens, files
+ * are read onto the heap rather than mapped so none stay locked after indexing. Files whose size or
+ * modification time changed since are indexed again in the background, and until that is done queries are not
+ * narrowed at all. Afterwards the index follows the file watcher and the editor's own saves, one path at a time.
+ * Paths with an update still queued are always candidates, so a query never misses a change the index has not
+ * caught up with yet.
+ */
+object SearchIndexService {
+    private val logger = LoggerProvider.getLogger("SearchIndexService")
+    private val indexDir get() = ConfigManager.configDir.resolve("index")
+
+    private const val FORMAT = 0x4E445854 // "NDXT"
+    private const val VERSION = 1
+    private const val MAX_OPEN_FILES = 32
+    private const val SAVE_DELAY_SECONDS = 10L
+
+    /**
+     * Totals over the indexes of the workspace, for the debug display.
+     */
+    class Stats(
+        val indexes: Int,
+        val building: Int,
+        val files: Int,
+        val trigrams: Int,
+        val diskBytes: Long,
+        val buildMillis: Long,
+        val lastQueryMicros: Long,
+        val lastCandidates: Int
+    )
+
+    private class RootIndex(val root: Path) {
+        // Null until loaded and brought up to date with the disk
+        @Volatile var index: TrigramIndex? = null
+        @Volatile var buildMillis = 0L
+        @Volatile var diskBytes = 0L
+        @Volatile var isClosed = false
+        // Paths with an update not applied yet, with a count so one queued while applying is not lost
+        val pending = ConcurrentHashMap<Path, Long>()
+        val isDraining = AtomicBoolean(false)
+        var scheduledSave: ScheduledFuture<*>? = null
+    }
+
+    private val indexes = ConcurrentHashMap<Path, RootIndex>()
+    private val executor = Executors.newVirtualThreadPerTaskExecutor()
+    private val scheduler = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "Nodex-SearchIndex").apply { isDaemon = true }
+    }
+
+    @Volatile private var lastQueryMicros = 0L
+    @Volatile private var lastCandidates = 0
+    @Volatile private var isStarted = false
+
+    fun initialize() {
+        EventBus.register(this)
+    }
+
+    /**
+     * Starts indexing the open workspace, called when the IDE window is shown.
+     */
+    fun start() {
+        if (!isStarted) sync(WorkspaceManager.workspace)
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onWorkspaceUpdated(event: WorkspaceUpdated) {
+        sync(event.workspace)
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onFileModified(event: FileModified) = queue(event.path)
+
+    @SubscribeEvent @Suppress("unused")
+    fun onFileCreated(event: FileCreated) = queue(event.path)
+
+    @SubscribeEvent @Suppress("unused")
+    fun onFileDeleted(event: FileDeleted) = queue(event.path)
+
+    @SubscribeEvent @Suppress("unused")
+    fun onFileMoved(event: FileMoved) {
+        queue(event.oldPath)
+        queue(event.newPath)
+    }
+
+    // The watcher ignores the editor's own saves
+    @SubscribeEvent @Suppress("unused")
+    fun onFileSaved(event: FileSaved) = queue(event.path)
+
+    // Catches up on anything the events above missed, e.g. files created inside a folder that was moved in
+    @SubscribeEvent @Suppress("unused")
+    fun onFileSystemUpdate(event: FileSystemUpdate) = event.topDirectories.forEach { queue(it) }
+
+    /**
+     * The files below [root] that can contain matches of [query], or null if the index cannot narrow them down,
+     * because it is still being built or the query has no trigrams to look for.
+     */
+    fun candidates(root: Path, query: FindQuery): List<Path>? {
+        val rootIndex = indexes[root] ?: return null
+        val index = rootIndex.index ?: return null
+        val trigrams = Trigrams.required(query)
+        if (trigrams.isEmpty()) return null
+
+        val started = System.nanoTime()
+        val candidates = LinkedHashSet<Path>()
+        index.query(trigrams).mapTo(candidates) { root.resolve(it) }
+        rootIndex.pending.keys.forEach { path ->
+            if (Files.isDirectory(path)) {
+                // Queued directories are reconciled as a whole, nothing below them can be trusted yet
+                return null
+            }
+            candidates.add(path)
+        }
+        lastQueryMicros = (System.nanoTime() - started) / 1000
+        lastCandidates = candidates.size
+        return candidates.toList()
+    }
+
+    fun stats(): Stats {
+        val open = indexes.values.toList()
+        val ready = open.mapNotNull { it.index }
+        return Stats(
+            indexes = open.size,
+            building = open.size - ready.size,
+            files = ready.sumOf { it.fileCount },
+            trigrams = ready.sumOf { it.trigramCount },
+            diskBytes = open.sumOf { it.diskBytes },
+            buildMillis = open.sumOf { it.buildMillis },
+            lastQueryMicros = lastQueryMicros,
+            lastCandidates = lastCandidates
+        )
+    }
+
+    @Synchronized
+    private fun sync(workspace: Workspace) {
+        isStarted = true
+        val roots = workspace.projects.flatMap { listOf(it.path) + it.additionalPaths }.distinct().filter { Files.isDirectory(it) }
+        indexes.keys.filter { it !in roots }.forEach { root ->
+            indexes.remove(root)?.let { close(it) }
+        }
+        roots.filter { !indexes.containsKey(it) }.forEach { root ->
+            val rootIndex = RootIndex(root)
+            indexes[root] = rootIndex
+            executor.execute { open(rootIndex) }
+        }
+    }
+
+    private fun open(rootIndex: RootIndex) {
+        val started = System.currentTimeMillis()
+        val index = load(rootIndex.root) ?: TrigramIndex()
+        val loaded = index.fileCount
+        try {
+            reconcile(rootIndex, index, rootIndex.root, parallel = true)
+        } catch (e: Exception) {
+            logger.error("Failed to index ${rootIndex.root}", e)
+            return
+        }
+        if (rootIndex.isClosed) return
+        rootIndex.buildMillis = System.currentTimeMillis() - started
+        rootIndex.index = index
+        logger.info("Search index of ${rootIndex.root.fileName} ready in ${rootIndex.buildMillis} ms: ${index.fileCount} files, $loaded loaded from disk")
+        save(rootIndex)
+        drainLater(rootIndex)
+    }
+
+    private fun close(rootIndex: RootIndex) {
+        rootIndex.isClosed = true
+        synchronized(rootIndex) { rootIndex.scheduledSave?.cancel(false) }
+        if (rootIndex.index != null) executor.execute { save(rootIndex) }
+    }
+
+    private fun queue(path: Path) {
+        indexes.values.filter { path.startsWith(it.root) }.forEach { rootIndex ->
+            rootIndex.pending.merge(path, 1L, Long::plus)
+            drainLater(rootIndex)
+        }
+    }
+
+    private fun drainLater(rootIndex: RootIndex) {
+        if (rootIndex.isClosed || rootIndex.index == null || rootIndex.pending.isEmpty()) return
+        if (rootIndex.isDraining.compareAndSet(false, true)) executor.execute { drain(rootIndex) }
+    }
+
+    /**
+     * Applies the queued updates one after another, as two updates of the same path must not race.
+     */
+    private fun drain(rootIndex: RootIndex) {
+        val index = rootIndex.index ?: return
+        while (!rootIndex.isClosed) {
+            val (path, count) = rootIndex.pending.entries.firstOrNull()?.let { it.key to it.value } ?: break
+            try {
+                reconcile(rootIndex, index, path, parallel = false)
+            } catch (e: Exception) {
+                logger.warn("Failed to update search index for $path", e)
+            }
+            rootIndex.pending.remove(path, count)
+        }
+        rootIndex.isDraining.set(false)
+        scheduleSave(rootIndex)
+        // An update queued after the loop found none left would otherwise wait for the next one
+        drainLater(rootIndex)
+    }
+
+    /**
+     * Brings the entries at or below [path] up to date with the disk, indexing every file whose size or
+     * modification time changed and dropping those that are gone.
+     */
+    private fun reconcile(rootIndex: RootIndex, index: TrigramIndex, path: Path, parallel: Boolean) {
+        val root = rootIndex.root
+        val relative = root.relativize(path).invariantSeparatorsPathString
+        if (relative.split('/').dropLast(1).any { it.startsWith(".") }) return
+
+        val attributes = try {
+            Files.readAttributes(path, BasicFileAttributes::class.java)
+        } catch (_: NoSuchFileException) {
+            null
+        }
+        when {
+            attributes == null -> index.removeUnder(relative)
+            attributes.isRegularFile -> indexFile(index, path, relative, attributes)
+            !attributes.isDirectory -> index.removeUnder(relative)
+            else -> {
+                val files = HashMap<String, Pair<Path, BasicFileAttributes>>()
+                // Walks the same files find in files would search
+                Files.walkFileTree(path, object : SimpleFileVisitor<Path>() {
+                    override fun preVisitDirectory(dir: Path, attrs: BasicFileAttributes): FileVisitResult {
+                        if (rootIndex.isClosed) return FileVisitResult.TERMINATE
+                        return if (dir != root && dir.fileName.toString().startsWith(".")) {
+                            FileVisitResult.SKIP_SUBTREE
+                        } else {
+                            FileVisitResult.CONTINUE
+                        }
+                    }
+
+                    override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
+                        if (attrs.isRegularFile) files[root.relativize(file).invariantSeparatorsPathString] = file to attrs
+                        return FileVisitResult.CONTINUE
+                    }
+
+                    override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult {
+                        return FileVisitResult.CONTINUE
+                    }
+                })
+
+                // Removed in one pass, as removeUnder scans every entry
+                index.remove(index.entriesUnder(relative).map { it.path }.filter { it !in files })
+                val changed = files.filter { (key, value) ->
+                    val entry = index.get(key)
+                    entry == null || entry.size != value.second.size() || entry.modified != value.second.lastModifiedTime().toMillis()
+                }
+                if (!parallel) {
+                    changed.forEach { (key, value) -> indexFile(index, value.first, key, value.second) }
+                    return
+                }
+                val openFiles = Semaphore(MAX_OPEN_FILES)
+                val tasks = changed.map { (key, value) ->
+                    Callable {
+                        openFiles.acquire()
+                        try {
+                            if (!rootIndex.isClosed) indexFile(index, value.first, key, value.second)
+                        } finally {
+                            openFiles.release()
+                        }
+                    }
+                }
+                Executors.newVirtualThreadPerTaskExecutor().use { workers -> workers.invokeAll(tasks) }
+            }
+        }
+    }
+
+    private fun indexFile(index: TrigramIndex, path: Path, relative: String, attributes: BasicFileAttributes) {
+        if (FindInFilesService.hasBinaryExtension(path)) {
+            index.removeUnder(relative)
+            return
+        }
+        val size = attributes.size()
+        val modified = attributes.lastModifiedTime().toMillis()
+        val trigrams = if (size > MainConfig.findInFilesMaxFileSizeKb.get() * 1024L) null else try {
+            val buffer = ByteBuffer.wrap(Files.readAllBytes(path))
+            // Binary files are never searched, so they cannot match anything
+            if (FindInFilesService.isBinary(buffer)) IntArray(0) else Trigrams.of(FindInFilesService.decode(buffer))
+        } catch (e: Exception) {
+            logger.debug("Could not index {}", path, e)
+            null
+        }
+        index.put(TrigramIndex.Entry(relative, size, modified, trigrams))
+    }
+
+    private fun storeFile(root: Path): Path {
+        val hash = MessageDigest.getInstance("MD5")
+            .digest(root.toAbsolutePath().toString().toByteArray(Charsets.UTF_8))
+            .joinToString("") { "%02x".format(it) }
+        return indexDir.resolve("$hash.idx")
+    }
+
+    private fun load(root: Path): TrigramIndex? {
+        val file = storeFile(root)
+        if (!Files.exists(file)) return null
+        return try {
+            DataInputStream(BufferedInputStream(Files.newInputStream(file))).use { input ->
+                if (input.readInt() != FORMAT || input.readInt() != VERSION || input.readUTF() != root.toAbsolutePath().toString()) {
+                    return null
+                }
+                TrigramIndex.read(input)
+            }
+        } catch (e: Exception) {
+            logger.warn("Discarding unreadable search index of $root", e)
+            null
+        }
+    }
+
+    private fun scheduleSave(rootIndex: RootIndex) {
+        synchronized(rootIndex) {
+            if (rootIndex.isClosed || rootIndex.scheduledSave?.isDone == false) return
+            rootIndex.scheduledSave = scheduler.schedule({ save(rootIndex) }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS)
+        }
+    }
+
+    private fun save(rootIndex: RootIndex) {
+        val index = rootIndex.index ?: return
+        val file = storeFile(rootIndex.root)
+        val temp = file.resolveSibling("${file.fileName}.tmp")
+        try {
+            Files.createDirectories(indexDir)
+            DataOutputStream(BufferedOutputStream(Files.newOutputStream(temp))).use { output ->
+                output.writeInt(FORMAT)
+                output.writeInt(VERSION)
+                output.writeUTF(rootIndex.root.toAbsolutePath().toString())
+                index.write(output)
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            } catch (_: AtomicMoveNotSupportedException) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING)
+            }
+            rootIndex.diskBytes = Files.size(file)
+        } catch (e: Exception) {
+            logger.warn("Failed to save search index of ${rootIndex.root}", e)
+            Files.deleteIfExists(temp)
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package io.github.frostzie.nodex.services
+
+import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.events.FileCreated
+import io.github.frostzie.nodex.events.FileDeleted
+import io.github.frostzie.nodex.events.FileModified
+import io.github.frostzie.nodex.events.FileMoved
+import io.github.frostzie.nodex.events.FileSaved
+import io.github.frostzie.nodex.events.SymbolIndexUpdated
+import io.github.frostzie.nodex.events.WorkspaceUpdated
+import io.github.frostzie.nodex.project.Workspace
+import io.github.frostzie.nodex.project.WorkspaceManager
+import io.github.frostzie.nodex.project.symbols.DatapackSymbols
+import io.github.frostzie.nodex.project.symbols.FileSymbols
+import io.github.frostzie.nodex.project.symbols.Occurrence
+import io.github.frostzie.nodex.project.symbols.Symbol
+import io.github.frostzie.nodex.project.symbols.SymbolIndex
+import io.github.frostzie.nodex.project.symbols.SymbolLocation
+import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
+import io.github.frostzie.nodex.utils.LoggerProvider
+import io.github.frostzie.nodex.utils.file.FileSystemUpdate
+import java.io.IOException
+import java.nio.file.FileVisitResult
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.SimpleFileVisitor
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Keeps a [SymbolIndex] of the `data` folders of every project in the workspace, for go to definition,
+ * find usages and unknown reference diagnostics.
+ *
+ * The index lives in memory only. It is built once the IDE window is first shown or the workspace changes, reading
+ * all files in parallel, and then follows the file watcher and the editor's own saves, re-reading one file at a
+ * time. [SymbolIndexUpdated] is posted from a background thread whenever it changed.
+ */
+object SymbolIndexService {
+    private val logger = LoggerProvider.getLogger("SymbolIndexService")
+
+    private val index = SymbolIndex()
+    // Size and modification time of every indexed file, so a reconcile only reads the files that changed
+    private val fingerprints = ConcurrentHashMap<Path, Pair<Long, Long>>()
+    private val dataFolders = ConcurrentHashMap.newKeySet<Path>()
+
+    private val executor = Executors.newVirtualThreadPerTaskExecutor()
+    // Paths with an update not applied yet, with a count so one queued while applying is not lost
+    private val pending = ConcurrentHashMap<Path, Long>()
+    private val isDraining = AtomicBoolean(false)
+    @Volatile private var isStarted = false
+
+    fun initialize() {
+        EventBus.register(this)
+    }
+
+    /**
+     * Starts indexing the open workspace, called when the IDE window is shown.
+     */
+    fun start() {
+        if (!isStarted) sync(WorkspaceManager.workspace)
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onWorkspaceUpdated(event: WorkspaceUpdated) {
+        sync(event.workspace)
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onFileModified(event: FileModified) = queue(event.path)
+
+    @SubscribeEvent @Suppress("unused")
+    fun onFileCreated(event: FileCreated) = queue(event.path)
+
+    @SubscribeEvent @Suppress("unused")
+    fun onFileDeleted(event: FileDeleted) = queue(event.path)
+
+    @SubscribeEvent @Suppress("unused")
+    fun onFileMoved(event: FileMoved) {
+        queue(event.oldPath)
+        queue(event.newPath)
+    }
+
+    // The watcher ignores the editor's own saves
+    @SubscribeEvent @Suppress("unused")
+    fun onFileSaved(event: FileSaved) = queue(event.path)
+
+    // Catches up on anything the events above missed, e.g. files created inside a folder that was moved in
+    @SubscribeEvent @Suppress("unused")
+    fun onFileSystemUpdate(event: FileSystemUpdate) {
+        for (directory in event.topDirectories) {
+            for (folder in dataFolders) {
+                when {
+                    directory.startsWith(folder) -> queue(directory)
+                    folder.startsWith(directory) -> queue(folder)
+                }
+            }
+        }
+    }
+
+    fun definitions(symbol: Symbol): List<SymbolLocation> = index.definitions(symbol)
+
+    fun references(symbol: Symbol): List<SymbolLocation> = index.references(symbol)
+
+    /**
+     * Whether [symbol] is referenced but defined nowhere in the workspace. Resources of the `minecraft`
+     * namespace are only reported for functions, as the game itself provides the others.
+     */
+    fun isUnknown(symbol: Symbol): Boolean {
+        val checked = symbol.kind == Symbol.FUNCTION || symbol.kind == Symbol.OBJECTIVE || symbol.kind == Symbol.STORAGE ||
+            !symbol.id.startsWith("minecraft:")
+        return checked && !index.isDefined(symbol)
+    }
+
+    /**
+     * The symbol at a 0 based [line] and [column] of [path], read from [lineText] for functions, so it does not
+     * depend on the index having seen unsaved edits. Otherwise falls back to the references the index knows for
+     * that position, and then to what the file itself defines.
+     */
+    fun symbolAt(path: Path, line: Int, column: Int, lineText: String): Symbol? {
+        if (path.fileName.toString().endsWith(".mcfunction")) {
+            val occurrences = ArrayList<Occurrence>()
+            DatapackSymbols.readCommand(lineText, line, occurrences, occurrences)
+            occurrences.firstOrNull { column >= it.column && column <= it.column + it.length }?.let { return it.symbol }
+        }
+        index.referencedIn(path).firstOrNull { (_, location) ->
+            location.line == line && column >= location.column && column <= location.column + location.length
+        }?.let { return it.first }
+        return index.definedIn(path).firstOrNull()?.first
+    }
+
+    /**
+     * Reads [text] as the content of [path], without indexing it, e.g. for diagnostics of unsaved edits.
+     */
+    fun read(path: Path, text: String): FileSymbols? {
+        val dataFolder = dataFolders.firstOrNull { path.startsWith(it) } ?: return null
+        return DatapackSymbols.read(definedBy(dataFolder, path), path.fileName.toString(), text)
+    }
+
+    @Synchronized
+    private fun sync(workspace: Workspace) {
+        isStarted = true
+        val folders = workspace.projects.flatMap { listOf(it.path) + it.additionalPaths }
+            .map { it.resolve("data") }.distinct().filter { Files.isDirectory(it) }
+        dataFolders.filter { it !in folders }.forEach { folder ->
+            dataFolders.remove(folder)
+            queue(folder)
+        }
+        folders.filter { dataFolders.add(it) }.forEach { folder ->
+            executor.execute { build(folder) }
+        }
+    }
+
+    private fun build(folder: Path) {
+        val started = System.currentTimeMillis()
+        try {
+            reconcile(folder, parallel = true)
+        } catch (e: Exception) {
+            logger.error("Failed to index symbols of $folder", e)
+            return
+        }
+        logger.info("Symbol index of ${folder.parent.fileName} built in ${System.currentTimeMillis() - started} ms: ${index.symbolCount} symbols in ${index.fileCount} files")
+        EventBus.post(SymbolIndexUpdated())
+    }
+
+    private fun queue(path: Path) {
+        pending.merge(path, 1L, Long::plus)
+        if (isDraining.compareAndSet(false, true)) executor.execute { drain() }
+    }
+
+    /**
+     * Applies the queued updates one after another, as two updates of the same path must not race.
+     */
+    private fun drain() {
+        while (true) {
+            val (path, count) = pending.entries.firstOrNull()?.let { it.key to it.value } ?: break
+            try {
+                reconcile(path, parallel = false)
+            } catch (e: Exception) {
+                logger.warn("Failed to update symbol index for $path", e)
+            }
+            pending.remove(path, count)
+        }
+        isDraining.set(false)
+        EventBus.post(SymbolIndexUpdated())
+        // An update queued after the loop found none left would otherwise wait for the next one
+        if (pending.isNotEmpty() && isDraining.compareAndSet(false, true)) executor.execute { drain() }
+    }
+
+    /**
+     * Brings the symbols at or below [path] up to date with the disk, reading every file whose size or
+     * modification time changed and dropping those that are gone or no longer in a data folder of the workspace.
+     */
+    private fun reconcile(path: Path, parallel: Boolean) {
+        val dataFolder = dataFolders.firstOrNull { path.startsWith(it) }
+        val attributes = try {
+            if (dataFolder == null) null else Files.readAttributes(path, BasicFileAttributes::class.java)
+        } catch (_: NoSuchFileException) {
+            null
+        }
+        when {
+            dataFolder == null || attributes == null || !(attributes.isDirectory || attributes.isRegularFile) -> {
+                index.removeUnder(path)
+                fingerprints.keys.removeIf { it.startsWith(path) }
+            }
+            attributes.isRegularFile -> readFile(dataFolder, path, attributes)
+            else -> {
+                val files = HashMap<Path, BasicFileAttributes>()
+                Files.walkFileTree(path, object : SimpleFileVisitor<Path>() {
+                    override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
+                        if (attrs.isRegularFile && isSymbolFile(file)) files[file] = attrs
+                        return FileVisitResult.CONTINUE
+                    }
+
+                    override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult = FileVisitResult.CONTINUE
+                })
+                fingerprints.keys.filter { it.startsWith(path) && it !in files }.forEach {
+                    index.remove(it)
+                    fingerprints.remove(it)
+                }
+                val changed = files.filter { (file, attrs) -> fingerprints[file] != fingerprint(attrs) }
+                if (parallel) {
+                    Executors.newVirtualThreadPerTaskExecutor().use { workers ->
+                        workers.invokeAll(changed.map { (file, attrs) -> Callable { readFile(dataFolder, file, attrs) } })
+                    }
+                } else {
+                    changed.forEach { (file, attrs) -> readFile(dataFolder, file, attrs) }
+                }
+            }
+        }
+    }
+
+    private fun readFile(dataFolder: Path, path: Path, attributes: BasicFileAttributes) {
+        if (!isSymbolFile(path)) return
+        try {
+            val text = Files.readString(path)
+            val symbols = DatapackSymbols.read(definedBy(dataFolder, path), path.fileName.toString(), text)
+            index.update(path, symbols, text.lines())
+            fingerprints[path] = fingerprint(attributes)
+        } catch (e: Exception) {
+            logger.debug("Could not read symbols of {}", path, e)
+            index.remove(path)
+            fingerprints.remove(path)
+        }
+    }
+
+    private fun definedBy(dataFolder: Path, path: Path): Symbol? {
+        return DatapackSymbols.definedBy(dataFolder.relativize(path).map { it.toString() })
+    }
+
+    /**
+     * Whether [path] is a datapack file inside a data folder of the workspace, the only ones [read] finds symbols in.
+     */
+    fun covers(path: Path): Boolean = isSymbolFile(path) && dataFolders.any { path.startsWith(it) }
+
+    /**
+     * Whether [path] is a kind of file that can hold symbols, wherever it is.
+     */
+    fun isSymbolFile(path: Path): Boolean {
+        val name = path.fileName.toString()
+        return name.endsWith(".mcfunction") || name.endsWith(".json")
+    }
+
+    private fun fingerprint(attributes: BasicFileAttributes) = attributes.size() to attributes.lastModifiedTime().toMillis()
+}
@@ -0,0 +1,313 @@
+package io.github.frostzie.nodex.services
+
+import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.events.FileCreated
+import io.github.frostzie.nodex.events.FileDeleted
+import io.github.frostzie.nodex.events.FileMoved
+import io.github.frostzie.nodex.events.WorkspaceUpdated
+import io.github.frostzie.nodex.features.search.FuzzyScorer
+import io.github.frostzie.nodex.project.Workspace
+import io.github.frostzie.nodex.project.WorkspaceManager
+import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
+import io.github.frostzie.nodex.utils.LoggerProvider
+import io.github.frostzie.nodex.utils.file.FileSystemUpdate
+import java.io.IOException
+import java.nio.file.FileVisitResult
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.SimpleFileVisitor
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import kotlin.io.path.invariantSeparatorsPathString
+
+/**
+ * Every file path of the workspace, kept in memory for go to file.
+ *
+ * The paths are walked in the background once the IDE window is first shown or the workspace changes, and then
+ * follow the file watcher, so a query never touches the disk. Each path is stored with what [FuzzyScorer] needs of
+ * it worked out, which is all [search] needs to rank the whole workspace on every keystroke.
+ */
+object WorkspacePathIndex {
+    private val logger = LoggerProvider.getLogger("WorkspacePathIndex")
+
+    // Recently opened files rank above equal matches, the most recent one by this much
+    private const val RECENT_BOOST = 40
+
+    /**
+     * An indexed file, shown as [display]: the name of its project or folder and its path inside it.
+     */
+    class Entry(val path: Path, val display: String) {
+        val lower = CharArray(display.length) { FuzzyScorer.lower(display[it]) }
+        val bonuses = FuzzyScorer.bonuses(display)
+        val mask = FuzzyScorer.mask(lower)
+    }
+
+    /**
+     * The entries packed into flat arrays, which a query reads front to back instead of following a reference
+     * per entry. Packed again by the first query after a change, which is mostly copying.
+     */
+    private class Snapshot(val entries: Array<Entry>) {
+        val starts = IntArray(entries.size + 1)
+        val nameStarts = IntArray(entries.size)
+        val masks = LongArray(entries.size) { entries[it].mask }
+        val chars: CharArray
+        val bonuses: ByteArray
+
+        init {
+            for (index in entries.indices) starts[index + 1] = starts[index] + entries[index].display.length
+            chars = CharArray(starts[entries.size])
+            bonuses = ByteArray(starts[entries.size])
+            for ((index, entry) in entries.withIndex()) {
+                System.arraycopy(entry.lower, 0, chars, starts[index], entry.lower.size)
+                System.arraycopy(entry.bonuses, 0, bonuses, starts[index], entry.bonuses.size)
+                nameStarts[index] = starts[index] + entry.display.lastIndexOf('/') + 1
+            }
+        }
+    }
+
+    class Match(val entry: Entry, val score: Int)
+
+    // In the order added, so a walked folder's entries stay next to each other in memory
+    private val entries = LinkedHashMap<Path, Entry>()
+    @Volatile
+    private var snapshot: Snapshot? = null
+    // Every workspace folder with the name its paths are shown under
+    @Volatile
+    private var roots: Map<Path, String> = emptyMap()
+
+    // Indices into the snapshot of the paths the last query matched
+    private var candidates = IntArray(0)
+    private var candidateCount = 0
+    private var candidatesOf: Snapshot? = null
+    private var candidatesQuery = CharArray(0)
+
+    // Folders whose changed entries the events above already applied, since the last file system update.
+    // Only touched on the executor.
+    private val handledDirectories = HashSet<Path>()
+
+    // One thread, so walks and watcher updates apply in the order they came in
+    private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "Nodex-PathIndex").apply { isDaemon = true }
+    }
+
+    @Volatile
+    private var isStarted = false
+
+    fun initialize() {
+        EventBus.register(this)
+    }
+
+    /**
+     * Starts walking the open workspace, called when the IDE window is shown.
+     */
+    fun start() {
+        if (!isStarted) sync(WorkspaceManager.workspace)
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onWorkspaceUpdated(event: WorkspaceUpdated) {
+        sync(event.workspace)
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onFileCreated(event: FileCreated) {
+        executor.execute { reconcileEntry(event.path) }
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onFileDeleted(event: FileDeleted) {
+        executor.execute { reconcileEntry(event.path) }
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onFileMoved(event: FileMoved) {
+        executor.execute {
+            reconcileEntry(event.oldPath)
+            reconcileEntry(event.newPath)
+        }
+    }
+
+    // Catches up on anything the events above missed, e.g. a lost track of changes. Folders that only had file
+    // contents change, or whose changes the events above covered, are not walked again.
+    @SubscribeEvent @Suppress("unused")
+    fun onFileSystemUpdate(event: FileSystemUpdate) {
+        executor.execute {
+            val directories = if (event.overflowed) {
+                event.topDirectories
+            } else {
+                val changed = event.entryDirectories - handledDirectories
+                changed.filter { directory -> changed.none { it != directory && directory.startsWith(it) } }
+            }
+            handledDirectories.clear()
+            for (directory in directories) {
+                if (rootOf(directory) != null) {
+                    reconcile(directory)
+                } else {
+                    roots.keys.filter { it.startsWith(directory) }.forEach { reconcile(it) }
+                }
+            }
+        }
+    }
+
+    val size: Int
+        get() = synchronized(entries) { entries.size }
+
+    /**
+     * The [limit] best matches of [text], best first. Files in [recent], most recent first, get a boost, and
+     * are all there is to show for an empty query.
+     *
+     * While a query is typed, every query extends the one before, which only the paths that matched before
+     * can match, so only those are scored again.
+     */
+    @Synchronized
+    fun search(text: String, limit: Int, recent: List<Path> = emptyList()): List<Match> {
+        if (limit <= 0) return emptyList()
+        val query = FuzzyScorer.Query(text)
+        if (query.isEmpty) {
+            return synchronized(entries) { recent.mapNotNull { entries[it] } }.take(limit).map { Match(it, 0) }
+        }
+
+        val all = entries()
+        val narrowing = all === candidatesOf && query.chars.size >= candidatesQuery.size &&
+            candidatesQuery.indices.all { query.chars[it] == candidatesQuery[it] }
+        if (!narrowing) {
+            if (candidates.size != all.entries.size) candidates = IntArray(all.entries.size)
+            candidateCount = all.entries.size
+            for (index in all.entries.indices) candidates[index] = index
+        }
+
+        val recentRanks = HashMap<Path, Int>()
+        recent.forEachIndexed { rank, path -> recentRanks.putIfAbsent(path, rank) }
+
+        // The best matches so far in order, by score and then the shorter path, so one that cannot make it is
+        // dropped after comparing a single number
+        val bestRanks = LongArray(limit)
+        val bestScores = IntArray(limit)
+        val bestIds = IntArray(limit)
+        var count = 0
+        var matched = 0
+        for (candidate in 0 until candidateCount) {
+            val id = candidates[candidate]
+            if (all.masks[id] and query.mask != query.mask) continue
+            var score = FuzzyScorer.score(query, all.chars, all.bonuses, all.starts[id], all.starts[id + 1], all.nameStarts[id])
+            if (score == FuzzyScorer.NO_MATCH) continue
+            // Narrowed in place, as no more are written than were read
+            candidates[matched++] = id
+            if (recentRanks.isNotEmpty()) {
+                recentRanks[all.entries[id].path]?.let { score += RECENT_BOOST * (recent.size - it) / recent.size }
+            }
+
+            val rank = (score.toLong() shl 32) - (all.starts[id + 1] - all.starts[id])
+            if (count == limit && rank <= bestRanks[count - 1]) continue
+            var index = if (count < limit) count++ else count - 1
+            while (index > 0 && rank > bestRanks[index - 1]) {
+                bestRanks[index] = bestRanks[index - 1]
+                bestScores[index] = bestScores[index - 1]
+                bestIds[index] = bestIds[index - 1]
+                index--
+            }
+            bestRanks[index] = rank
+            bestScores[index] = score
+            bestIds[index] = id
+        }
+        candidateCount = matched
+        candidatesOf = all
+        candidatesQuery = query.chars
+        return List(count) { Match(all.entries[bestIds[it]], bestScores[it]) }
+            .sortedWith(compareByDescending<Match> { it.score }.thenBy { it.entry.display.length }.thenBy { it.entry.display })
+    }
+
+    private fun entries(): Snapshot {
+        snapshot?.let { return it }
+        return synchronized(entries) {
+            snapshot ?: Snapshot(entries.values.toTypedArray()).also { snapshot = it }
+        }
+    }
+
+    private fun sync(workspace: Workspace) {
+        isStarted = true
+        val folders = workspace.projects.flatMap { project ->
+            listOf(project.path to project.name) + project.additionalPaths.map { it to (it.fileName?.toString() ?: it.toString()) }
+        }.toMap()
+        executor.execute {
+            // A renamed project is walked again for its new display paths
+            val added = folders.filter { (folder, name) -> roots[folder] != name }.keys
+            roots = folders
+            update { keys.removeIf { rootOf(it) == null } }
+            val started = System.currentTimeMillis()
+            added.forEach { reconcile(it) }
+            if (added.isNotEmpty()) {
+                logger.info("Indexed $size paths of ${added.size} folders in ${System.currentTimeMillis() - started} ms")
+            }
+        }
+    }
+
+    // For a path the watcher reported, whose folder then needs no walk on the next file system update
+    private fun reconcileEntry(path: Path) {
+        path.parent?.let { handledDirectories.add(it) }
+        reconcile(path)
+    }
+
+    /**
+     * Brings the entries at or below [path] up to date with the disk.
+     */
+    private fun reconcile(path: Path) {
+        val attributes = try {
+            if (isIndexed(path)) Files.readAttributes(path, BasicFileAttributes::class.java) else null
+        } catch (_: IOException) {
+            null
+        }
+        val found = ArrayList<Path>()
+        when {
+            attributes == null -> {}
+            attributes.isRegularFile -> found.add(path)
+            attributes.isDirectory -> walk(path, found)
+        }
+        update {
+            // A single file is the common case, which does not need to look at every other entry
+            if (remove(path) == null && attributes?.isRegularFile != true) keys.removeIf { it.startsWith(path) }
+            found.forEach { file -> rootOf(file)?.let { put(file, Entry(file, display(it, file))) } }
+        }
+    }
+
+    private fun walk(directory: Path, found: MutableList<Path>) {
+        Files.walkFileTree(directory, object : SimpleFileVisitor<Path>() {
+            override fun preVisitDirectory(dir: Path, attrs: BasicFileAttributes): FileVisitResult {
+                // Hidden folders such as .git hold nothing worth opening
+                return if (dir !in roots && dir.fileName.toString().startsWith(".")) {
+                    FileVisitResult.SKIP_SUBTREE
+                } else {
+                    FileVisitResult.CONTINUE
+                }
+            }
+
+            override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
+                if (attrs.isRegularFile) found.add(file)
+                return FileVisitResult.CONTINUE
+            }
+
+            override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult = FileVisitResult.CONTINUE
+        })
+    }
+
+    private inline fun update(change: HashMap<Path, Entry>.() -> Unit) {
+        synchronized(entries) {
+            entries.change()
+            snapshot = null
+        }
+    }
+
+    // The innermost folder, as additional paths can sit inside a project
+    private fun rootOf(path: Path): Path? = roots.keys.filter { path.startsWith(it) }.maxByOrNull { it.nameCount }
+
+    // Inside a workspace folder, but not inside a hidden folder the walk skips
+    private fun isIndexed(path: Path): Boolean {
+        val root = rootOf(path) ?: return false
+        return root.relativize(path).toList().dropLast(1).none { it.toString().startsWith(".") }
+    }
+
+    private fun display(root: Path, file: Path): String {
+        return "${roots[root]}/${root.relativize(file).invariantSeparatorsPathString}"
+    }
+}
@@ -37,6 +37,12 @@ object AdvancedConfig {
     @ConfigEditorBoolean
     val debugResizeHandles = SimpleBooleanProperty(false)
 
+    @Expose
+    @ConfigCategory(name = "Debug")
+    @ConfigOption(name = "Show Search Index Stats", desc = "Shows build time, size and query latency of the search index in the find in files panel")
+    @ConfigEditorBoolean
+    val debugSearchIndex = SimpleBooleanProperty(false)
+
     @Expose
     @ConfigCategory(name = "Debug")
     @ConfigOption(name = "Test Warning", desc = "Sends a test warning message to chat")
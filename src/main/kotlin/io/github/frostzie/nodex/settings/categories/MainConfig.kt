@@ -3,6 +3,7 @@ package io.github.frostzie.nodex.settings.categories
 import io.github.frostzie.nodex.settings.annotations.*
 import io.github.frostzie.nodex.utils.OpenLinks
 import javafx.beans.property.SimpleBooleanProperty
+import javafx.beans.property.SimpleIntegerProperty
 import javafx.beans.property.SimpleStringProperty
 
 object MainConfig {
@@ -47,6 +48,88 @@ object MainConfig {
     @ConfigEditorColorPicker
     val caretColor = SimpleStringProperty("#000000")
 
+    // Editor Category
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Large File Highlighting (KB)",
+        desc = "Files bigger than this get the visible lines highlighted first, the rest is filled in while idle. (Default: 512)"
+    )
+    @ConfigEditorSpinner(minValue = 16, maxValue = 65536)
+    val largeFileHighlightThresholdKb = SimpleIntegerProperty(512)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Large File Mode (MB)",
+        desc = "Files bigger than this open in a read-only, memory-mapped view that can be fully loaded on demand. (Default: 20)"
+    )
+    @ConfigEditorSpinner(minValue = 1, maxValue = 2048)
+    val largeFileModeThresholdMb = SimpleIntegerProperty(20)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Autosave",
+        desc = "Saves edited files once you stop typing for the delay below and when the window loses focus. (Default: off)"
+    )
+    @ConfigEditorBoolean
+    val autosaveEnabled = SimpleBooleanProperty(false)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Autosave Delay (ms)",
+        desc = "How long editing has to pause before edited files are autosaved. (Default: 1500)"
+    )
+    @ConfigEditorSpinner(minValue = 250, maxValue = 60000)
+    val autosaveDelayMs = SimpleIntegerProperty(1500)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Undo History Limit (KB)",
+        desc = "Memory each tab's undo history may use before its oldest steps are forgotten. Applies to newly opened tabs. (Default: 4096)"
+    )
+    @ConfigEditorSpinner(minValue = 64, maxValue = 262144)
+    val undoHistoryLimitKb = SimpleIntegerProperty(4096)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Open Tabs Memory Budget (MB)",
+        desc = "Rough memory open tabs may use. Past it the least recently used tabs are hibernated and restored when selected again, losing their undo history. (Default: 256)"
+    )
+    @ConfigEditorSpinner(minValue = 16, maxValue = 16384)
+    val tabMemoryBudgetMb = SimpleIntegerProperty(256)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Hibernate Off-Heap",
+        desc = "Keeps the compressed unsaved changes of hibernated tabs outside of the Java heap."
+    )
+    @ConfigEditorBoolean
+    val hibernateOffHeap = SimpleBooleanProperty(true)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Find in Files Size Limit (KB)",
+        desc = "Files bigger than this are skipped when searching the workspace. (Default: 4096)"
+    )
+    @ConfigEditorSpinner(minValue = 16, maxValue = 1048576)
+    val findInFilesMaxFileSizeKb = SimpleIntegerProperty(4096)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Unknown Reference Warnings",
+        desc = "Underlines functions, tags, objectives and other resources that are used but not defined anywhere in the workspace."
+    )
+    @ConfigEditorBoolean
+    val unknownReferenceWarnings = SimpleBooleanProperty(true)
+
     // File Category
     @Expose
     @ConfigCategory(name = "File")
@@ -109,4 +109,76 @@ object ThemeConfig {
     @ConfigOption(name = "False", desc = "Default: #FF6347")
     @ConfigEditorColorPicker
     val jsonFalseColor = SimpleStringProperty("#FF6347")
-}
\ No newline at end of file
+
+    @Expose
+    @ConfigCategory(name = "McFunction Colors")
+    @ConfigOption(name = "McFunction Syntax Info", desc = "This is a temporary setting until LSP support is added!\nExpect this to be removed and/or changed at a later date!")
+    @ConfigEditorInfo
+    val mcfColorInfo = ""
+
+    @Expose
+    @ConfigCategory(name = "McFunction Colors")
+    @ConfigOption(name = "Comment", desc = "Default: #808080")
+    @ConfigEditorColorPicker
+    val mcfCommentColor = SimpleStringProperty("#808080")
+
+    @Expose
+    @ConfigCategory(name = "McFunction Colors")
+    @ConfigOption(name = "Command", desc = "Default: #569CD6")
+    @ConfigEditorColorPicker
+    val mcfCommandColor = SimpleStringProperty("#569CD6")
+
+    @Expose
+    @ConfigCategory(name = "McFunction Colors")
+    @ConfigOption(name = "Keyword (run)", desc = "Default: #C586C0")
+    @ConfigEditorColorPicker
+    val mcfKeywordColor = SimpleStringProperty("#C586C0")
+
+    @Expose
+    @ConfigCategory(name = "McFunction Colors")
+    @ConfigOption(name = "Macro", desc = "Default: #FF00FF")
+    @ConfigEditorColorPicker
+    val mcfMacroColor = SimpleStringProperty("#FF00FF")
+
+    @Expose
+    @ConfigCategory(name = "McFunction Colors")
+    @ConfigOption(name = "Selector", desc = "Default: #4EC9B0")
+    @ConfigEditorColorPicker
+    val mcfSelectorColor = SimpleStringProperty("#4EC9B0")
+
+    @Expose
+    @ConfigCategory(name = "McFunction Colors")
+    @ConfigOption(name = "NBT/Argument Key", desc = "Default: #9CDCFE")
+    @ConfigEditorColorPicker
+    val mcfKeyColor = SimpleStringProperty("#9CDCFE")
+
+    @Expose
+    @ConfigCategory(name = "McFunction Colors")
+    @ConfigOption(name = "String", desc = "Default: #CE9178")
+    @ConfigEditorColorPicker
+    val mcfStringColor = SimpleStringProperty("#CE9178")
+
+    @Expose
+    @ConfigCategory(name = "McFunction Colors")
+    @ConfigOption(name = "Number", desc = "Default: #B5CEA8")
+    @ConfigEditorColorPicker
+    val mcfNumberColor = SimpleStringProperty("#B5CEA8")
+
+    @Expose
+    @ConfigCategory(name = "McFunction Colors")
+    @ConfigOption(name = "Resource Location", desc = "Default: #DCDCAA")
+    @ConfigEditorColorPicker
+    val mcfResourceColor = SimpleStringProperty("#DCDCAA")
+
+    @Expose
+    @ConfigCategory(name = "McFunction Colors")
+    @ConfigOption(name = "Boolean", desc = "Default: #32CD32")
+    @ConfigEditorColorPicker
+    val mcfBooleanColor = SimpleStringProperty("#32CD32")
+
+    @Expose
+    @ConfigCategory(name = "McFunction Colors")
+    @ConfigOption(name = "Brackets", desc = "Default: #FFD700")
+    @ConfigEditorColorPicker
+    val mcfBracketColor = SimpleStringProperty("#FFD700")
+}
@@ -19,7 +19,7 @@ class TabStyler : EditorTabDecorator {
     /**
      * Applies dynamic styling to the tab and sets up listeners for state changes.
      */
-    override fun decorate(tab: Tab, codeArea: CodeArea, tabData: TextEditorViewModel.TabData): () -> Unit {
+    override fun decorate(tab: Tab, codeArea: CodeArea?, tabData: TextEditorViewModel.TabData): () -> Unit {
         val listener = ChangeListener<Any> { _, _, _ ->
             updateTabStyle(tab, tabData)
         }
@@ -0,0 +1,34 @@
+package io.github.frostzie.nodex.utils
+
+/**
+ * Natural ordering of file names, where `file2` sorts before `file10` and case is ignored.
+ */
+object NaturalOrder {
+
+    /**
+     * A key for [name] whose plain string order is the natural order of the names, so sorting compares
+     * precomputed keys instead of walking digit runs on every comparison.
+     *
+     * Each run of digits becomes a `0` marker, its length as a single char, then the digits, so a longer number
+     * sorts after a shorter one and equal lengths compare digit by digit. The marker sorts against other
+     * characters just like a digit would.
+     */
+    fun sortKey(name: String): String {
+        val key = StringBuilder(name.length + 4)
+        var i = 0
+        while (i < name.length) {
+            val c = name[i]
+            if (c.isDigit()) {
+                val start = i
+                while (i < name.length && name[i].isDigit()) i++
+                key.append('0').append((i - start).toChar()).append(name, start, i)
+            } else {
+                key.append(c.lowercaseChar())
+                i++
+            }
+        }
+        return key.toString()
+    }
+
+    val comparator: Comparator<String> = Comparator { a, b -> sortKey(a).compareTo(sortKey(b)) }
+}
@@ -0,0 +1,155 @@
+package io.github.frostzie.nodex.utils.file
+
+import io.github.frostzie.nodex.utils.LoggerProvider
+import io.github.frostzie.nodex.utils.NaturalOrder
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.attribute.BasicFileAttributes
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Cached listings of directories, each read once with a single directory stream and one attribute read per entry.
+ *
+ * A snapshot is reused as long as its directory's modification time is unchanged, which costs one stat instead of
+ * a listing. Watcher events patch the affected entry into the cached snapshot of its parent, so a single created,
+ * deleted or moved file does not list the directory again. This relies on every change of a cached directory
+ * being reported, a change the watcher missed shows up with the next one in that directory.
+ *
+ * Like git, a snapshot read within a timestamp tick of its directory's last change is not trusted, as another change
+ * in the same tick would not move the modification time. Safe to use from any thread.
+ */
+class DirectorySnapshotCache {
+    private val logger = LoggerProvider.getLogger("DirectorySnapshotCache")
+
+    /**
+     * One entry of a directory, with the natural [sortKey] of its name.
+     */
+    class Entry(val path: Path, val isDirectory: Boolean, val sortKey: String)
+
+    /**
+     * The [entries] of a directory, directories first and then by name, as of its [modified] time.
+     */
+    class Snapshot(val directory: Path, val modified: FileTime, val readAt: Long, val entries: List<Entry>)
+
+    private val snapshots = ConcurrentHashMap<Path, Snapshot>()
+
+    private val entryOrder = compareBy<Entry> { !it.isDirectory }.thenBy { it.sortKey }
+
+    /**
+     * The entries of [directory], from the cache unless it changed since. Empty if it cannot be read.
+     */
+    fun list(directory: Path): List<Entry> {
+        val modified = try {
+            Files.getLastModifiedTime(directory)
+        } catch (_: IOException) {
+            snapshots.keys.removeIf { it.startsWith(directory) }
+            return emptyList()
+        }
+        val cached = snapshots[directory]
+        if (cached != null && cached.modified == modified && !isRacy(cached)) return cached.entries
+        return read(directory, modified)?.entries ?: emptyList()
+    }
+
+    private fun read(directory: Path, modified: FileTime): Snapshot? {
+        val readAt = System.currentTimeMillis()
+        val entries = ArrayList<Entry>()
+        try {
+            Files.newDirectoryStream(directory).use { stream ->
+                for (path in stream) {
+                    val isDirectory = try {
+                        Files.readAttributes(path, BasicFileAttributes::class.java).isDirectory
+                    } catch (_: IOException) {
+                        // Gone since listed, or a broken link
+                        if (!Files.exists(path)) continue
+                        false
+                    }
+                    entries.add(Entry(path, isDirectory, NaturalOrder.sortKey(path.fileName.toString())))
+                }
+            }
+        } catch (e: IOException) {
+            logger.error("Failed to list directory entries: $directory", e)
+            snapshots.remove(directory)
+            return null
+        }
+        entries.sortWith(entryOrder)
+        return Snapshot(directory, modified, readAt, entries).also { snapshots[directory] = it }
+    }
+
+    private fun isRacy(snapshot: Snapshot): Boolean {
+        // Whole seconds suggest a file system with coarse timestamps, e.g. FAT with two seconds
+        val window = if (snapshot.modified.toInstant().nano == 0) COARSE_RACY_WINDOW_MS else RACY_WINDOW_MS
+        return snapshot.modified.toMillis() >= snapshot.readAt - window
+    }
+
+    /**
+     * Whether [path] is a directory according to its parent's cached snapshot, null if that is not cached.
+     */
+    fun isDirectory(path: Path): Boolean? {
+        return snapshots[path.parent]?.entries?.firstOrNull { it.path == path }?.isDirectory
+    }
+
+    /**
+     * Follows [directory] down through directories that contain nothing but a single directory.
+     *
+     * @return The deepest directory of the chain and the directories of the chain below [directory].
+     */
+    fun compactedChain(directory: Path): List<Path> {
+        val chain = ArrayList<Path>()
+        var current = directory
+        while (true) {
+            val only = list(current).singleOrNull()
+            if (only == null || !only.isDirectory) break
+            current = only.path
+            chain.add(current)
+        }
+        return chain
+    }
+
+    /**
+     * Brings the cached snapshot of the parent of [path] up to date with [path] alone, e.g. after the watcher
+     * reported it was created, changed or deleted.
+     */
+    fun patch(path: Path) {
+        val parent = path.parent ?: return
+        val attributes = try {
+            Files.readAttributes(path, BasicFileAttributes::class.java)
+        } catch (_: NoSuchFileException) {
+            null
+        } catch (_: IOException) {
+            return invalidate(parent)
+        }
+        if (attributes?.isDirectory != true) snapshots.keys.removeIf { it.startsWith(path) }
+
+        snapshots.computeIfPresent(parent) { _, snapshot ->
+            val readAt = System.currentTimeMillis()
+            val modified = try {
+                Files.getLastModifiedTime(parent)
+            } catch (_: IOException) {
+                return@computeIfPresent null
+            }
+            val entries = snapshot.entries.filterTo(ArrayList()) { it.path != path }
+            if (attributes != null) {
+                entries.add(Entry(path, attributes.isDirectory, NaturalOrder.sortKey(path.fileName.toString())))
+                entries.sortWith(entryOrder)
+            }
+            // The parent's time now covers the patched change, an unrelated one in the same tick is left to isRacy
+            Snapshot(parent, modified, readAt, entries)
+        }
+    }
+
+    /**
+     * Drops the snapshots of [path] and every directory below it.
+     */
+    fun invalidate(path: Path) {
+        snapshots.keys.removeIf { it.startsWith(path) }
+    }
+
+    companion object {
+        // Slack for file system timestamps trailing the wall clock by a scheduler tick
+        private const val RACY_WINDOW_MS = 50L
+        private const val COARSE_RACY_WINDOW_MS = 2000L
+    }
+}
@@ -1,6 +1,7 @@
 package io.github.frostzie.nodex.utils.file
 
 import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.events.FileCreated
 import io.github.frostzie.nodex.events.FileDeleted
 import io.github.frostzie.nodex.events.FileModified
 import io.github.frostzie.nodex.events.FileMoved
@@ -16,7 +17,24 @@ import java.util.concurrent.ScheduledFuture
 import java.util.concurrent.TimeUnit
 import kotlin.concurrent.thread
 
-data class FileSystemUpdate(val path: Path)
+/**
+ * Posted once changes below the watched [path] settle, with the [directories] whose entries or files changed.
+ * [entryDirectories] are only those whose entries were added, removed or renamed, a file's content changing cannot
+ * change what paths there are. [overflowed] is set when the watcher lost track of single changes and everything
+ * below them may differ.
+ */
+data class FileSystemUpdate(
+    val path: Path,
+    val directories: Set<Path> = setOf(path),
+    val overflowed: Boolean = false,
+    val entryDirectories: Set<Path> = directories
+) {
+    /**
+     * [directories] without those below another one of them, for work that covers whole subtrees.
+     */
+    val topDirectories: List<Path>
+        get() = directories.filter { directory -> directories.none { it != directory && directory.startsWith(it) } }
+}
 
 class FileSystemWatcher(private val watchPath: Path) {
     private val logger = LoggerProvider.getLogger("FileSystemWatcher")
@@ -30,6 +48,12 @@ class FileSystemWatcher(private val watchPath: Path) {
     @Volatile
     private var pendingUpdate = false
     private val pendingEvents = ConcurrentLinkedQueue<Any>()
+    // Directories with changed entries or files since the last update, posted together once changes settle
+    private val affectedDirectories = ConcurrentHashMap.newKeySet<Path>()
+    // The subset whose entries changed, not just the content of a file in them
+    private val entryDirectories = ConcurrentHashMap.newKeySet<Path>()
+    @Volatile
+    private var overflowed = false
 
     private val ignoredPaths = ConcurrentHashMap<Path, Long>()
     private val ignoreDurationMs = 2000L
@@ -45,7 +69,8 @@ class FileSystemWatcher(private val watchPath: Path) {
             watcher = DirectoryWatcher.builder()
                 .path(watchPath)
                 .listener { event ->
-                    if (shouldIgnore(event.path())) {
+                    // Overflow events carry no path
+                    if (event.path() != null && shouldIgnore(event.path())) {
                         logger.debug("Ignoring internal change for: {}", event.path())
                         return@listener
                     }
@@ -73,10 +98,14 @@ class FileSystemWatcher(private val watchPath: Path) {
                                 val future = pendingDeletes.remove(oldPath)
                                 future?.cancel(false)
                                 postOrQueue(FileMoved(oldPath, event.path()))
+                            } else {
+                                postOrQueue(FileCreated(event.path()))
                             }
                         }
+                        DirectoryChangeEvent.EventType.OVERFLOW -> overflowed = true
                         else -> {}
                     }
+                    recordAffected(event)
 
                     logger.debug("File system event: {} - {}", event.eventType(), event.path())
                     scheduleUpdate()
@@ -160,6 +189,20 @@ class FileSystemWatcher(private val watchPath: Path) {
         return false
     }
 
+    private fun recordAffected(event: DirectoryChangeEvent) {
+        val path = event.path() ?: watchPath
+        val directory = when {
+            event.eventType() == DirectoryChangeEvent.EventType.OVERFLOW -> watchPath
+            // A directory reported as modified had its own entries change
+            event.eventType() == DirectoryChangeEvent.EventType.MODIFY && event.isDirectory -> path
+            path != watchPath -> path.parent
+            else -> return
+        }
+        affectedDirectories.add(directory)
+        // A modified file only changed its content
+        if (event.eventType() != DirectoryChangeEvent.EventType.MODIFY || event.isDirectory) entryDirectories.add(directory)
+    }
+
     private fun scheduleUpdate() {
         scheduledUpdate?.cancel(false)
         scheduledUpdate = debounceExecutor?.schedule({
@@ -180,7 +223,14 @@ class FileSystemWatcher(private val watchPath: Path) {
     }
 
     private fun triggerUpdate() {
-        logger.info("Triggering directory refresh due to file system changes")
-        EventBus.post(FileSystemUpdate(watchPath))
+        val directories = affectedDirectories.toHashSet()
+        affectedDirectories.removeAll(directories)
+        val entries = entryDirectories.filterTo(HashSet()) { it in directories }
+        entryDirectories.removeAll(entries)
+        val lostTrack = overflowed
+        overflowed = false
+        if (directories.isEmpty()) return
+        logger.info("Triggering refresh of {} directories due to file system changes", directories.size)
+        EventBus.post(FileSystemUpdate(watchPath, directories, lostTrack, entries))
     }
 }
\ No newline at end of file